@@ -23,4 +23,13 @@ public interface GraphTraversalService extends Remote {
                                      String destinationUnLocode,
                                      Properties limitations) throws RemoteException;
 
+  /**
+   * Solves many queries in one call, against the same timetable snapshot.
+   *
+   * @param queries origin, destination and limitations of each query
+   * @return A list of transit paths for each query, in query order
+   * @throws RemoteException RMI problem
+   */
+  List<List<TransitPath>> findShortestPaths(List<PathQuery> queries) throws RemoteException;
+
 }
@@ -0,0 +1,31 @@
+package com.pathfinder.api;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Co-located binding of the graph traversal API, for clients running
+ * in the same JVM as the pathfinder. Nothing is serialized, and there
+ * is no remoting failure to handle.
+ *
+ * @see GraphTraversalService
+ */
+public interface LocalGraphTraversalService {
+
+  /**
+   * @param originUnLocode origin UN Locode
+   * @param destinationUnLocode destination UN Locode
+   * @param limitations restrictions on the path selection, as key-value according to some API specification
+   * @return A list of transit paths
+   */
+  List<TransitPath> findShortestPath(String originUnLocode,
+                                     String destinationUnLocode,
+                                     Properties limitations);
+
+  /**
+   * @param queries origin, destination and limitations of each query
+   * @return A list of transit paths for each query, in query order
+   */
+  List<List<TransitPath>> findShortestPaths(List<PathQuery> queries);
+
+}
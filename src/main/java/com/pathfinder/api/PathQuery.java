@@ -0,0 +1,42 @@
+package com.pathfinder.api;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * One origin/destination query in a batch,
+ * see {@link GraphTraversalService#findShortestPaths(java.util.List)}.
+ */
+public final class PathQuery implements Serializable {
+
+  private final String originUnLocode;
+  private final String destinationUnLocode;
+  private final Properties limitations;
+
+  /**
+   * Constructor.
+   *
+   * @param originUnLocode origin UN Locode
+   * @param destinationUnLocode destination UN Locode
+   * @param limitations restrictions on the path selection, may be null
+   */
+  public PathQuery(final String originUnLocode,
+                   final String destinationUnLocode,
+                   final Properties limitations) {
+    this.originUnLocode = originUnLocode;
+    this.destinationUnLocode = destinationUnLocode;
+    this.limitations = limitations;
+  }
+
+  public String getOriginUnLocode() {
+    return originUnLocode;
+  }
+
+  public String getDestinationUnLocode() {
+    return destinationUnLocode;
+  }
+
+  public Properties getLimitations() {
+    return limitations;
+  }
+}
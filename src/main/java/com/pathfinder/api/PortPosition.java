@@ -0,0 +1,39 @@
+package com.pathfinder.api;
+
+import java.io.Serializable;
+
+/**
+ * Geographic position of a location, used by the pathfinder
+ * to direct its searches towards the destination.
+ */
+public final class PortPosition implements Serializable {
+
+  private final String unLocode;
+  private final double latitude;
+  private final double longitude;
+
+  /**
+   * Constructor.
+   *
+   * @param unLocode UN Locode
+   * @param latitude latitude in degrees, positive is north
+   * @param longitude longitude in degrees, positive is east
+   */
+  public PortPosition(final String unLocode, final double latitude, final double longitude) {
+    this.unLocode = unLocode;
+    this.latitude = latitude;
+    this.longitude = longitude;
+  }
+
+  public String getUnLocode() {
+    return unLocode;
+  }
+
+  public double getLatitude() {
+    return latitude;
+  }
+
+  public double getLongitude() {
+    return longitude;
+  }
+}
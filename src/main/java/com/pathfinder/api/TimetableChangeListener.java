@@ -0,0 +1,17 @@
+package com.pathfinder.api;
+
+/**
+ * Part of the external graph traversal API. Clients notify the pathfinder
+ * when the schedule of a voyage changes, so that the routing graph can be
+ * updated with only the transit edges of that voyage, which are read back
+ * from the {@link TimetableSource}.
+ *
+ */
+public interface TimetableChangeListener {
+
+  /**
+   * @param voyageNumber voyage number of a voyage that was added, changed or cancelled
+   */
+  void voyageChanged(String voyageNumber);
+
+}
@@ -0,0 +1,37 @@
+package com.pathfinder.api;
+
+import java.util.List;
+
+/**
+ * Part of the external graph traversal API. The pathfinder does not own
+ * any schedules, so the client context implements this interface to
+ * supply the timetable that the routing graph is built from.
+ *
+ */
+public interface TimetableSource {
+
+  /**
+   * @return All scheduled transit edges, that is one edge for each
+   * movement between two consecutive port calls of every voyage.
+   */
+  List<TransitEdge> listTransitEdges();
+
+  /**
+   * @param voyageNumber voyage number
+   * @return The scheduled transit edges of one voyage, or an empty list if the voyage
+   * no longer exists. Used for incremental updates, see {@link TimetableChangeListener}.
+   */
+  List<TransitEdge> listTransitEdges(String voyageNumber);
+
+  /**
+   * @return Positions of the locations whose coordinates are known. Locations
+   * without a position are still routed to, but searches towards them are not goal-directed.
+   */
+  List<PortPosition> listPortPositions();
+
+  /**
+   * @return UN locodes of all known locations, whether any voyage calls there or not.
+   */
+  List<String> listLocations();
+
+}
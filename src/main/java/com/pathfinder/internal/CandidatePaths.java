@@ -0,0 +1,259 @@
+package com.pathfinder.internal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds up to k genuinely different paths in order of arrival time,
+ * using Yen's algorithm adapted to timetables.
+ * <p/>
+ * Each new candidate deviates from the previous one at some spur vertex.
+ * Deviating means not boarding, at the spur vertex, any voyage that an already
+ * found path with the same root boarded or stayed on there. A sequence of legs
+ * is only returned once, so every candidate differs from the others in at least
+ * one voyage or one load or unload location.
+ * <p/>
+ * The spur searches of one iteration are independent of each other,
+ * and are run in parallel on a fork/join pool.
+ * <p/>
+ * If the time budget runs out while searching for alternatives, the paths
+ * found so far are returned. A first path found by a search that ran out of
+ * budget may not be the earliest arrival path, and then has no alternatives.
+ */
+final class CandidatePaths {
+
+  private final RoutingGraph graph;
+  private final PathSearch search;
+  private final ForkJoinPool pool;
+  private static final Log logger = LogFactory.getLog(CandidatePaths.class);
+
+  CandidatePaths(final RoutingGraph graph, final PathSearch search, final ForkJoinPool pool) {
+    this.graph = graph;
+    this.search = search;
+    this.pool = pool;
+  }
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex
+   * @param k maximum number of paths
+   * @param budget time budget for all the paths
+   * @return Edge positions of up to k paths, earliest arrival first.
+   */
+  List<int[]> find(final int origin, final long departure, final int destination, final int k,
+                   final TimeBudget budget) {
+    final int[] first = search.search(origin, departure, destination, budget);
+    if (first == null) {
+      return Collections.emptyList();
+    }
+    return find(origin, departure, destination, first, k, budget);
+  }
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex
+   * @param first edge positions of an earliest arrival path, found by other means
+   * @param k maximum number of paths
+   * @param budget time budget for the alternative paths
+   * @return Edge positions of up to k paths, starting with the given one.
+   */
+  List<int[]> find(final int origin, final long departure, final int destination, final int[] first, final int k,
+                   final TimeBudget budget) {
+    final List<int[]> found = new ArrayList<int[]>(k);
+    final PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+    final Set<LegSignature> seen = new HashSet<LegSignature>();
+    found.add(first);
+    seen.add(new LegSignature(graph, first));
+
+    while (found.size() < k) {
+      if (budget.isSpent()) {
+        logger.debug("Time budget spent after " + found.size() + " of " + k + " paths");
+        break;
+      }
+      final int[] previous = found.get(found.size() - 1);
+      final SpurSearches spurSearches = new SpurSearches(
+        found, previous, origin, departure, destination, budget, 0, previous.length);
+      // Batch queries already run on the pool, and fork their spur searches directly
+      final List<int[]> spurPaths = ForkJoinTask.inForkJoinPool() ? spurSearches.invoke() : pool.invoke(spurSearches);
+      if (budget.isSpent()) {
+        // Some spur searches were abandoned, so the best remaining candidate may be missing
+        logger.debug("Time budget spent after " + found.size() + " of " + k + " paths");
+        break;
+      }
+      for (int[] spurPath : spurPaths) {
+        if (seen.add(new LegSignature(graph, spurPath))) {
+          candidates.add(new Candidate(graph, spurPath));
+        }
+      }
+      if (candidates.isEmpty()) {
+        break;
+      }
+      found.add(candidates.poll().edges);
+    }
+
+    return found;
+  }
+
+  /**
+   * Deviates from the previous path at each spur index in a range,
+   * splitting the range until each task handles a single spur search.
+   */
+  private final class SpurSearches extends RecursiveTask<List<int[]>> {
+
+    private final List<int[]> found;
+    private final int[] previous;
+    private final int origin;
+    private final long departure;
+    private final int destination;
+    private final TimeBudget budget;
+    private final int from;
+    private final int to;
+
+    SpurSearches(final List<int[]> found, final int[] previous,
+                 final int origin, final long departure, final int destination,
+                 final TimeBudget budget, final int from, final int to) {
+      this.found = found;
+      this.previous = previous;
+      this.origin = origin;
+      this.departure = departure;
+      this.destination = destination;
+      this.budget = budget;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected List<int[]> compute() {
+      if (to - from > 1) {
+        final int mid = (from + to) >>> 1;
+        final SpurSearches left = new SpurSearches(found, previous, origin, departure, destination, budget, from, mid);
+        final SpurSearches right = new SpurSearches(found, previous, origin, departure, destination, budget, mid, to);
+        left.fork();
+        final List<int[]> result = new ArrayList<int[]>(right.compute());
+        result.addAll(left.join());
+        return result;
+      }
+
+      final int[] spurPath = spur(from);
+      return spurPath == null ? Collections.<int[]>emptyList() : Collections.singletonList(spurPath);
+    }
+
+    private int[] spur(final int rootLength) {
+      final int spurVertex = rootLength == 0 ? origin : graph.target(previous[rootLength - 1]);
+      final long spurTime = rootLength == 0 ? departure : graph.arrival(previous[rootLength - 1]);
+
+      final boolean[] bannedVertices = new boolean[graph.vertexCount()];
+      bannedVertices[origin] = true;
+      for (int i = 0; i < rootLength; i++) {
+        bannedVertices[graph.target(previous[i])] = true;
+      }
+      bannedVertices[spurVertex] = false;
+
+      final int[] bannedVoyages = new int[found.size()];
+      int banned = 0;
+      for (int[] path : found) {
+        if (path.length > rootLength && startsWith(path, previous, rootLength)) {
+          bannedVoyages[banned++] = graph.voyage(path[rootLength]);
+        }
+      }
+
+      final int[] spurPath = search.search(spurVertex, spurTime, destination,
+        bannedVertices, Arrays.copyOf(bannedVoyages, banned), budget);
+      if (spurPath == null) {
+        return null;
+      }
+
+      final int[] path = Arrays.copyOf(previous, rootLength + spurPath.length);
+      System.arraycopy(spurPath, 0, path, rootLength, spurPath.length);
+      return path;
+    }
+
+    private boolean startsWith(final int[] path, final int[] prefix, final int length) {
+      for (int i = 0; i < length; i++) {
+        if (path[i] != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A candidate path, ordered by arrival time and then by number of legs.
+   */
+  private static final class Candidate implements Comparable<Candidate> {
+    final int[] edges;
+    final long arrival;
+    final int legs;
+
+    Candidate(final RoutingGraph graph, final int[] edges) {
+      this.edges = edges;
+      this.arrival = graph.arrival(edges[edges.length - 1]);
+      this.legs = LegSignature.legCount(graph, edges);
+    }
+
+    @Override
+    public int compareTo(final Candidate other) {
+      if (arrival != other.arrival) {
+        return arrival < other.arrival ? -1 : 1;
+      }
+      return legs - other.legs;
+    }
+  }
+
+  /**
+   * The sequence of (voyage, load vertex, unload vertex) legs of a path.
+   */
+  private static final class LegSignature {
+    private final int[] legs;
+
+    LegSignature(final RoutingGraph graph, final int[] edges) {
+      final int[] legs = new int[3 * legCount(graph, edges)];
+      int leg = -1;
+      for (int i = 0; i < edges.length; i++) {
+        final int voyage = graph.voyage(edges[i]);
+        if (i == 0 || voyage != graph.voyage(edges[i - 1])) {
+          leg++;
+          legs[3 * leg] = voyage;
+          legs[3 * leg + 1] = graph.source(edges[i]);
+        }
+        legs[3 * leg + 2] = graph.target(edges[i]);
+      }
+      this.legs = legs;
+    }
+
+    static int legCount(final RoutingGraph graph, final int[] edges) {
+      int count = 0;
+      for (int i = 0; i < edges.length; i++) {
+        if (i == 0 || graph.voyage(edges[i]) != graph.voyage(edges[i - 1])) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof LegSignature && Arrays.equals(legs, ((LegSignature) o).legs);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(legs);
+    }
+  }
+
+}
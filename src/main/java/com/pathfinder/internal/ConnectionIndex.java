@@ -0,0 +1,191 @@
+package com.pathfinder.internal;
+
+/**
+ * All edges of a {@link RoutingGraph} in one sequence, sorted by departure time
+ * and then by arrival time. Source, target, departure and arrival are copied into
+ * parallel arrays, so that a scan reads memory strictly sequentially.
+ */
+final class ConnectionIndex {
+
+  private final int[] edge;
+  private final int[] source;
+  private final int[] target;
+  private final long[] departure;
+  private final long[] arrival;
+
+  private ConnectionIndex(final int[] edge, final int[] source, final int[] target,
+                          final long[] departure, final long[] arrival) {
+    this.edge = edge;
+    this.source = source;
+    this.target = target;
+    this.departure = departure;
+    this.arrival = arrival;
+  }
+
+  static ConnectionIndex build(final RoutingGraph graph) {
+    final int m = graph.edgeCount();
+    final int[] edge = new int[m];
+    final int[] vertex = new int[m];
+    for (int v = 0; v < graph.vertexCount(); v++) {
+      for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+        edge[e] = e;
+        vertex[e] = v;
+      }
+    }
+    sort(edge, graph);
+
+    final int[] source = new int[m];
+    final int[] target = new int[m];
+    final long[] departure = new long[m];
+    final long[] arrival = new long[m];
+    for (int i = 0; i < m; i++) {
+      source[i] = vertex[edge[i]];
+      target[i] = graph.target(edge[i]);
+      departure[i] = graph.departure(edge[i]);
+      arrival[i] = graph.arrival(edge[i]);
+    }
+    return new ConnectionIndex(edge, source, target, departure, arrival);
+  }
+
+  /**
+   * Merge update after a {@link RoutingGraph#withVoyage(String, java.util.List)}, without sorting all connections again.
+   *
+   * @param graph the updated graph
+   * @param remap new position of each old edge, or -1 if the edge was removed
+   * @param added positions of the added edges in the updated graph
+   * @return The connections of the updated graph.
+   */
+  ConnectionIndex withEdges(final RoutingGraph graph, final int[] remap, final int[] added) {
+    final int[] addedEdges = added.clone();
+    sort(addedEdges, graph);
+
+    final int m = graph.edgeCount();
+    final int[] edge = new int[m];
+    final int[] source = new int[m];
+    final int[] target = new int[m];
+    final long[] departure = new long[m];
+    final long[] arrival = new long[m];
+
+    int i = 0;
+    int j = 0;
+    for (int pos = 0; pos < m; pos++) {
+      while (i < this.edge.length && remap[this.edge[i]] < 0) {
+        i++;
+      }
+      final boolean takeOld = i < this.edge.length && (j == addedEdges.length ||
+        this.departure[i] < graph.departure(addedEdges[j]) ||
+        this.departure[i] == graph.departure(addedEdges[j]) && this.arrival[i] <= graph.arrival(addedEdges[j]));
+      if (takeOld) {
+        edge[pos] = remap[this.edge[i]];
+        source[pos] = this.source[i];
+        target[pos] = this.target[i];
+        departure[pos] = this.departure[i];
+        arrival[pos] = this.arrival[i];
+        i++;
+      } else {
+        edge[pos] = addedEdges[j];
+        source[pos] = graph.source(edge[pos]);
+        target[pos] = graph.target(edge[pos]);
+        departure[pos] = graph.departure(edge[pos]);
+        arrival[pos] = graph.arrival(edge[pos]);
+        j++;
+      }
+    }
+    return new ConnectionIndex(edge, source, target, departure, arrival);
+  }
+
+  /**
+   * Bottom-up merge sort of edge positions by departure, arrival and position,
+   * which needs a single scratch array instead of a boxed or array key per edge.
+   */
+  private static void sort(final int[] edges, final RoutingGraph graph) {
+    final int n = edges.length;
+    int[] from = edges;
+    int[] to = new int[n];
+    for (int width = 1; width < n; width *= 2) {
+      for (int low = 0; low < n; low += 2 * width) {
+        final int mid = Math.min(low + width, n);
+        final int high = Math.min(low + 2 * width, n);
+        int i = low;
+        int j = mid;
+        for (int k = low; k < high; k++) {
+          if (i < mid && (j == high || !before(from[j], from[i], graph))) {
+            to[k] = from[i++];
+          } else {
+            to[k] = from[j++];
+          }
+        }
+      }
+      final int[] swap = from;
+      from = to;
+      to = swap;
+    }
+    if (from != edges) {
+      System.arraycopy(from, 0, edges, 0, n);
+    }
+  }
+
+  private static boolean before(final int e1, final int e2, final RoutingGraph graph) {
+    if (graph.departure(e1) != graph.departure(e2)) {
+      return graph.departure(e1) < graph.departure(e2);
+    }
+    if (graph.arrival(e1) != graph.arrival(e2)) {
+      return graph.arrival(e1) < graph.arrival(e2);
+    }
+    return e1 < e2;
+  }
+
+  int size() {
+    return edge.length;
+  }
+
+  /**
+   * @param time epoch millis
+   * @return Position of the first connection departing at or after the given time.
+   */
+  int firstDepartureAtOrAfter(final long time) {
+    int low = 0;
+    int high = departure.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (departure[mid] < time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param connection connection position
+   * @return Position of the connection in the edge arrays of the graph.
+   */
+  int edge(final int connection) {
+    return edge[connection];
+  }
+
+  int source(final int connection) {
+    return source[connection];
+  }
+
+  int target(final int connection) {
+    return target[connection];
+  }
+
+  long departure(final int connection) {
+    return departure[connection];
+  }
+
+  long arrival(final int connection) {
+    return arrival[connection];
+  }
+
+  /**
+   * @return Approximate footprint in bytes, assuming a 64-bit JVM.
+   */
+  long footprint() {
+    return 5 * 16L + edge.length * (4L + 4 + 4 + 8 + 8);
+  }
+
+}
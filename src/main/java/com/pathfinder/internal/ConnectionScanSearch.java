@@ -0,0 +1,156 @@
+package com.pathfinder.internal;
+
+import java.util.Arrays;
+
+/**
+ * Connection Scan Algorithm. All edges are scanned once in departure order,
+ * starting at the earliest departure, and an edge improves the arrival time
+ * at its target if the cargo can be in port at its source when it departs.
+ * The scan stops when edges depart after the best arrival at the destination,
+ * or after the deadline. If the positions of the locations are known, edges to
+ * locations that are too far away to reach the destination before the deadline
+ * are skipped as well.
+ * <p/>
+ * There is no priority queue, and the scan reads the {@link ConnectionIndex}
+ * sequentially, which makes it fast on dense timetables.
+ */
+final class ConnectionScanSearch implements PathSearch {
+
+  private static final int[] NO_VOYAGES = new int[0];
+  // Scanned connections between checks of the time budget
+  private static final int BUDGET_CHECK_INTERVAL = 4096;
+
+  private final RoutingGraph graph;
+  private final ConnectionIndex connections;
+  private final long deadline;
+  private final PortPositions positions;
+  private final QueryTrace trace;
+
+  ConnectionScanSearch(final RoutingGraph graph, final long deadline) {
+    this(graph, deadline, null);
+  }
+
+  /**
+   * @param graph routing graph
+   * @param deadline latest allowed arrival, exclusive
+   * @param trace trace to add the work done by each search to, or null
+   */
+  ConnectionScanSearch(final RoutingGraph graph, final long deadline, final QueryTrace trace) {
+    this.graph = graph;
+    this.connections = graph.connections();
+    this.deadline = deadline;
+    this.positions = deadline != Long.MAX_VALUE && graph.positions().isGoalDirected() ? graph.positions() : null;
+    this.trace = trace;
+  }
+
+  public int[] search(final int origin, final long departure, final int destination) {
+    return search(origin, departure, destination, TimeBudget.UNLIMITED);
+  }
+
+  public int[] search(final int origin, final long departure, final int destination, final TimeBudget budget) {
+    return search(origin, departure, destination, null, NO_VOYAGES, budget);
+  }
+
+  public int[] search(final int origin,
+                      final long departure,
+                      final int destination,
+                      final boolean[] bannedVertices,
+                      final int[] bannedVoyages,
+                      final TimeBudget budget) {
+    final int n = graph.vertexCount();
+    final long[] arrival = new long[n];
+    Arrays.fill(arrival, Long.MAX_VALUE);
+    final int[] via = new int[n];
+    Arrays.fill(via, -1);
+
+    final long[] bound = positions == null ? null : new long[n];
+    if (bound != null) {
+      Arrays.fill(bound, -1);
+    }
+
+    arrival[origin] = departure;
+
+    final int size = connections.size();
+    final int first = connections.firstDepartureAtOrAfter(departure);
+    int c = first;
+    int relaxedCount = 0;
+    int prunedCount = 0;
+    for (; c < size; c++) {
+      if ((c - first) % BUDGET_CHECK_INTERVAL == BUDGET_CHECK_INTERVAL - 1 && budget.isSpent()) {
+        // The best path so far, if the destination has been reached
+        break;
+      }
+      final long connectionDeparture = connections.departure(c);
+      if (connectionDeparture >= arrival[destination] || connectionDeparture >= deadline) {
+        break;
+      }
+      final int source = connections.source(c);
+      if (arrival[source] > connectionDeparture) {
+        continue;
+      }
+      final long connectionArrival = connections.arrival(c);
+      final int target = connections.target(c);
+      if (connectionArrival >= deadline) {
+        prunedCount++;
+        continue;
+      }
+      if (connectionArrival >= arrival[target]) {
+        continue;
+      }
+      if (bannedVertices != null && bannedVertices[target]) {
+        continue;
+      }
+      if (source == origin && contains(bannedVoyages, graph.voyage(connections.edge(c)))) {
+        continue;
+      }
+      if (bound != null && connectionArrival + bound(bound, target, destination) >= deadline) {
+        prunedCount++;
+        continue;
+      }
+      relaxedCount++;
+      arrival[target] = connectionArrival;
+      via[target] = c;
+    }
+
+    traced(c - first, relaxedCount, prunedCount);
+    if (via[destination] < 0) {
+      return null;
+    }
+    return backtrack(via, origin, destination);
+  }
+
+  private void traced(final int scannedCount, final int relaxedCount, final int prunedCount) {
+    if (trace != null) {
+      trace.searched(scannedCount, relaxedCount, prunedCount);
+    }
+  }
+
+  private long bound(final long[] bound, final int vertex, final int destination) {
+    if (bound[vertex] < 0) {
+      bound[vertex] = positions.minTravelTime(vertex, destination);
+    }
+    return bound[vertex];
+  }
+
+  private int[] backtrack(final int[] via, final int origin, final int destination) {
+    int length = 0;
+    for (int vertex = destination; vertex != origin; vertex = connections.source(via[vertex])) {
+      length++;
+    }
+    final int[] path = new int[length];
+    for (int vertex = destination; vertex != origin; vertex = connections.source(via[vertex])) {
+      path[--length] = connections.edge(via[vertex]);
+    }
+    return path;
+  }
+
+  private static boolean contains(final int[] values, final int value) {
+    for (int v : values) {
+      if (v == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
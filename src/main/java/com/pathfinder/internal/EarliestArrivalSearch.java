@@ -0,0 +1,169 @@
+package com.pathfinder.internal;
+
+import java.util.Arrays;
+
+/**
+ * Time-dependent Dijkstra over a {@link RoutingGraph}. The label of a vertex
+ * is the earliest time a cargo can be in port there. An edge can be used
+ * if it departs at or after that time, and arrives before the deadline.
+ * <p/>
+ * A goal-directed search is an A* search: vertices are taken from the queue in
+ * order of their label plus the lower bound on the travel time to the destination,
+ * so that vertices in the wrong direction are settled late or not at all. The bound
+ * is rounded down to whole millis, so a settled vertex is reopened if a later label
+ * for it turns out to be better. The bound also prunes labels that can't reach the
+ * destination before the deadline.
+ */
+final class EarliestArrivalSearch implements PathSearch {
+
+  private static final int[] NO_VOYAGES = new int[0];
+  // Settled vertices between checks of the time budget
+  private static final int BUDGET_CHECK_INTERVAL = 256;
+
+  private final RoutingGraph graph;
+  private final long deadline;
+  private final PortPositions positions;
+  private final QueryTrace trace;
+
+  /**
+   * @param graph routing graph
+   * @param deadline latest allowed arrival, exclusive
+   * @param goalDirected whether to direct the search by the positions of the vertices, if they are known
+   */
+  EarliestArrivalSearch(final RoutingGraph graph, final long deadline, final boolean goalDirected) {
+    this(graph, deadline, goalDirected, null);
+  }
+
+  /**
+   * @param graph routing graph
+   * @param deadline latest allowed arrival, exclusive
+   * @param goalDirected whether to direct the search by the positions of the vertices, if they are known
+   * @param trace trace to add the work done by each search to, or null
+   */
+  EarliestArrivalSearch(final RoutingGraph graph, final long deadline, final boolean goalDirected,
+                        final QueryTrace trace) {
+    this.graph = graph;
+    this.deadline = deadline;
+    this.positions = goalDirected && graph.positions().isGoalDirected() ? graph.positions() : null;
+    this.trace = trace;
+  }
+
+  public int[] search(final int origin, final long departure, final int destination) {
+    return search(origin, departure, destination, TimeBudget.UNLIMITED);
+  }
+
+  public int[] search(final int origin, final long departure, final int destination, final TimeBudget budget) {
+    return search(origin, departure, destination, null, NO_VOYAGES, budget);
+  }
+
+  public int[] search(final int origin,
+                      final long departure,
+                      final int destination,
+                      final boolean[] bannedVertices,
+                      final int[] bannedVoyages,
+                      final TimeBudget budget) {
+    final int n = graph.vertexCount();
+    final long[] arrival = new long[n];
+    Arrays.fill(arrival, Long.MAX_VALUE);
+    final boolean[] settled = new boolean[n];
+    final int[] via = new int[n];
+    Arrays.fill(via, -1);
+    final LabelQueue queue = new LabelQueue(n);
+    final long[] bound = positions == null ? null : new long[n];
+    if (bound != null) {
+      Arrays.fill(bound, -1);
+    }
+
+    arrival[origin] = departure;
+    queue.add(origin, departure);
+
+    int settledCount = 0;
+    int relaxedCount = 0;
+    int prunedCount = 0;
+    while (!queue.isEmpty()) {
+      final int vertex = queue.poll();
+      if (settled[vertex]) {
+        continue;
+      }
+      final long time = arrival[vertex];
+      settled[vertex] = true;
+      if (++settledCount % BUDGET_CHECK_INTERVAL == 0 && budget.isSpent()) {
+        // The best path so far, if the destination has been reached
+        break;
+      }
+      if (vertex == destination) {
+        break;
+      }
+
+      final int end = graph.endEdge(vertex);
+      for (int edge = graph.firstDepartureAtOrAfter(vertex, time); edge < end; edge++) {
+        final long edgeArrival = graph.arrival(edge);
+        if (edgeArrival >= deadline) {
+          prunedCount++;
+          continue;
+        }
+        final int next = graph.target(edge);
+        if (edgeArrival >= arrival[next]) {
+          continue;
+        }
+        if (bannedVertices != null && bannedVertices[next]) {
+          continue;
+        }
+        if (vertex == origin && contains(bannedVoyages, graph.voyage(edge))) {
+          continue;
+        }
+        final long key = bound == null ? edgeArrival : edgeArrival + bound(bound, next, destination);
+        if (key >= deadline) {
+          prunedCount++;
+          continue;
+        }
+        relaxedCount++;
+        arrival[next] = edgeArrival;
+        via[next] = edge;
+        settled[next] = false;
+        queue.add(next, key);
+      }
+    }
+
+    traced(settledCount, relaxedCount, prunedCount);
+    if (via[destination] < 0) {
+      return null;
+    }
+    return backtrack(via, origin, destination);
+  }
+
+  private void traced(final int settledCount, final int relaxedCount, final int prunedCount) {
+    if (trace != null) {
+      trace.searched(settledCount, relaxedCount, prunedCount);
+    }
+  }
+
+  private long bound(final long[] bound, final int vertex, final int destination) {
+    if (bound[vertex] < 0) {
+      bound[vertex] = positions.minTravelTime(vertex, destination);
+    }
+    return bound[vertex];
+  }
+
+  private int[] backtrack(final int[] via, final int origin, final int destination) {
+    int length = 0;
+    for (int vertex = destination; vertex != origin; vertex = graph.source(via[vertex])) {
+      length++;
+    }
+    final int[] path = new int[length];
+    for (int vertex = destination; vertex != origin; vertex = graph.source(via[vertex])) {
+      path[--length] = via[vertex];
+    }
+    return path;
+  }
+
+  private static boolean contains(final int[] values, final int value) {
+    for (int v : values) {
+      if (v == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
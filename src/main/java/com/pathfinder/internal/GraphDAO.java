@@ -1,27 +1,59 @@
 package com.pathfinder.internal;
 
-import java.util.ArrayList;
-import java.util.Arrays;
+import com.pathfinder.api.PortPosition;
+import com.pathfinder.api.TimetableSource;
+import com.pathfinder.api.TransitEdge;
+
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 public class GraphDAO {
 
-  private static final Random random = new Random();
+  private TimetableSource timetableSource;
 
+  /**
+   * @return UN locodes of all known locations, or an empty list if no timetable source is configured.
+   */
   public List<String> listLocations() {
-    return new ArrayList<String>(Arrays.asList(
-      "CNHKG", "AUMEL", "SESTO", "FIHEL", "USCHI", "JNTKO", "DEHAM", "CNSHA", "NLRTM", "SEGOT", "CNHGH", "USNYC", "USDAL"
-    ));
+    if (timetableSource == null) {
+      return Collections.emptyList();
+    }
+    return timetableSource.listLocations();
+  }
+
+  /**
+   * @return All scheduled transit edges, or an empty list if no timetable source is configured.
+   */
+  public List<TransitEdge> listTransitEdges() {
+    if (timetableSource == null) {
+      return Collections.emptyList();
+    }
+    return timetableSource.listTransitEdges();
+  }
+
+  /**
+   * @param voyageNumber voyage number
+   * @return The scheduled transit edges of one voyage, or an empty list if there are none.
+   */
+  public List<TransitEdge> listTransitEdges(String voyageNumber) {
+    if (timetableSource == null) {
+      return Collections.emptyList();
+    }
+    return timetableSource.listTransitEdges(voyageNumber);
+  }
+
+  /**
+   * @return Positions of the locations with known coordinates, or an empty list if there are none.
+   */
+  public List<PortPosition> listPortPositions() {
+    if (timetableSource == null) {
+      return Collections.emptyList();
+    }
+    return timetableSource.listPortPositions();
   }
 
-  public String getVoyageNumber(String from, String to) {
-    final int i = random.nextInt(5);
-    if (i == 0) return "0100S";
-    if (i == 1) return "0200T";
-    if (i == 2) return "0300A";
-    if (i == 3) return "0301S";
-    return "0400S";
+  public void setTimetableSource(TimetableSource timetableSource) {
+    this.timetableSource = timetableSource;
   }
-  
+
 }
@@ -1,83 +1,556 @@
 package com.pathfinder.internal;
 
 import com.pathfinder.api.GraphTraversalService;
+import com.pathfinder.api.LocalGraphTraversalService;
+import com.pathfinder.api.PathQuery;
+import com.pathfinder.api.TimetableChangeListener;
 import com.pathfinder.api.TransitEdge;
 import com.pathfinder.api.TransitPath;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class GraphTraversalServiceImpl implements GraphTraversalService {
+/**
+ * Earliest arrival routing over the timetable supplied by the {@link GraphDAO}.
+ * <p/>
+ * The best path is found with the configured {@link RoutingEngine}, a time-dependent
+ * Dijkstra by default, optionally directed towards the destination by the
+ * positions of the locations.
+ * Alternative candidates are found by parallel spur searches, see {@link CandidatePaths}.
+ * The queries of a batch are solved in parallel on the same pool, against the same graph snapshot.
+ * <p/>
+ * Exported over RMI as a {@link GraphTraversalService}, and used directly by co-located
+ * clients as a {@link LocalGraphTraversalService}.
+ * <p/>
+ * The routing graph is built from the full timetable on first use. After that, schedule
+ * changes are applied one voyage at a time to a copy of the current snapshot, which is
+ * then swapped in. Queries in progress finish on the snapshot they started with.
+ * <p/>
+ * With a snapshot file configured, every full build is also written to disk, and a
+ * restarted service maps the file instead of loading the full timetable, see
+ * {@link RoutingGraphSnapshot}. The timetable may have changed while the service was down,
+ * so the graph is then rebuilt in the background and swapped in when it is ready.
+ * <p/>
+ * With lane profiles enabled, the earliest arrival on the configured lanes, or between every
+ * pair of locations if none are configured, is precomputed for every departure time in the
+ * background for each graph snapshot, see {@link LaneProfiles}. Queries for a profiled lane
+ * against a snapshot whose profiles are ready take the earliest arrival path from the table
+ * instead of searching for it, and queries for a single candidate need no search at all.
+ * <p/>
+ * Networks too large for a table of all lanes can be preprocessed around their
+ * busiest hubs instead, see {@link HubOverlay}, which also replaces the search for the
+ * earliest arrival path by lookups. The lane profiles take precedence for the lanes they cover.
+ * {@link #preprocess()} runs the enabled preprocessing up front, for example at deployment.
+ * <p/>
+ * Rebuilds, snapshot writes and preprocessing run on a background thread of their own,
+ * so that they never hold up the threads that answer queries. Preprocessing of a graph
+ * that is superseded before its turn comes is skipped in favour of the latest graph.
+ * <p/>
+ * The work done by every query is added to the {@link SearchStatistics}, and logged
+ * for queries with the {@link Limitations#TRACE} limitation.
+ */
+public class GraphTraversalServiceImpl implements GraphTraversalService, LocalGraphTraversalService, TimetableChangeListener {
 
   private GraphDAO dao;
-  private Random random;
-  private static final long ONE_MIN_MS = 1000 * 60;
-  private static final long ONE_DAY_MS = ONE_MIN_MS * 60 * 24;
+  private volatile RoutingGraph graph;
+  private RoutingEngine engine = RoutingEngine.GRAPH_SEARCH;
+  private double maxVesselSpeed = PortPositions.DEFAULT_MAX_SPEED_KNOTS;
+  private File snapshotFile;
+  // Voyages changed while a background rebuild is in progress, null if there is none
+  private Set<String> changedDuringRebuild;
+  private boolean laneProfiles;
+  // Origin and destination UN locodes of the profiled lanes, null for all pairs
+  private List<String[]> profiledLanes;
+  private int hubCount;
+  // Profiles and overlay of the current graph or of an earlier one, updated in the background
+  private volatile LaneProfiles profiles;
+  private volatile HubOverlay overlay;
+  private final Object profilesLock = new Object();
+  private SearchStatistics statistics = new SearchStatistics();
+  private final ForkJoinPool pool = new ForkJoinPool();
+  private final ExecutorService background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "pathfinder-background");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  // Latest preprocessing request that the background thread hasn't picked up yet
+  private final AtomicReference<Preprocessing> pendingPreprocessing = new AtomicReference<Preprocessing>();
+  private static final Log logger = LogFactory.getLog(GraphTraversalServiceImpl.class);
 
   public GraphTraversalServiceImpl(GraphDAO dao) {
     this.dao = dao;
-    this.random = new Random();
   }
 
   public List<TransitPath> findShortestPath(final String originUnLocode,
                                             final String destinationUnLocode,
                                             final Properties limitations) {
-    Date date = nextDate(new Date());
-
-    List<String> allVertices = dao.listLocations();
-    allVertices.remove(originUnLocode);
-    allVertices.remove(destinationUnLocode);
-
-    final int candidateCount = getRandomNumberOfCandidates();
-    final List<TransitPath> candidates = new ArrayList<TransitPath>(candidateCount);
-
-    for (int i = 0; i < candidateCount; i++) {
-      allVertices = getRandomChunkOfLocations(allVertices);
-      final List<TransitEdge> transitEdges = new ArrayList<TransitEdge>(allVertices.size() - 1);
-      final String firstLegTo = allVertices.get(0);
-
-      Date fromDate = nextDate(date);
-      Date toDate = nextDate(fromDate);
-      date = nextDate(toDate);
-
-      transitEdges.add(new TransitEdge(
-        dao.getVoyageNumber(originUnLocode, firstLegTo),
-        originUnLocode, firstLegTo, fromDate, toDate));
-
-      for (int j = 0; j < allVertices.size() - 1; j++) {
-        final String curr = allVertices.get(j);
-        final String next = allVertices.get(j + 1);
-        fromDate = nextDate(date);
-        toDate = nextDate(fromDate);
-        date = nextDate(toDate);
-        transitEdges.add(new TransitEdge(dao.getVoyageNumber(curr, next), curr, next, fromDate, toDate));
+    return find(graph(), originUnLocode, destinationUnLocode, limitations);
+  }
+
+  public List<List<TransitPath>> findShortestPaths(final List<PathQuery> queries) {
+    final RoutingGraph graph = graph();
+    return pool.invoke(new BatchSearches(graph, queries, 0, queries.size()));
+  }
+
+  private List<TransitPath> find(final RoutingGraph graph,
+                                 final String originUnLocode,
+                                 final String destinationUnLocode,
+                                 final Properties limitations) {
+    final int origin = graph.indexOf(originUnLocode);
+    final int destination = graph.indexOf(destinationUnLocode);
+    if (origin < 0 || destination < 0 || origin == destination) {
+      return Collections.emptyList();
+    }
+
+    final long earliestDeparture = Limitations.time(limitations, Limitations.EARLIEST_DEPARTURE, Long.MIN_VALUE);
+    final long deadline = Limitations.time(limitations, Limitations.DEADLINE, Long.MAX_VALUE);
+
+    final int maxCandidates = Limitations.integer(limitations, Limitations.MAX_CANDIDATES,
+      Limitations.DEFAULT_MAX_CANDIDATES, 1, Limitations.MAX_CANDIDATES_LIMIT);
+
+    final int timeBudget = Limitations.integer(limitations, Limitations.TIME_BUDGET_MS, 0, 0, Integer.MAX_VALUE);
+
+    final QueryTrace trace = new QueryTrace();
+    final List<TransitPath> candidates = find(graph, origin, destination, earliestDeparture, deadline,
+      maxCandidates, TimeBudget.of(timeBudget), trace);
+
+    final boolean traced = Limitations.flag(limitations, Limitations.TRACE);
+    statistics.record(trace, traced);
+    if (traced) {
+      logger.info("Trace of " + originUnLocode + " to " + destinationUnLocode + ": " + trace);
+    }
+    return candidates;
+  }
+
+  private List<TransitPath> find(final RoutingGraph graph, final int origin, final int destination,
+                                 final long earliestDeparture, final long deadline, final int maxCandidates,
+                                 final TimeBudget budget, final QueryTrace trace) {
+    long start = System.nanoTime();
+    int[] first = null;
+    final LaneProfiles lanes = profiles;
+    final HubOverlay hubs = overlay;
+    if (lanes != null && lanes.graph() == graph && lanes.covers(origin, destination)) {
+      if (lanes.earliestArrival(origin, earliestDeparture, destination) >= deadline) {
+        trace.phaseDone(QueryTrace.Phase.LOOKUP, start);
+        return Collections.emptyList();
       }
+      first = lanes.path(origin, earliestDeparture, destination);
+      trace.phaseDone(QueryTrace.Phase.LOOKUP, start);
+    } else if (hubs != null && hubs.graph() == graph) {
+      first = hubs.path(origin, earliestDeparture, destination);
+      trace.phaseDone(QueryTrace.Phase.LOOKUP, start);
+      if (first == null || graph.arrival(first[first.length - 1]) >= deadline) {
+        return Collections.emptyList();
+      }
+    }
 
-      final String lastLegFrom = allVertices.get(allVertices.size() - 1);
-      fromDate = nextDate(date);
-      toDate = nextDate(fromDate);
-      transitEdges.add(new TransitEdge(
-        dao.getVoyageNumber(lastLegFrom, destinationUnLocode),
-        lastLegFrom, destinationUnLocode, fromDate, toDate));
+    final PathSearch search = engine.search(graph, deadline, trace);
+    if (first == null) {
+      start = System.nanoTime();
+      // Within the budget too, a slow lane would otherwise overrun it before the alternatives
+      first = search.search(origin, earliestDeparture, destination, budget);
+      trace.phaseDone(QueryTrace.Phase.SEARCH, start);
+      if (first == null) {
+        return Collections.emptyList();
+      }
+    }
 
-      candidates.add(new TransitPath(transitEdges));
+    final List<int[]> paths;
+    if (maxCandidates == 1) {
+      paths = Collections.singletonList(first);
+    } else {
+      start = System.nanoTime();
+      paths = new CandidatePaths(graph, search, pool).find(origin, earliestDeparture, destination, first,
+        maxCandidates, budget);
+      trace.phaseDone(QueryTrace.Phase.ALTERNATIVES, start);
     }
 
+    start = System.nanoTime();
+    final List<TransitPath> candidates = new ArrayList<TransitPath>(paths.size());
+    for (int[] path : paths) {
+      candidates.add(toTransitPath(graph, path));
+    }
+    trace.phaseDone(QueryTrace.Phase.CONVERSION, start);
+    trace.candidates(candidates.size());
     return candidates;
   }
 
-  private Date nextDate(Date date) {
-    return new Date(date.getTime() + ONE_DAY_MS + (random.nextInt(1000) - 500) * ONE_MIN_MS);
+  /**
+   * Solves a range of batch queries, splitting the range until each task handles a single query.
+   */
+  private final class BatchSearches extends RecursiveTask<List<List<TransitPath>>> {
+
+    private final RoutingGraph graph;
+    private final List<PathQuery> queries;
+    private final int from;
+    private final int to;
+
+    BatchSearches(final RoutingGraph graph, final List<PathQuery> queries, final int from, final int to) {
+      this.graph = graph;
+      this.queries = queries;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected List<List<TransitPath>> compute() {
+      if (to - from > 1) {
+        final int mid = (from + to) >>> 1;
+        final BatchSearches left = new BatchSearches(graph, queries, from, mid);
+        final BatchSearches right = new BatchSearches(graph, queries, mid, to);
+        right.fork();
+        final List<List<TransitPath>> result = new ArrayList<List<TransitPath>>(left.compute());
+        result.addAll(right.join());
+        return result;
+      }
+
+      final List<List<TransitPath>> result = new ArrayList<List<TransitPath>>(1);
+      if (from < to) {
+        final PathQuery query = queries.get(from);
+        result.add(find(graph, query.getOriginUnLocode(), query.getDestinationUnLocode(), query.getLimitations()));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Merges consecutive edges on the same voyage into a single load/unload edge.
+   */
+  private TransitPath toTransitPath(final RoutingGraph graph, final int[] path) {
+    final List<TransitEdge> edges = new ArrayList<TransitEdge>(path.length);
+    for (int edge : path) {
+      edges.add(graph.toTransitEdge(edge));
+    }
+    return new TransitPath(mergeVoyages(edges));
+  }
+
+  static List<TransitEdge> mergeVoyages(final List<TransitEdge> edges) {
+    final List<TransitEdge> legs = new ArrayList<TransitEdge>(edges.size());
+    TransitEdge current = null;
+    for (TransitEdge edge : edges) {
+      if (current != null && current.getVoyageNumber().equals(edge.getVoyageNumber())) {
+        current = new TransitEdge(current.getVoyageNumber(),
+          current.getFromUnLocode(), edge.getToUnLocode(),
+          current.getFromDate(), edge.getToDate());
+      } else {
+        if (current != null) {
+          legs.add(current);
+        }
+        current = edge;
+      }
+    }
+    if (current != null) {
+      legs.add(current);
+    }
+    return legs;
+  }
+
+  public void voyageChanged(final String voyageNumber) {
+    synchronized (this) {
+      final RoutingGraph current = graph;
+      if (current == null) {
+        // Not built yet, the full build will read the current schedule
+        return;
+      }
+      if (changedDuringRebuild != null) {
+        changedDuringRebuild.add(voyageNumber);
+      }
+      final long start = System.currentTimeMillis();
+      final RoutingGraph updated = current.withVoyage(voyageNumber, dao.listTransitEdges(voyageNumber));
+      graph = updated;
+      logger.info("Updated voyage " + voyageNumber + " in " + (System.currentTimeMillis() - start) + " ms, " + updated);
+      updateProfiles(current, updated, voyageNumber);
+    }
+  }
+
+  /**
+   * @param engine earliest arrival search algorithm, graph search by default
+   */
+  public void setEngine(final RoutingEngine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * @param maxVesselSpeed highest speed of any vessel in knots, for goal-directed searches
+   */
+  public void setMaxVesselSpeed(final double maxVesselSpeed) {
+    this.maxVesselSpeed = maxVesselSpeed;
+  }
+
+  /**
+   * @param laneProfiles whether to precompute the earliest arrivals on the profiled lanes, which takes
+   * memory in proportion to the number of lanes and the number of departures
+   */
+  public void setLaneProfiles(final boolean laneProfiles) {
+    this.laneProfiles = laneProfiles;
+  }
+
+  /**
+   * @param profiledLanes lanes to precompute the earliest arrivals for, as origin and destination
+   * UN locodes separated by a dash, for example <code>CNHKG-FIHEL</code>, or null for all pairs of locations
+   */
+  public void setProfiledLanes(final List<String> profiledLanes) {
+    if (profiledLanes == null) {
+      this.profiledLanes = null;
+      return;
+    }
+    final List<String[]> lanes = new ArrayList<String[]>(profiledLanes.size());
+    for (String lane : profiledLanes) {
+      final String[] unLocodes = lane.trim().split("-");
+      if (unLocodes.length != 2) {
+        throw new IllegalArgumentException("Lane must be two UN locodes separated by a dash: " + lane);
+      }
+      lanes.add(unLocodes);
+    }
+    this.profiledLanes = lanes;
   }
 
-  private int getRandomNumberOfCandidates() {
-    return 3 + random.nextInt(3);
+  /**
+   * @param hubCount number of hubs to preprocess the graph around, zero to not preprocess it
+   */
+  public void setHubCount(final int hubCount) {
+    this.hubCount = hubCount;
   }
 
-  private List<String> getRandomChunkOfLocations(List<String> allLocations) {
-    Collections.shuffle(allLocations);
-    final int total = allLocations.size();
-    final int chunk = total > 4 ? 1 + new Random().nextInt(5) : total;
-    return allLocations.subList(0, chunk);
+  /**
+   * Builds the graph if necessary, and runs the enabled preprocessing on the calling thread
+   * instead of in the background.
+   */
+  public void preprocess() {
+    preprocess(null, graph(), null);
+  }
+
+  /**
+   * @param statistics aggregate counters to add every query to, for export over JMX
+   */
+  public void setStatistics(final SearchStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  /**
+   * @return Aggregate counters of the queries answered so far.
+   */
+  public SearchStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @param snapshotFile file to persist the routing graph to, and to start from after a restart
+   */
+  public void setSnapshotFile(final File snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  /**
+   * @return The hub overlay of the current graph, or null if it is not ready.
+   */
+  HubOverlay hubOverlay() {
+    final HubOverlay result = overlay;
+    return result != null && result.graph() == graph ? result : null;
+  }
+
+  /**
+   * @return The lane profiles of the current graph, or null if they are not ready.
+   */
+  LaneProfiles laneProfiles() {
+    final LaneProfiles result = profiles;
+    return result != null && result.graph() == graph ? result : null;
+  }
+
+  /**
+   * @return Approximate heap footprint in bytes of the current routing graph snapshot.
+   */
+  public long routingGraphFootprint() {
+    return graph().footprint();
+  }
+
+  /**
+   * @return Approximate heap footprint in bytes of the lane profiles and the hub overlay, if they are ready.
+   */
+  public long preprocessingFootprint() {
+    final LaneProfiles lanes = laneProfiles();
+    final HubOverlay hubs = hubOverlay();
+    return (lanes == null ? 0 : lanes.footprint()) + (hubs == null ? 0 : hubs.footprint());
+  }
+
+  private RoutingGraph graph() {
+    RoutingGraph result = graph;
+    if (result == null) {
+      synchronized (this) {
+        result = graph;
+        if (result == null) {
+          result = loadSnapshot();
+          if (result != null) {
+            changedDuringRebuild = new HashSet<String>();
+            background.execute(new Runnable() {
+              public void run() {
+                rebuild();
+              }
+            });
+          } else {
+            result = build();
+          }
+          graph = result;
+          updateProfiles(null, result, null);
+        }
+      }
+    }
+    return result;
+  }
+
+  private RoutingGraph build() {
+    final long start = System.currentTimeMillis();
+    final RoutingGraph result = RoutingGraph.build(dao.listTransitEdges(), dao.listPortPositions(), maxVesselSpeed);
+    logger.info("Built " + result + " in " + (System.currentTimeMillis() - start) + " ms");
+    if (snapshotFile != null) {
+      background.execute(new Runnable() {
+        public void run() {
+          writeSnapshot(result);
+        }
+      });
+    }
+    return result;
+  }
+
+  /**
+   * Replaces a graph loaded from a snapshot with one built from the current timetable,
+   * and reapplies the schedule changes that arrived in the meantime.
+   */
+  private void rebuild() {
+    RoutingGraph result = null;
+    try {
+      result = build();
+    } catch (RuntimeException e) {
+      logger.error("Failed to rebuild the routing graph, keeping the snapshot", e);
+    }
+    synchronized (this) {
+      if (result != null) {
+        for (String voyageNumber : changedDuringRebuild) {
+          result = result.withVoyage(voyageNumber, dao.listTransitEdges(voyageNumber));
+        }
+        graph = result;
+        updateProfiles(null, result, null);
+      }
+      changedDuringRebuild = null;
+    }
+  }
+
+  /**
+   * Brings the lane profiles up to date with a new graph in the background. The profiles
+   * are updated incrementally if they belong to the graph that the change was applied to,
+   * and computed from scratch otherwise. Requests that arrive while an earlier one is
+   * still queued replace it.
+   *
+   * @param previous the graph before the change, or null after a full build
+   * @param updated the new graph
+   * @param voyageNumber the changed voyage, or null after a full build
+   */
+  private void updateProfiles(final RoutingGraph previous, final RoutingGraph updated, final String voyageNumber) {
+    if (!laneProfiles && hubCount == 0) {
+      return;
+    }
+    if (pendingPreprocessing.getAndSet(new Preprocessing(previous, updated, voyageNumber)) == null) {
+      background.execute(new Runnable() {
+        public void run() {
+          final Preprocessing latest = pendingPreprocessing.getAndSet(null);
+          preprocess(latest.previous, latest.updated, latest.voyageNumber);
+        }
+      });
+    }
+  }
+
+  private static final class Preprocessing {
+    final RoutingGraph previous;
+    final RoutingGraph updated;
+    final String voyageNumber;
+
+    Preprocessing(final RoutingGraph previous, final RoutingGraph updated, final String voyageNumber) {
+      this.previous = previous;
+      this.updated = updated;
+      this.voyageNumber = voyageNumber;
+    }
+  }
+
+  private void preprocess(final RoutingGraph previous, final RoutingGraph updated, final String voyageNumber) {
+    synchronized (profilesLock) {
+      if (updated != graph) {
+        // Superseded, a later update will follow
+        return;
+      }
+      final LaneProfiles current = profiles;
+      if (laneProfiles && (current == null || current.graph() != updated)) {
+        final long start = System.currentTimeMillis();
+        final int voyage = voyageNumber == null ? -1 : updated.indexOfVoyage(voyageNumber);
+        // A change that adds locations may add a profiled lane too
+        if (current != null && current.graph() == previous && voyage >= 0 &&
+          (profiledLanes == null || previous.vertexCount() == updated.vertexCount())) {
+          profiles = current.withVoyage(updated, voyage);
+        } else if (profiledLanes == null) {
+          profiles = LaneProfiles.build(updated);
+        } else {
+          profiles = LaneProfiles.build(updated, lanes(updated));
+        }
+        logger.info("Updated " + profiles + " in " + (System.currentTimeMillis() - start) + " ms");
+      }
+      final HubOverlay currentOverlay = overlay;
+      if (hubCount > 0 && (currentOverlay == null || currentOverlay.graph() != updated)) {
+        final long start = System.currentTimeMillis();
+        overlay = HubOverlay.build(updated, hubCount);
+        logger.info("Built " + overlay + " in " + (System.currentTimeMillis() - start) + " ms");
+      }
+    }
+  }
+
+  /**
+   * @return The origin and destination vertices of the profiled lanes that are both in the graph.
+   */
+  private int[][] lanes(final RoutingGraph graph) {
+    final List<int[]> lanes = new ArrayList<int[]>(profiledLanes.size());
+    for (String[] lane : profiledLanes) {
+      final int origin = graph.indexOf(lane[0]);
+      final int destination = graph.indexOf(lane[1]);
+      if (origin >= 0 && destination >= 0 && origin != destination) {
+        lanes.add(new int[]{origin, destination});
+      }
+    }
+    return lanes.toArray(new int[lanes.size()][]);
+  }
+
+  private RoutingGraph loadSnapshot() {
+    if (snapshotFile == null || !snapshotFile.isFile()) {
+      return null;
+    }
+    try {
+      final long start = System.currentTimeMillis();
+      final RoutingGraphSnapshot snapshot = RoutingGraphSnapshot.read(snapshotFile);
+      logger.info("Loaded " + snapshot.graph() + " from " + snapshotFile + ", written " + snapshot.written() +
+        ", in " + (System.currentTimeMillis() - start) + " ms");
+      return snapshot.graph();
+    } catch (IOException e) {
+      logger.warn("Ignoring routing graph snapshot " + snapshotFile, e);
+      return null;
+    }
+  }
+
+  private void writeSnapshot(final RoutingGraph graph) {
+    try {
+      final long start = System.currentTimeMillis();
+      RoutingGraphSnapshot.write(graph, snapshotFile);
+      logger.info("Wrote routing graph snapshot " + snapshotFile + " in " + (System.currentTimeMillis() - start) + " ms");
+    } catch (IOException e) {
+      logger.warn("Failed to write routing graph snapshot " + snapshotFile, e);
+    }
   }
 
 }
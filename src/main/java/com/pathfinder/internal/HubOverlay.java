@@ -0,0 +1,144 @@
+package com.pathfinder.internal;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Hub contraction preprocessing: earliest arrival queries between any two vertices
+ * are answered through a small set of transshipment hubs, with table lookups instead
+ * of a search over the whole graph.
+ * <p/>
+ * The hubs are the vertices with the most departures. Two partial {@link LaneProfiles}
+ * tables are precomputed: the profiles from every other vertex to each hub without passing
+ * another hub on the way, and the profiles from each hub to every vertex. The earliest arrival
+ * path from an origin to a destination either passes through a hub, or it doesn't. If it does,
+ * it can't arrive earlier than the best combination of getting to some hub as early as
+ * possible without passing another hub, and continuing from there as early as possible,
+ * and every such combination is a valid path. Paths that avoid all hubs are found with a
+ * search in which the hubs are banned, which only touches the local feeder network of the
+ * origin, and is pruned by the best arrival through a hub.
+ * <p/>
+ * Since the first table only holds the access from a vertex to the nearby hubs, the memory
+ * needed grows with the number of vertices times the number of hubs, rather than with the square
+ * of the number of vertices.
+ * <p/>
+ * The result is exact. The overlay is not updated incrementally after schedule changes,
+ * it is computed again for the new graph.
+ */
+final class HubOverlay {
+
+  private final RoutingGraph graph;
+  private final int[] hubs;
+  private final boolean[] isHub;
+  private final LaneProfiles toHubs;
+  private final LaneProfiles fromHubs;
+
+  private HubOverlay(final RoutingGraph graph, final int[] hubs, final boolean[] isHub,
+                     final LaneProfiles toHubs, final LaneProfiles fromHubs) {
+    this.graph = graph;
+    this.hubs = hubs;
+    this.isHub = isHub;
+    this.toHubs = toHubs;
+    this.fromHubs = fromHubs;
+  }
+
+  /**
+   * @param graph routing graph
+   * @param hubCount number of hubs, at most the number of vertices
+   * @return The overlay.
+   */
+  static HubOverlay build(final RoutingGraph graph, final int hubCount) {
+    final int n = graph.vertexCount();
+    final Integer[] vertices = new Integer[n];
+    for (int v = 0; v < n; v++) {
+      vertices[v] = v;
+    }
+    Arrays.sort(vertices, new Comparator<Integer>() {
+      public int compare(final Integer v1, final Integer v2) {
+        final int departures1 = graph.endEdge(v1) - graph.firstEdge(v1);
+        final int departures2 = graph.endEdge(v2) - graph.firstEdge(v2);
+        return departures1 != departures2 ? departures2 - departures1 : v1 - v2;
+      }
+    });
+
+    final int[] hubs = new int[Math.min(hubCount, n)];
+    final boolean[] isHub = new boolean[n];
+    for (int i = 0; i < hubs.length; i++) {
+      hubs[i] = vertices[i];
+      isHub[hubs[i]] = true;
+    }
+
+    return new HubOverlay(graph, hubs, isHub,
+      LaneProfiles.build(graph, isHub, null, isHub),
+      LaneProfiles.build(graph, null, isHub, null));
+  }
+
+  /**
+   * @return The graph that the overlay was computed for.
+   */
+  RoutingGraph graph() {
+    return graph;
+  }
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex, not the origin
+   * @return Edge positions of an earliest arrival path, or null if there is none.
+   */
+  int[] path(final int origin, final long departure, final int destination) {
+    if (isHub[origin]) {
+      return fromHubs.path(origin, departure, destination);
+    }
+
+    long best = Long.MAX_VALUE;
+    int bestHub = -1;
+    long bestHubArrival = 0;
+    for (int hub : hubs) {
+      final long hubArrival = toHubs.earliestArrival(origin, departure, hub);
+      if (hubArrival == Long.MAX_VALUE) {
+        continue;
+      }
+      final long arrival = hub == destination ? hubArrival : fromHubs.earliestArrival(hub, hubArrival, destination);
+      if (arrival < best) {
+        best = arrival;
+        bestHub = hub;
+        bestHubArrival = hubArrival;
+      }
+    }
+
+    if (!isHub[destination]) {
+      // Anything that avoids the hubs must arrive strictly earlier to be better
+      final int[] local = new EarliestArrivalSearch(graph, best, false).search(origin, departure, destination,
+        isHub, new int[0], TimeBudget.UNLIMITED);
+      if (local != null) {
+        return local;
+      }
+    }
+    if (bestHub < 0) {
+      return null;
+    }
+
+    final int[] toHub = toHubs.path(origin, departure, bestHub);
+    final int[] fromHub = bestHub == destination ? new int[0] : fromHubs.path(bestHub, bestHubArrival, destination);
+    if (toHub == null || fromHub == null) {
+      return null;
+    }
+    final int[] path = Arrays.copyOf(toHub, toHub.length + fromHub.length);
+    System.arraycopy(fromHub, 0, path, toHub.length, fromHub.length);
+    return path;
+  }
+
+  /**
+   * @return Approximate footprint in bytes, assuming a 64-bit JVM.
+   */
+  long footprint() {
+    return toHubs.footprint() + fromHubs.footprint() + 16 + 4L * hubs.length + 16 + isHub.length;
+  }
+
+  @Override
+  public String toString() {
+    return "Hub overlay with " + hubs.length + " hubs, to hubs: " + toHubs + ", from hubs: " + fromHubs;
+  }
+
+}
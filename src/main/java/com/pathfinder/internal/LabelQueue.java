@@ -0,0 +1,76 @@
+package com.pathfinder.internal;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of (time, vertex) labels on primitive arrays,
+ * so that the search loop does not allocate an object per relaxed edge.
+ * Stale labels are not removed, the caller skips already settled vertices.
+ */
+final class LabelQueue {
+
+  private long[] times;
+  private int[] vertices;
+  private int size;
+
+  LabelQueue(final int initialCapacity) {
+    final int capacity = Math.max(initialCapacity, 16);
+    this.times = new long[capacity];
+    this.vertices = new int[capacity];
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void add(final int vertex, final long time) {
+    if (size == times.length) {
+      times = Arrays.copyOf(times, size * 2);
+      vertices = Arrays.copyOf(vertices, size * 2);
+    }
+    int i = size++;
+    while (i > 0) {
+      final int parent = (i - 1) >>> 1;
+      if (times[parent] <= time) {
+        break;
+      }
+      times[i] = times[parent];
+      vertices[i] = vertices[parent];
+      i = parent;
+    }
+    times[i] = time;
+    vertices[i] = vertex;
+  }
+
+  /**
+   * Removes the minimum label.
+   *
+   * @return Vertex of the removed label.
+   */
+  int poll() {
+    final int result = vertices[0];
+    final int last = --size;
+    final long time = times[last];
+    final int vertex = vertices[last];
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= last) {
+        break;
+      }
+      if (child + 1 < last && times[child + 1] < times[child]) {
+        child++;
+      }
+      if (times[child] >= time) {
+        break;
+      }
+      times[i] = times[child];
+      vertices[i] = vertices[child];
+      i = child;
+    }
+    times[i] = time;
+    vertices[i] = vertex;
+    return result;
+  }
+
+}
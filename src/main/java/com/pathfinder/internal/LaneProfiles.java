@@ -0,0 +1,477 @@
+package com.pathfinder.internal;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed earliest arrival profiles between all pairs of vertices of one {@link RoutingGraph}.
+ * <p/>
+ * The profile of a lane is a step function from departure time to earliest arrival time,
+ * stored as the departures at which it changes: entry <code>i</code> says that a cargo
+ * in port at the origin at or before <code>departure[i]</code>, and after the previous
+ * entry's departure, arrives at <code>arrival[i]</code> at the earliest, by first boarding
+ * <code>voyage[i]</code> at that departure. Looking up a lane is two binary searches,
+ * one for the origin and one for the departure.
+ * <p/>
+ * All profiles towards one destination are found in a single backward scan over the
+ * connections, latest departure first, and kept in parallel primitive arrays per destination.
+ * The path behind a profile entry is recovered by following the entries of the
+ * intermediate vertices, since every edge of such a path is itself the first edge
+ * of an entry towards the same destination.
+ * <p/>
+ * After a schedule change of one voyage, {@link #withVoyage(RoutingGraph, int)} only
+ * scans again for the destinations whose profiles used the voyage or could be improved by it.
+ * <p/>
+ * A partial table covers only some destinations, and only keeps the profiles of some origins,
+ * plus those of the intermediate vertices of their paths, for example for the popular lanes
+ * only, or for the hubs of a {@link HubOverlay}. Queries for other lanes are searched instead.
+ */
+final class LaneProfiles {
+
+  private final RoutingGraph graph;
+  private final Profiles[] byDestination;
+  // Origins whose profiles are kept, null for all
+  private final boolean[] origins;
+
+  private LaneProfiles(final RoutingGraph graph, final Profiles[] byDestination, final boolean[] origins) {
+    this.graph = graph;
+    this.byDestination = byDestination;
+    this.origins = origins;
+  }
+
+  /**
+   * @param graph routing graph
+   * @return Profiles between all pairs of vertices of the graph.
+   */
+  static LaneProfiles build(final RoutingGraph graph) {
+    return build(graph, null, null, null);
+  }
+
+  /**
+   * @param graph routing graph
+   * @param destinations destinations to cover, or null for all
+   * @param origins origins to keep the profiles of, or null for all
+   * @param barriers vertices that paths may only end at, not start at or pass through, or null for none
+   * @return Profiles from the origins to the destinations.
+   */
+  static LaneProfiles build(final RoutingGraph graph, final boolean[] destinations, final boolean[] origins,
+                            final boolean[] barriers) {
+    final Profiles[] byDestination = new Profiles[graph.vertexCount()];
+    final Scan scan = new Scan(graph, barriers);
+    for (int destination = 0; destination < byDestination.length; destination++) {
+      if (destinations == null || destinations[destination]) {
+        byDestination[destination] = scan.profiles(destination, origins);
+      }
+    }
+    return new LaneProfiles(graph, byDestination, origins);
+  }
+
+  /**
+   * @param graph routing graph
+   * @param lanes pairs of origin and destination vertices
+   * @return Profiles that cover at least the lanes.
+   */
+  static LaneProfiles build(final RoutingGraph graph, final int[][] lanes) {
+    final boolean[] destinations = new boolean[graph.vertexCount()];
+    final boolean[] origins = new boolean[graph.vertexCount()];
+    for (int[] lane : lanes) {
+      origins[lane[0]] = true;
+      destinations[lane[1]] = true;
+    }
+    return build(graph, destinations, origins, null);
+  }
+
+  /**
+   * @param updated the graph after a schedule change of one voyage, for a table without barriers
+   * @param voyage index of the changed voyage
+   * @return Profiles for the updated graph, covering the same lanes.
+   */
+  LaneProfiles withVoyage(final RoutingGraph updated, final int voyage) {
+    int count = 0;
+    int[] edges = new int[16];
+    for (int edge = 0; edge < updated.edgeCount(); edge++) {
+      if (updated.voyage(edge) == voyage) {
+        if (count == edges.length) {
+          edges = Arrays.copyOf(edges, 2 * count);
+        }
+        edges[count++] = edge;
+      }
+    }
+    edges = Arrays.copyOf(edges, count);
+
+    final Profiles[] byDestination = Arrays.copyOf(this.byDestination, updated.vertexCount());
+    // Locations added by the change are not origins of any lane
+    final boolean[] updatedOrigins = origins == null ? null : Arrays.copyOf(origins, updated.vertexCount());
+    final Scan scan = new Scan(updated, null);
+    for (int destination = 0; destination < byDestination.length; destination++) {
+      final Profiles profiles = byDestination[destination];
+      if (profiles == null) {
+        if (origins == null) {
+          byDestination[destination] = scan.profiles(destination, null);
+        }
+      } else if (profiles.uses(voyage) || isImprovedBy(updated, edges, destination, profiles, origins != null)) {
+        byDestination[destination] = scan.profiles(destination, updatedOrigins);
+      }
+    }
+    return new LaneProfiles(updated, byDestination, updatedOrigins);
+  }
+
+  /**
+   * If no single new edge improves on the old profiles, neither does any path with several,
+   * so the old profiles are still exact. In a partial table, an edge towards a vertex whose
+   * profile is not kept can't be ruled out, since the arrival from there is not known.
+   *
+   * @param edges positions of the edges of the changed voyage in the updated graph
+   * @param partial whether only some origins are kept
+   * @return True if any of the edges may give an earlier arrival than the old profiles.
+   */
+  private static boolean isImprovedBy(final RoutingGraph updated, final int[] edges, final int destination,
+                                      final Profiles profiles, final boolean partial) {
+    for (int edge : edges) {
+      final int source = updated.source(edge);
+      if (source == destination) {
+        continue;
+      }
+      final int target = updated.target(edge);
+      if (partial && target != destination && !profiles.keeps(target)) {
+        return true;
+      }
+      final long arrival = target == destination ? updated.arrival(edge) :
+        profiles.earliestArrival(target, updated.arrival(edge));
+      if (arrival < profiles.earliestArrival(source, updated.departure(edge))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return The graph that the profiles were computed for.
+   */
+  RoutingGraph graph() {
+    return graph;
+  }
+
+  /**
+   * @param origin origin vertex
+   * @param destination destination vertex
+   * @return True if the table has the profile of the lane, whether the destination can be reached or not.
+   */
+  boolean covers(final int origin, final int destination) {
+    return destination < byDestination.length && byDestination[destination] != null &&
+      (origins == null || origin < origins.length && origins[origin]);
+  }
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex, covered by the table
+   * @return Earliest arrival at the destination, or {@link Long#MAX_VALUE} if it can't be reached,
+   * or if the profile of the origin is not kept.
+   */
+  long earliestArrival(final int origin, final long departure, final int destination) {
+    return byDestination[destination].earliestArrival(origin, departure);
+  }
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex covered by the table, not the origin
+   * @return Edge positions of an earliest arrival path, or null if there is none.
+   */
+  int[] path(final int origin, final long departure, final int destination) {
+    final Profiles profiles = byDestination[destination];
+    if (profiles.earliestArrival(origin, departure) == Long.MAX_VALUE) {
+      return null;
+    }
+    int[] path = new int[4];
+    int length = 0;
+    int vertex = origin;
+    long time = departure;
+    while (vertex != destination) {
+      final int edge = profiles.firstEdge(graph, vertex, time);
+      if (edge < 0 || length == graph.edgeCount()) {
+        return null;
+      }
+      if (length == path.length) {
+        path = Arrays.copyOf(path, 2 * length);
+      }
+      path[length++] = edge;
+      vertex = graph.target(edge);
+      time = graph.arrival(edge);
+    }
+    return Arrays.copyOf(path, length);
+  }
+
+  /**
+   * @return Approximate footprint in bytes, assuming a 64-bit JVM.
+   */
+  long footprint() {
+    long bytes = 16 + 8L * byDestination.length;
+    for (Profiles profiles : byDestination) {
+      bytes += profiles == null ? 0 : profiles.footprint();
+    }
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    long entries = 0;
+    int destinations = 0;
+    for (Profiles profiles : byDestination) {
+      if (profiles != null) {
+        entries += profiles.departure.length;
+        destinations++;
+      }
+    }
+    return "Lane profiles with " + entries + " entries for " + destinations + " destinations, approx. " +
+      (footprint() / 1024) + " kB";
+  }
+
+  /**
+   * The profiles of all origins towards one destination. The entries of an origin are
+   * sorted by departure, and since a later departure never arrives earlier, also by arrival.
+   */
+  private static final class Profiles {
+
+    // Origins with a non-empty profile, ascending, and the position of their first entry
+    private final int[] origins;
+    private final int[] firstEntry;
+    private final long[] departure;
+    private final long[] arrival;
+    private final int[] voyage;
+
+    Profiles(final int[] origins, final int[] firstEntry,
+             final long[] departure, final long[] arrival, final int[] voyage) {
+      this.origins = origins;
+      this.firstEntry = firstEntry;
+      this.departure = departure;
+      this.arrival = arrival;
+      this.voyage = voyage;
+    }
+
+    long earliestArrival(final int origin, final long time) {
+      final int entry = entry(origin, time);
+      return entry < 0 ? Long.MAX_VALUE : arrival[entry];
+    }
+
+    /**
+     * @return Position in the graph of the first edge of the earliest arrival path, or -1 if there is none.
+     */
+    int firstEdge(final RoutingGraph graph, final int origin, final long time) {
+      final int entry = entry(origin, time);
+      if (entry < 0) {
+        return -1;
+      }
+      final int end = graph.endEdge(origin);
+      for (int edge = graph.firstDepartureAtOrAfter(origin, departure[entry]);
+           edge < end && graph.departure(edge) == departure[entry]; edge++) {
+        if (graph.voyage(edge) == voyage[entry]) {
+          return edge;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * @return Position of the first entry of the origin departing at or after the time, or -1 if there is none.
+     */
+    private int entry(final int origin, final long time) {
+      final int index = Arrays.binarySearch(origins, origin);
+      if (index < 0) {
+        return -1;
+      }
+      int low = firstEntry[index];
+      int high = firstEntry[index + 1];
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (departure[mid] < time) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low < firstEntry[index + 1] ? low : -1;
+    }
+
+    boolean keeps(final int origin) {
+      return Arrays.binarySearch(origins, origin) >= 0;
+    }
+
+    boolean uses(final int voyage) {
+      for (int v : this.voyage) {
+        if (v == voyage) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long footprint() {
+      return 5 * 16 + 4L * (origins.length + firstEntry.length) + 20L * departure.length;
+    }
+  }
+
+  /**
+   * Backward connection scan, reusing its working arrays for every destination.
+   * The entries of each vertex are collected latest departure first, in one growing list per vertex.
+   */
+  private static final class Scan {
+
+    private final RoutingGraph graph;
+    private final ConnectionIndex connections;
+    private final int[] count;
+    private final long[][] departure;
+    private final long[][] arrival;
+    private final int[][] voyage;
+    private final int[][] entryTarget;
+    private final boolean[] kept;
+    private final int[] queue;
+    private final boolean[] barriers;
+
+    Scan(final RoutingGraph graph, final boolean[] barriers) {
+      this.graph = graph;
+      this.barriers = barriers;
+      this.connections = graph.connections();
+      final int n = graph.vertexCount();
+      this.count = new int[n];
+      this.departure = new long[n][];
+      this.arrival = new long[n][];
+      this.voyage = new int[n][];
+      this.entryTarget = new int[n][];
+      this.kept = new boolean[n];
+      this.queue = new int[n];
+    }
+
+    /**
+     * @param destination destination vertex
+     * @param origins origins to keep the profiles of, or null for all
+     * @return The profiles of the origins, and of every vertex on their earliest arrival paths.
+     */
+    Profiles profiles(final int destination, final boolean[] origins) {
+      final int n = graph.vertexCount();
+      Arrays.fill(count, 0);
+
+      for (int c = connections.size() - 1; c >= 0; c--) {
+        final int source = connections.source(c);
+        if (source == destination) {
+          continue;
+        }
+        final int target = connections.target(c);
+        if (barriers != null && (barriers[source] || barriers[target] && target != destination)) {
+          continue;
+        }
+        final long edgeArrival = connections.arrival(c);
+        final long reached = target == destination ? edgeArrival : earliestArrival(target, edgeArrival);
+        if (reached == Long.MAX_VALUE) {
+          continue;
+        }
+        final int entries = count[source];
+        if (entries > 0 && reached >= arrival[source][entries - 1]) {
+          continue;
+        }
+        final long edgeDeparture = connections.departure(c);
+        final int entry = entries > 0 && departure[source][entries - 1] == edgeDeparture ? entries - 1 : entries;
+        if (entry == entries) {
+          ensureCapacity(source, entries + 1);
+          count[source]++;
+        }
+        departure[source][entry] = edgeDeparture;
+        arrival[source][entry] = reached;
+        voyage[source][entry] = graph.voyage(connections.edge(c));
+        entryTarget[source][entry] = target;
+      }
+
+      keep(destination, origins);
+      int keptCount = 0;
+      int total = 0;
+      for (int v = 0; v < n; v++) {
+        if (kept[v]) {
+          keptCount++;
+          total += count[v];
+        }
+      }
+      final int[] originArray = new int[keptCount];
+      final int[] firstEntry = new int[keptCount + 1];
+      final long[] departureArray = new long[total];
+      final long[] arrivalArray = new long[total];
+      final int[] voyageArray = new int[total];
+      int index = 0;
+      int position = 0;
+      for (int v = 0; v < n; v++) {
+        if (!kept[v]) {
+          continue;
+        }
+        originArray[index] = v;
+        firstEntry[index++] = position;
+        // Reversed into ascending departure order
+        for (int i = count[v] - 1; i >= 0; i--) {
+          departureArray[position] = departure[v][i];
+          arrivalArray[position] = arrival[v][i];
+          voyageArray[position++] = voyage[v][i];
+        }
+      }
+      firstEntry[keptCount] = position;
+      return new Profiles(originArray, firstEntry, departureArray, arrivalArray, voyageArray);
+    }
+
+    /**
+     * Marks the vertices with entries whose profiles are kept: the origins, and the targets
+     * of the entries of kept vertices, so that every kept path can be followed to the end.
+     */
+    private void keep(final int destination, final boolean[] origins) {
+      final int n = graph.vertexCount();
+      int tail = 0;
+      for (int v = 0; v < n; v++) {
+        kept[v] = count[v] > 0 && (origins == null || origins[v]);
+        if (kept[v] && origins != null) {
+          queue[tail++] = v;
+        }
+      }
+      for (int head = 0; head < tail; head++) {
+        final int v = queue[head];
+        for (int i = 0; i < count[v]; i++) {
+          final int next = entryTarget[v][i];
+          if (next != destination && !kept[next] && count[next] > 0) {
+            kept[next] = true;
+            queue[tail++] = next;
+          }
+        }
+      }
+    }
+
+    /**
+     * @return Earliest arrival at the destination departing the vertex at or after the time, according to the
+     * entries collected so far, which are all those departing later than the current connection.
+     */
+    private long earliestArrival(final int vertex, final long time) {
+      // Entries are in descending departure order, find the last one departing at or after the time
+      int low = 0;
+      int high = count[vertex];
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (departure[vertex][mid] >= time) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low == 0 ? Long.MAX_VALUE : arrival[vertex][low - 1];
+    }
+
+    private void ensureCapacity(final int vertex, final int capacity) {
+      if (departure[vertex] == null) {
+        departure[vertex] = new long[Math.max(4, capacity)];
+        arrival[vertex] = new long[departure[vertex].length];
+        voyage[vertex] = new int[departure[vertex].length];
+        entryTarget[vertex] = new int[departure[vertex].length];
+      } else if (departure[vertex].length < capacity) {
+        final int length = 2 * departure[vertex].length;
+        departure[vertex] = Arrays.copyOf(departure[vertex], length);
+        arrival[vertex] = Arrays.copyOf(arrival[vertex], length);
+        voyage[vertex] = Arrays.copyOf(voyage[vertex], length);
+        entryTarget[vertex] = Arrays.copyOf(entryTarget[vertex], length);
+      }
+    }
+  }
+
+}
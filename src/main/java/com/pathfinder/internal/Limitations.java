@@ -0,0 +1,117 @@
+package com.pathfinder.internal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Keys and parsing of the path selection limitations
+ * that clients pass to the graph traversal service.
+ */
+final class Limitations {
+
+  /**
+   * Latest allowed arrival at the destination. Either epoch millis,
+   * or the format of {@link java.util.Date#toString()}.
+   */
+  static final String DEADLINE = "DEADLINE";
+
+  /**
+   * Earliest allowed departure from the origin, same formats as {@link #DEADLINE}.
+   * Defaults to any departure in the timetable.
+   */
+  static final String EARLIEST_DEPARTURE = "EARLIEST_DEPARTURE";
+
+  /**
+   * Maximum number of candidate paths to return, at most {@link #MAX_CANDIDATES_LIMIT}.
+   */
+  static final String MAX_CANDIDATES = "MAX_CANDIDATES";
+
+  /**
+   * Wall clock time in millis to spend on the query. When it runs out, the candidates
+   * found so far are returned. If it runs out before the search for the earliest arrival
+   * path is done, the best path found by then is the only candidate, or there are none
+   * if the destination wasn't reached. Defaults to no limit.
+   */
+  static final String TIME_BUDGET_MS = "TIME_BUDGET_MS";
+
+  /**
+   * "true" to log the work done for the query: vertices settled, edges relaxed, labels
+   * pruned, and the wall time of each phase. Defaults to false.
+   */
+  static final String TRACE = "TRACE";
+
+  static final int DEFAULT_MAX_CANDIDATES = 3;
+  static final int MAX_CANDIDATES_LIMIT = 20;
+
+  private static final String DATE_TO_STRING_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+  private static final Log logger = LogFactory.getLog(Limitations.class);
+
+  /**
+   * @param limitations limitations, may be null
+   * @param key key of a time limitation
+   * @param defaultValue value to use if the key is missing or can't be parsed
+   * @return The limitation as epoch millis.
+   */
+  static long time(final Properties limitations, final String key, final long defaultValue) {
+    if (limitations == null) {
+      return defaultValue;
+    }
+    final String value = limitations.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      // Not epoch millis, try the Date.toString() format
+    }
+    try {
+      return new SimpleDateFormat(DATE_TO_STRING_FORMAT, Locale.US).parse(value).getTime();
+    } catch (ParseException e) {
+      logger.warn("Ignoring unparseable " + key + " limitation: " + value);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * @param limitations limitations, may be null
+   * @param key key of an integer limitation
+   * @param defaultValue value to use if the key is missing or can't be parsed
+   * @param min smallest allowed value
+   * @param max largest allowed value
+   * @return The limitation, clamped to the allowed range.
+   */
+  static int integer(final Properties limitations, final String key, final int defaultValue, final int min, final int max) {
+    if (limitations == null) {
+      return defaultValue;
+    }
+    final String value = limitations.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Math.max(min, Math.min(max, Integer.parseInt(value.trim())));
+    } catch (NumberFormatException e) {
+      logger.warn("Ignoring unparseable " + key + " limitation: " + value);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * @param limitations limitations, may be null
+   * @param key key of a boolean limitation
+   * @return True if the limitation is "true", ignoring case.
+   */
+  static boolean flag(final Properties limitations, final String key) {
+    return limitations != null && Boolean.parseBoolean(limitations.getProperty(key, "").trim());
+  }
+
+  private Limitations() {
+  }
+
+}
@@ -0,0 +1,46 @@
+package com.pathfinder.internal;
+
+/**
+ * An earliest arrival search over a {@link RoutingGraph}, see {@link RoutingEngine}.
+ * <p/>
+ * Vertices can be banned from the search, as can boarding certain voyages
+ * at the origin, which is what spur searches for alternative paths need.
+ * <p/>
+ * A search stops when the time budget of the query runs out, and returns the
+ * best path to the destination it has found so far, which need not be the
+ * earliest arrival path.
+ */
+interface PathSearch {
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex
+   * @return Edge positions of the earliest arrival path, or null if the destination can't be reached.
+   */
+  int[] search(int origin, long departure, int destination);
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex
+   * @param budget time budget of the query
+   * @return Edge positions of the earliest arrival path, or of the best path found before
+   * the budget ran out, or null if the destination can't be reached or wasn't reached in time.
+   */
+  int[] search(int origin, long departure, int destination, TimeBudget budget);
+
+  /**
+   * @param origin origin vertex
+   * @param departure earliest departure from the origin
+   * @param destination destination vertex
+   * @param bannedVertices vertices that may not be visited, or null
+   * @param bannedVoyages voyages that may not be boarded at the origin
+   * @param budget time budget of the query
+   * @return Edge positions of the earliest arrival path, or of the best path found before
+   * the budget ran out, or null if the destination can't be reached or wasn't reached in time.
+   */
+  int[] search(int origin, long departure, int destination, boolean[] bannedVertices, int[] bannedVoyages,
+               TimeBudget budget);
+
+}
@@ -0,0 +1,198 @@
+package com.pathfinder.internal;
+
+import com.pathfinder.api.PortPosition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Positions of the vertices of a {@link RoutingGraph}, and a lower bound on the
+ * travel time between two of them: the great-circle distance at the highest speed
+ * of any vessel. The speed is raised to the fastest edge in the timetable if necessary,
+ * so the bound never overestimates and goal-directed searches stay exact.
+ * <p/>
+ * Vertices without a known position have a bound of zero.
+ */
+final class PortPositions {
+
+  /**
+   * Fast container ships cruise at 20 to 25 knots.
+   */
+  static final double DEFAULT_MAX_SPEED_KNOTS = 30;
+
+  private static final double EARTH_RADIUS_NM = 3440.065;
+  private static final double MILLIS_PER_HOUR = 60 * 60 * 1000.0;
+
+  // Unit vectors from the center of the earth, NaN if unknown
+  private final double[] x;
+  private final double[] y;
+  private final double[] z;
+  private final int known;
+  // Nautical miles per millisecond
+  private final double speed;
+
+  private PortPositions(final double[] x, final double[] y, final double[] z, final int known, final double speed) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    this.known = known;
+    this.speed = speed;
+  }
+
+  /**
+   * @param vertexIndex vertex indices by UN locode
+   * @param vertexCount number of vertices
+   * @param portPositions known positions, positions of locations that are not vertices are ignored
+   * @param maxSpeedKnots highest speed of any vessel
+   * @return Positions of the vertices.
+   */
+  static PortPositions of(final Map<String, Integer> vertexIndex, final int vertexCount,
+                          final List<PortPosition> portPositions, final double maxSpeedKnots) {
+    final double[] x = unknown(vertexCount);
+    final double[] y = unknown(vertexCount);
+    final double[] z = unknown(vertexCount);
+    int known = 0;
+    for (PortPosition position : portPositions) {
+      final Integer vertex = vertexIndex.get(position.getUnLocode());
+      if (vertex != null && Double.isNaN(x[vertex])) {
+        final double latitude = Math.toRadians(position.getLatitude());
+        final double longitude = Math.toRadians(position.getLongitude());
+        x[vertex] = Math.cos(latitude) * Math.cos(longitude);
+        y[vertex] = Math.cos(latitude) * Math.sin(longitude);
+        z[vertex] = Math.sin(latitude);
+        known++;
+      }
+    }
+    return new PortPositions(x, y, z, known, maxSpeedKnots / MILLIS_PER_HOUR);
+  }
+
+  /**
+   * @param x x coordinates of the unit vectors of the vertices, NaN if unknown
+   * @param y y coordinates
+   * @param z z coordinates
+   * @param maxSpeedKnots highest speed of any vessel
+   * @return Positions with the given unit vectors, as read from a snapshot.
+   */
+  static PortPositions of(final double[] x, final double[] y, final double[] z, final double maxSpeedKnots) {
+    int known = 0;
+    for (double value : x) {
+      if (!Double.isNaN(value)) {
+        known++;
+      }
+    }
+    return new PortPositions(x, y, z, known, maxSpeedKnots / MILLIS_PER_HOUR);
+  }
+
+  /**
+   * @param vertexCount number of vertices, at least the current number
+   * @return Positions with the new vertices unknown.
+   */
+  PortPositions withVertexCount(final int vertexCount) {
+    if (vertexCount == x.length) {
+      return this;
+    }
+    return new PortPositions(extended(x, vertexCount), extended(y, vertexCount), extended(z, vertexCount), known, speed);
+  }
+
+  /**
+   * Raises the speed if an edge covers its distance faster.
+   *
+   * @param from departure vertex
+   * @param to arrival vertex
+   * @param departure departure time
+   * @param arrival arrival time, not before the departure
+   * @return Positions with a bound that holds for the edge.
+   */
+  PortPositions calibrated(final int from, final int to, final long departure, final long arrival) {
+    final double distance = distance(from, to);
+    if (Double.isNaN(distance) || distance == 0) {
+      return this;
+    }
+    final double edgeSpeed = arrival > departure ? distance / (arrival - departure) : Double.POSITIVE_INFINITY;
+    return edgeSpeed > speed ? new PortPositions(x, y, z, known, edgeSpeed) : this;
+  }
+
+  /**
+   * @return True if any vertex has a known position, and the bound is not always zero.
+   */
+  boolean isGoalDirected() {
+    return known > 0 && !Double.isInfinite(speed);
+  }
+
+  /**
+   * @param from vertex
+   * @param to vertex
+   * @return Lower bound on the travel time in millis, zero if either position is unknown.
+   */
+  long minTravelTime(final int from, final int to) {
+    if (Double.isInfinite(speed)) {
+      return 0;
+    }
+    final double halfChord = halfChord(from, to);
+    if (Double.isNaN(halfChord)) {
+      return 0;
+    }
+    // The first terms of the series of asin, which are all positive. This is cheaper than asin
+    // and never exceeds the distance, nor does it grow faster, so the bound stays consistent.
+    final double square = halfChord * halfChord;
+    final double angle = halfChord * (1 + square * (1.0 / 6 + square * (3.0 / 40)));
+    return (long) (2 * EARTH_RADIUS_NM * angle / speed);
+  }
+
+  /**
+   * @return Great-circle distance in nautical miles, NaN if either position is unknown.
+   */
+  double distance(final int from, final int to) {
+    return 2 * EARTH_RADIUS_NM * Math.asin(Math.min(1, halfChord(from, to)));
+  }
+
+  private double halfChord(final int from, final int to) {
+    final double dx = x[to] - x[from];
+    final double dy = y[to] - y[from];
+    final double dz = z[to] - z[from];
+    return Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+  }
+
+  /**
+   * @return Unit vector coordinates of a vertex, NaN if unknown.
+   */
+  double x(final int vertex) {
+    return x[vertex];
+  }
+
+  double y(final int vertex) {
+    return y[vertex];
+  }
+
+  double z(final int vertex) {
+    return z[vertex];
+  }
+
+  private static double[] unknown(final int length) {
+    final double[] values = new double[length];
+    Arrays.fill(values, Double.NaN);
+    return values;
+  }
+
+  private static double[] extended(final double[] values, final int length) {
+    final double[] result = Arrays.copyOf(values, length);
+    Arrays.fill(result, values.length, length, Double.NaN);
+    return result;
+  }
+
+  /**
+   * @return Approximate footprint in bytes, assuming a 64-bit JVM.
+   */
+  long footprint() {
+    return 16 + 3 * (16 + 8L * x.length);
+  }
+
+  /**
+   * @return Highest speed of any vessel, in knots.
+   */
+  double maxSpeedKnots() {
+    return speed * MILLIS_PER_HOUR;
+  }
+
+}
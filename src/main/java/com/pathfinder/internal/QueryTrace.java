@@ -0,0 +1,97 @@
+package com.pathfinder.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Work done by the searches of a single query, and the wall time of each phase
+ * of the query. Spur searches run in parallel, so the search counters are atomic,
+ * and each search adds its counts once, when it is done.
+ * <p/>
+ * Every query is counted, so that the {@link SearchStatistics} are always up to date.
+ * The trace itself is only logged if the query asks for it, see {@link Limitations#TRACE}.
+ */
+final class QueryTrace {
+
+  /**
+   * The phases of a query, in order.
+   */
+  enum Phase {
+    /** Lookup of the earliest arrival path in the lane profiles or the hub overlay. */
+    LOOKUP,
+    /** Search for the earliest arrival path. */
+    SEARCH,
+    /** Spur searches for the alternative candidates. */
+    ALTERNATIVES,
+    /** Conversion of the candidates to transit paths. */
+    CONVERSION
+  }
+
+  private final AtomicLong searches = new AtomicLong();
+  private final AtomicLong settled = new AtomicLong();
+  private final AtomicLong relaxed = new AtomicLong();
+  private final AtomicLong pruned = new AtomicLong();
+  private final long[] phaseNanos = new long[Phase.values().length];
+  private int candidates;
+
+  /**
+   * @param settled vertices settled, or connections scanned by a connection scan
+   * @param relaxed edges that improved the arrival time at their target
+   * @param pruned labels discarded because they can't reach the destination before the deadline
+   */
+  void searched(final long settled, final long relaxed, final long pruned) {
+    this.searches.incrementAndGet();
+    this.settled.addAndGet(settled);
+    this.relaxed.addAndGet(relaxed);
+    this.pruned.addAndGet(pruned);
+  }
+
+  /**
+   * @param phase phase of the query
+   * @param startNanos {@link System#nanoTime()} at the start of the phase
+   */
+  void phaseDone(final Phase phase, final long startNanos) {
+    phaseNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+  }
+
+  void candidates(final int candidates) {
+    this.candidates = candidates;
+  }
+
+  long searches() {
+    return searches.get();
+  }
+
+  long settled() {
+    return settled.get();
+  }
+
+  long relaxed() {
+    return relaxed.get();
+  }
+
+  long pruned() {
+    return pruned.get();
+  }
+
+  long phaseNanos(final Phase phase) {
+    return phaseNanos[phase.ordinal()];
+  }
+
+  int candidates() {
+    return candidates;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(candidates).append(" candidates, ").append(searches).append(" searches, ")
+      .append(settled).append(" settled, ").append(relaxed).append(" relaxed, ")
+      .append(pruned).append(" pruned");
+    for (Phase phase : Phase.values()) {
+      sb.append(", ").append(phase.name().toLowerCase()).append(' ')
+        .append(phaseNanos[phase.ordinal()] / 1000).append(" us");
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.pathfinder.internal;
+
+/**
+ * The earliest arrival search algorithms that the graph traversal service can be deployed with.
+ */
+public enum RoutingEngine {
+
+  /**
+   * Time-dependent Dijkstra over the out edges of each location, see {@link EarliestArrivalSearch}.
+   */
+  GRAPH_SEARCH {
+    PathSearch search(final RoutingGraph graph, final long deadline, final QueryTrace trace) {
+      return new EarliestArrivalSearch(graph, deadline, false, trace);
+    }
+  },
+
+  /**
+   * The graph search, directed towards the destination by the positions of the locations.
+   * Falls back to the undirected search if no positions are known.
+   */
+  GOAL_DIRECTED_SEARCH {
+    PathSearch search(final RoutingGraph graph, final long deadline, final QueryTrace trace) {
+      return new EarliestArrivalSearch(graph, deadline, true, trace);
+    }
+  },
+
+  /**
+   * A single scan over all edges in departure order, see {@link ConnectionScanSearch}.
+   */
+  CONNECTION_SCAN {
+    PathSearch search(final RoutingGraph graph, final long deadline, final QueryTrace trace) {
+      return new ConnectionScanSearch(graph, deadline, trace);
+    }
+  };
+
+  /**
+   * @param graph routing graph
+   * @param deadline latest allowed arrival, exclusive
+   * @return A search over the graph.
+   */
+  PathSearch search(final RoutingGraph graph, final long deadline) {
+    return search(graph, deadline, null);
+  }
+
+  /**
+   * @param graph routing graph
+   * @param deadline latest allowed arrival, exclusive
+   * @param trace trace to add the work done by each search to, or null
+   * @return A search over the graph.
+   */
+  abstract PathSearch search(RoutingGraph graph, long deadline, QueryTrace trace);
+
+}
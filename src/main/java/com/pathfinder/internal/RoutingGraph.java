@@ -0,0 +1,481 @@
+package com.pathfinder.internal;
+
+import com.pathfinder.api.PortPosition;
+import com.pathfinder.api.TransitEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable timetable graph snapshot. Every location is a vertex, and every
+ * scheduled transit edge is a time-dependent arc that can only be
+ * used by a cargo that is in port at the departure time.
+ * <p/>
+ * Locations and voyage numbers are interned to int indices, and the edges are
+ * kept in compressed sparse row layout: the outgoing edges of vertex <code>v</code>
+ * are the positions <code>firstEdge[v]</code> until <code>firstEdge[v + 1]</code>
+ * of the parallel edge arrays, sorted by departure time, so that the first usable
+ * departure can be found with a binary search. Times are epoch millis.
+ * <p/>
+ * The same edges in global departure order, for connection scans,
+ * are derived on first use, see {@link ConnectionIndex}.
+ * <p/>
+ * Vertices may have a geographic position, which gives a lower bound on
+ * the travel time to the destination of a search, see {@link PortPositions}.
+ * <p/>
+ * A snapshot is never modified. A schedule change of one voyage produces a new
+ * snapshot with {@link #withVoyage(String, List)}, which copies the out edge segments
+ * of unaffected locations as they are, so that readers keep using the old snapshot
+ * until the new one is swapped in.
+ */
+final class RoutingGraph {
+
+  private static final int OBJECT_HEADER_BYTES = 16;
+  private static final int REFERENCE_BYTES = 8;
+
+  private final Map<String, Integer> vertexIndex;
+  private final String[] vertices;
+  private final String[] voyageNumbers;
+
+  private final int[] firstEdge;
+  private final int[] edgeTarget;
+  private final int[] edgeVoyage;
+  private final long[] edgeDeparture;
+  private final long[] edgeArrival;
+  private final PortPositions positions;
+
+  // Derived from the edge arrays on first use by a connection scan
+  private volatile ConnectionIndex connections;
+
+  private RoutingGraph(final Map<String, Integer> vertexIndex,
+                       final String[] vertices,
+                       final String[] voyageNumbers,
+                       final int[] firstEdge,
+                       final int[] edgeTarget,
+                       final int[] edgeVoyage,
+                       final long[] edgeDeparture,
+                       final long[] edgeArrival,
+                       final PortPositions positions) {
+    this.vertexIndex = vertexIndex;
+    this.vertices = vertices;
+    this.voyageNumbers = voyageNumbers;
+    this.firstEdge = firstEdge;
+    this.edgeTarget = edgeTarget;
+    this.edgeVoyage = edgeVoyage;
+    this.edgeDeparture = edgeDeparture;
+    this.edgeArrival = edgeArrival;
+    this.positions = positions;
+  }
+
+  /**
+   * @param transitEdges scheduled transit edges
+   * @return A graph over all locations served by the edges, without positions.
+   */
+  static RoutingGraph build(final List<TransitEdge> transitEdges) {
+    return build(transitEdges, Collections.<PortPosition>emptyList(), PortPositions.DEFAULT_MAX_SPEED_KNOTS);
+  }
+
+  /**
+   * @param transitEdges scheduled transit edges
+   * @param portPositions known positions of locations
+   * @param maxSpeedKnots highest speed of any vessel, raised to the fastest edge if necessary
+   * @return A graph over all locations served by the edges.
+   */
+  static RoutingGraph build(final List<TransitEdge> transitEdges,
+                            final List<PortPosition> portPositions,
+                            final double maxSpeedKnots) {
+    final Map<String, Integer> vertexIndex = new HashMap<String, Integer>();
+    final List<String> vertices = new ArrayList<String>();
+    final Map<String, Integer> voyageIndex = new HashMap<String, Integer>();
+    final List<String> voyageNumbers = new ArrayList<String>();
+
+    final List<TransitEdge> usable = new ArrayList<TransitEdge>(transitEdges.size());
+    for (TransitEdge edge : transitEdges) {
+      intern(edge.getFromUnLocode(), vertexIndex, vertices);
+      intern(edge.getToUnLocode(), vertexIndex, vertices);
+      if (!edge.getToDate().before(edge.getFromDate())) {
+        intern(edge.getVoyageNumber(), voyageIndex, voyageNumbers);
+        usable.add(edge);
+      }
+    }
+
+    final TransitEdge[] sorted = usable.toArray(new TransitEdge[usable.size()]);
+    Arrays.sort(sorted, new Comparator<TransitEdge>() {
+      public int compare(final TransitEdge e1, final TransitEdge e2) {
+        final int byVertex = vertexIndex.get(e1.getFromUnLocode()) - vertexIndex.get(e2.getFromUnLocode());
+        return byVertex != 0 ? byVertex : e1.getFromDate().compareTo(e2.getFromDate());
+      }
+    });
+
+    final int n = vertices.size();
+    final int m = sorted.length;
+    final int[] firstEdge = new int[n + 1];
+    final int[] edgeTarget = new int[m];
+    final int[] edgeVoyage = new int[m];
+    final long[] edgeDeparture = new long[m];
+    final long[] edgeArrival = new long[m];
+
+    for (int i = 0; i < m; i++) {
+      final TransitEdge edge = sorted[i];
+      firstEdge[vertexIndex.get(edge.getFromUnLocode()) + 1]++;
+      edgeTarget[i] = vertexIndex.get(edge.getToUnLocode());
+      edgeVoyage[i] = voyageIndex.get(edge.getVoyageNumber());
+      edgeDeparture[i] = edge.getFromDate().getTime();
+      edgeArrival[i] = edge.getToDate().getTime();
+    }
+    for (int v = 0; v < n; v++) {
+      firstEdge[v + 1] += firstEdge[v];
+    }
+
+    PortPositions positions = PortPositions.of(vertexIndex, n, portPositions, maxSpeedKnots);
+    for (int v = 0; v < n; v++) {
+      for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+        positions = positions.calibrated(v, edgeTarget[e], edgeDeparture[e], edgeArrival[e]);
+      }
+    }
+
+    return new RoutingGraph(vertexIndex,
+      vertices.toArray(new String[n]), voyageNumbers.toArray(new String[voyageNumbers.size()]),
+      firstEdge, edgeTarget, edgeVoyage, edgeDeparture, edgeArrival, positions);
+  }
+
+  /**
+   * Wraps arrays that are already in compressed sparse row layout, as read from a snapshot.
+   *
+   * @param vertices UN locodes by vertex index
+   * @param voyageNumbers voyage numbers by voyage index
+   * @param firstEdge position of the first out edge of each vertex, plus the edge count
+   * @param edgeTarget target vertex of each edge
+   * @param edgeVoyage voyage index of each edge
+   * @param edgeDeparture departure time of each edge, sorted within the out edges of a vertex
+   * @param edgeArrival arrival time of each edge
+   * @param positions positions of the vertices
+   * @return A graph over the arrays, which must not be modified afterwards.
+   */
+  static RoutingGraph of(final String[] vertices,
+                         final String[] voyageNumbers,
+                         final int[] firstEdge,
+                         final int[] edgeTarget,
+                         final int[] edgeVoyage,
+                         final long[] edgeDeparture,
+                         final long[] edgeArrival,
+                         final PortPositions positions) {
+    final Map<String, Integer> vertexIndex = new HashMap<String, Integer>(vertices.length * 4 / 3 + 1);
+    for (int v = 0; v < vertices.length; v++) {
+      vertexIndex.put(vertices[v], v);
+    }
+    return new RoutingGraph(vertexIndex, vertices, voyageNumbers,
+      firstEdge, edgeTarget, edgeVoyage, edgeDeparture, edgeArrival, positions);
+  }
+
+  /**
+   * Copy-on-write update: replaces all edges of one voyage.
+   *
+   * @param voyageNumber voyage number
+   * @param transitEdges the new scheduled transit edges of the voyage, empty if it was cancelled
+   * @return A new graph with the same vertex and voyage indices, plus any new locations, whose positions are unknown.
+   */
+  RoutingGraph withVoyage(final String voyageNumber, final List<TransitEdge> transitEdges) {
+    final Map<String, Integer> vertexIndex = new HashMap<String, Integer>(this.vertexIndex);
+    final List<String> vertices = new ArrayList<String>(Arrays.asList(this.vertices));
+    final List<String> voyageNumbers = new ArrayList<String>(Arrays.asList(this.voyageNumbers));
+
+    final List<TransitEdge> usable = new ArrayList<TransitEdge>(transitEdges.size());
+    for (TransitEdge edge : transitEdges) {
+      intern(edge.getFromUnLocode(), vertexIndex, vertices);
+      intern(edge.getToUnLocode(), vertexIndex, vertices);
+      if (!edge.getToDate().before(edge.getFromDate())) {
+        usable.add(edge);
+      }
+    }
+    int voyage = voyageNumbers.indexOf(voyageNumber);
+    if (voyage < 0 && !usable.isEmpty()) {
+      voyage = voyageNumbers.size();
+      voyageNumbers.add(voyageNumber);
+    }
+
+    final TransitEdge[] added = usable.toArray(new TransitEdge[usable.size()]);
+    Arrays.sort(added, new Comparator<TransitEdge>() {
+      public int compare(final TransitEdge e1, final TransitEdge e2) {
+        final int byVertex = vertexIndex.get(e1.getFromUnLocode()) - vertexIndex.get(e2.getFromUnLocode());
+        return byVertex != 0 ? byVertex : e1.getFromDate().compareTo(e2.getFromDate());
+      }
+    });
+
+    // Only the out edge segments of locations that the voyage left from, or leaves from now, change
+    final int oldN = this.vertices.length;
+    final int n = vertices.size();
+    final boolean[] affected = new boolean[n];
+    int removed = 0;
+    for (int v = 0; v < oldN; v++) {
+      for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+        if (edgeVoyage[e] == voyage) {
+          affected[v] = true;
+          removed++;
+        }
+      }
+    }
+    for (TransitEdge edge : added) {
+      affected[vertexIndex.get(edge.getFromUnLocode())] = true;
+    }
+
+    final int m = edgeTarget.length - removed + added.length;
+    final int[] firstEdge = new int[n + 1];
+    final int[] edgeTarget = new int[m];
+    final int[] edgeVoyage = new int[m];
+    final long[] edgeDeparture = new long[m];
+    final long[] edgeArrival = new long[m];
+    final int[] remap = new int[this.edgeTarget.length];
+    final int[] addedPositions = new int[added.length];
+    PortPositions positions = this.positions.withVertexCount(n);
+
+    int pos = 0;
+    int next = 0;
+    for (int v = 0; v < n; v++) {
+      firstEdge[v] = pos;
+      final int start = v < oldN ? this.firstEdge[v] : 0;
+      final int end = v < oldN ? this.firstEdge[v + 1] : 0;
+
+      if (!affected[v]) {
+        final int length = end - start;
+        System.arraycopy(this.edgeTarget, start, edgeTarget, pos, length);
+        System.arraycopy(this.edgeVoyage, start, edgeVoyage, pos, length);
+        System.arraycopy(this.edgeDeparture, start, edgeDeparture, pos, length);
+        System.arraycopy(this.edgeArrival, start, edgeArrival, pos, length);
+        for (int e = start; e < end; e++) {
+          remap[e] = pos + e - start;
+        }
+        pos += length;
+        continue;
+      }
+
+      // Merge the remaining old edges with the new ones, both sorted by departure
+      int e = start;
+      while (true) {
+        while (e < end && this.edgeVoyage[e] == voyage) {
+          remap[e++] = -1;
+        }
+        final boolean hasOld = e < end;
+        final boolean hasNew = next < added.length && vertexIndex.get(added[next].getFromUnLocode()) == v;
+        if (!hasOld && !hasNew) {
+          break;
+        }
+        if (hasOld && (!hasNew || this.edgeDeparture[e] <= added[next].getFromDate().getTime())) {
+          edgeTarget[pos] = this.edgeTarget[e];
+          edgeVoyage[pos] = this.edgeVoyage[e];
+          edgeDeparture[pos] = this.edgeDeparture[e];
+          edgeArrival[pos] = this.edgeArrival[e];
+          remap[e++] = pos++;
+        } else {
+          final TransitEdge edge = added[next];
+          edgeTarget[pos] = vertexIndex.get(edge.getToUnLocode());
+          edgeVoyage[pos] = voyage;
+          edgeDeparture[pos] = edge.getFromDate().getTime();
+          edgeArrival[pos] = edge.getToDate().getTime();
+          positions = positions.calibrated(v, edgeTarget[pos], edgeDeparture[pos], edgeArrival[pos]);
+          addedPositions[next++] = pos++;
+        }
+      }
+    }
+    firstEdge[n] = pos;
+
+    final RoutingGraph updated = new RoutingGraph(vertexIndex,
+      vertices.toArray(new String[n]), voyageNumbers.toArray(new String[voyageNumbers.size()]),
+      firstEdge, edgeTarget, edgeVoyage, edgeDeparture, edgeArrival, positions);
+    final ConnectionIndex connections = this.connections;
+    if (connections != null) {
+      updated.connections = connections.withEdges(updated, remap, addedPositions);
+    }
+    return updated;
+  }
+
+  private static int intern(final String key, final Map<String, Integer> index, final List<String> values) {
+    final Integer existing = index.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    index.put(key, values.size());
+    values.add(key);
+    return values.size() - 1;
+  }
+
+  /**
+   * @param unLocode UN locode
+   * @return Vertex index, or -1 if the location is not served by any edge.
+   */
+  int indexOf(final String unLocode) {
+    final Integer index = vertexIndex.get(unLocode);
+    return index == null ? -1 : index;
+  }
+
+  int vertexCount() {
+    return vertices.length;
+  }
+
+  int edgeCount() {
+    return edgeTarget.length;
+  }
+
+  String unLocode(final int vertex) {
+    return vertices[vertex];
+  }
+
+  int voyageCount() {
+    return voyageNumbers.length;
+  }
+
+  String voyageNumber(final int voyage) {
+    return voyageNumbers[voyage];
+  }
+
+  /**
+   * @param voyageNumber voyage number
+   * @return Voyage index, or -1 if the voyage has never had any edges.
+   */
+  int indexOfVoyage(final String voyageNumber) {
+    return Arrays.asList(voyageNumbers).indexOf(voyageNumber);
+  }
+
+  /**
+   * @param vertex vertex index
+   * @return Position of the first outgoing edge of the vertex.
+   */
+  int firstEdge(final int vertex) {
+    return firstEdge[vertex];
+  }
+
+  /**
+   * @param vertex vertex index
+   * @return Position after the last outgoing edge of the vertex.
+   */
+  int endEdge(final int vertex) {
+    return firstEdge[vertex + 1];
+  }
+
+  /**
+   * @param vertex vertex index
+   * @param time epoch millis
+   * @return Position of the first outgoing edge of the vertex departing at or after the given time.
+   */
+  int firstDepartureAtOrAfter(final int vertex, final long time) {
+    int low = firstEdge[vertex];
+    int high = firstEdge[vertex + 1];
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (edgeDeparture[mid] < time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  int target(final int edge) {
+    return edgeTarget[edge];
+  }
+
+  int voyage(final int edge) {
+    return edgeVoyage[edge];
+  }
+
+  long departure(final int edge) {
+    return edgeDeparture[edge];
+  }
+
+  long arrival(final int edge) {
+    return edgeArrival[edge];
+  }
+
+  /**
+   * Binary search over the out edges of a vertex, used to recover the source vertex of an edge.
+   *
+   * @param edge edge position
+   * @return Vertex that the edge departs from.
+   */
+  int source(final int edge) {
+    int low = 0;
+    int high = vertices.length - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (firstEdge[mid] <= edge) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return Positions of the vertices.
+   */
+  PortPositions positions() {
+    return positions;
+  }
+
+  /**
+   * @return All edges in departure order, built on first use.
+   */
+  ConnectionIndex connections() {
+    ConnectionIndex result = connections;
+    if (result == null) {
+      synchronized (this) {
+        result = connections;
+        if (result == null) {
+          result = ConnectionIndex.build(this);
+          connections = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param edge edge position
+   * @return The edge as an API transit edge.
+   */
+  TransitEdge toTransitEdge(final int edge) {
+    return new TransitEdge(voyageNumbers[edgeVoyage[edge]],
+      vertices[source(edge)], vertices[edgeTarget[edge]],
+      new Date(edgeDeparture[edge]), new Date(edgeArrival[edge]));
+  }
+
+  /**
+   * Approximate retained heap size of this snapshot, assuming a 64-bit JVM.
+   * The interned strings are shared with the timetable source and not included.
+   *
+   * @return Footprint in bytes.
+   */
+  long footprint() {
+    final ConnectionIndex connections = this.connections;
+    return (connections == null ? 0 : connections.footprint()) +
+      arrayBytes(firstEdge.length, 4) +
+      arrayBytes(edgeTarget.length, 4) +
+      arrayBytes(edgeVoyage.length, 4) +
+      arrayBytes(edgeDeparture.length, 8) +
+      arrayBytes(edgeArrival.length, 8) +
+      positions.footprint() +
+      arrayBytes(vertices.length, REFERENCE_BYTES) +
+      arrayBytes(voyageNumbers.length, REFERENCE_BYTES) +
+      // HashMap entry plus boxed Integer per vertex, and the table itself
+      vertices.length * (32L + OBJECT_HEADER_BYTES) + arrayBytes(vertices.length * 2, REFERENCE_BYTES);
+  }
+
+  private static long arrayBytes(final int length, final int elementBytes) {
+    return OBJECT_HEADER_BYTES + (long) length * elementBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "Routing graph with " + vertices.length + " locations, " + edgeTarget.length + " edges on " +
+      voyageNumbers.length + " voyages, approx. " + (footprint() / 1024) + " kB";
+  }
+
+}
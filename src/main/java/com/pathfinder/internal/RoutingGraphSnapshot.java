@@ -0,0 +1,275 @@
+package com.pathfinder.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+
+/**
+ * Versioned binary file with the compiled arrays of a {@link RoutingGraph}, so that
+ * a restarted pathfinder can answer queries without first loading the full timetable.
+ * <p/>
+ * The file is little endian: a fixed header, then the long, double and int arrays
+ * in that order so that every array is aligned to its element size, and finally the
+ * UN locodes and voyage numbers as length-prefixed UTF-8. It is read through a
+ * read-only mapping, and the arrays are copied out with bulk gets, so the only
+ * per-element work is interning the strings. Processes on the same host that read
+ * the same file share its pages in the page cache.
+ * <p/>
+ * A snapshot is written to a temporary file that is then renamed over the old one,
+ * so a reader never sees a partly written file.
+ * The lazily derived {@link ConnectionIndex} is not part of the snapshot.
+ */
+final class RoutingGraphSnapshot {
+
+  // "PFRG", little endian
+  private static final int MAGIC = 0x47524650;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 40;
+  private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final RoutingGraph graph;
+  private final Date written;
+
+  private RoutingGraphSnapshot(final RoutingGraph graph, final Date written) {
+    this.graph = graph;
+    this.written = written;
+  }
+
+  /**
+   * @return The routing graph.
+   */
+  RoutingGraph graph() {
+    return graph;
+  }
+
+  /**
+   * @return When the snapshot was written.
+   */
+  Date written() {
+    return written;
+  }
+
+  /**
+   * Writes a graph to a file, replacing any previous snapshot.
+   *
+   * @param graph routing graph
+   * @param file snapshot file
+   * @throws IOException if the file can't be written
+   */
+  static void write(final RoutingGraph graph, final File file) throws IOException {
+    final int n = graph.vertexCount();
+    final int m = graph.edgeCount();
+    final int voyages = graph.voyageCount();
+
+    final byte[][] strings = new byte[n + voyages][];
+    for (int v = 0; v < n; v++) {
+      strings[v] = encode(graph.unLocode(v));
+    }
+    for (int voyage = 0; voyage < voyages; voyage++) {
+      strings[n + voyage] = encode(graph.voyageNumber(voyage));
+    }
+
+    final File directory = file.getAbsoluteFile().getParentFile();
+    final File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      final RandomAccessFile out = new RandomAccessFile(temporary, "rw");
+      try {
+        final FileChannel channel = out.getChannel();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(voyages).putInt(m).putInt(0);
+        buffer.putDouble(graph.positions().maxSpeedKnots());
+        buffer.putLong(System.currentTimeMillis());
+
+        for (int e = 0; e < m; e++) {
+          ensureRemaining(channel, buffer, 8).putLong(graph.departure(e));
+        }
+        for (int e = 0; e < m; e++) {
+          ensureRemaining(channel, buffer, 8).putLong(graph.arrival(e));
+        }
+        final PortPositions positions = graph.positions();
+        for (int v = 0; v < n; v++) {
+          ensureRemaining(channel, buffer, 8).putDouble(positions.x(v));
+        }
+        for (int v = 0; v < n; v++) {
+          ensureRemaining(channel, buffer, 8).putDouble(positions.y(v));
+        }
+        for (int v = 0; v < n; v++) {
+          ensureRemaining(channel, buffer, 8).putDouble(positions.z(v));
+        }
+        for (int v = 0; v <= n; v++) {
+          ensureRemaining(channel, buffer, 4).putInt(v < n ? graph.firstEdge(v) : m);
+        }
+        for (int e = 0; e < m; e++) {
+          ensureRemaining(channel, buffer, 4).putInt(graph.target(e));
+        }
+        for (int e = 0; e < m; e++) {
+          ensureRemaining(channel, buffer, 4).putInt(graph.voyage(e));
+        }
+        for (byte[] string : strings) {
+          ensureRemaining(channel, buffer, 2 + string.length).putShort((short) string.length).put(string);
+        }
+
+        flush(channel, buffer);
+        channel.force(true);
+      } finally {
+        out.close();
+      }
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      if (temporary.exists() && !temporary.delete()) {
+        temporary.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * @param file snapshot file
+   * @return The snapshot.
+   * @throws IOException if the file can't be read, or is not a valid snapshot of this version
+   */
+  static RoutingGraphSnapshot read(final File file) throws IOException {
+    final RandomAccessFile in = new RandomAccessFile(file, "r");
+    final MappedByteBuffer buffer;
+    try {
+      final FileChannel channel = in.getChannel();
+      if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Not a routing graph snapshot: " + file);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      // The mapping stays valid after the channel is closed
+      in.close();
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a routing graph snapshot: " + file);
+    }
+    final int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported routing graph snapshot version " + version + ": " + file);
+    }
+    final int n = buffer.getInt();
+    final int voyages = buffer.getInt();
+    final int m = buffer.getInt();
+    buffer.getInt();
+    final double maxSpeedKnots = buffer.getDouble();
+    final Date written = new Date(buffer.getLong());
+
+    final long arrayBytes = 16L * m + 24L * n + 4L * (n + 1) + 8L * m;
+    if (n < 0 || voyages < 0 || m < 0 || HEADER_BYTES + arrayBytes > buffer.capacity()) {
+      throw new IOException("Truncated routing graph snapshot: " + file);
+    }
+
+    try {
+      final long[] edgeDeparture = new long[m];
+      final long[] edgeArrival = new long[m];
+      buffer.asLongBuffer().get(edgeDeparture).get(edgeArrival);
+      buffer.position(buffer.position() + 16 * m);
+
+      final double[] x = new double[n];
+      final double[] y = new double[n];
+      final double[] z = new double[n];
+      buffer.asDoubleBuffer().get(x).get(y).get(z);
+      buffer.position(buffer.position() + 24 * n);
+
+      final int[] firstEdge = new int[n + 1];
+      final int[] edgeTarget = new int[m];
+      final int[] edgeVoyage = new int[m];
+      buffer.asIntBuffer().get(firstEdge).get(edgeTarget).get(edgeVoyage);
+      buffer.position(buffer.position() + 4 * (n + 1) + 8 * m);
+
+      final String[] vertices = new String[n];
+      for (int v = 0; v < n; v++) {
+        vertices[v] = decode(buffer, file);
+      }
+      final String[] voyageNumbers = new String[voyages];
+      for (int voyage = 0; voyage < voyages; voyage++) {
+        voyageNumbers[voyage] = decode(buffer, file);
+      }
+
+      if (!isConsistent(firstEdge, edgeTarget, edgeVoyage, edgeDeparture, voyages)) {
+        throw new IOException("Corrupt routing graph snapshot: " + file);
+      }
+
+      final RoutingGraph graph = RoutingGraph.of(vertices, voyageNumbers,
+        firstEdge, edgeTarget, edgeVoyage, edgeDeparture, edgeArrival,
+        PortPositions.of(x, y, z, maxSpeedKnots));
+      return new RoutingGraphSnapshot(graph, written);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated routing graph snapshot: " + file);
+    }
+  }
+
+  /**
+   * Checks the invariants that the searches rely on, so that a damaged file
+   * is rejected here rather than failing queries later.
+   */
+  private static boolean isConsistent(final int[] firstEdge, final int[] edgeTarget, final int[] edgeVoyage,
+                                      final long[] edgeDeparture, final int voyages) {
+    final int n = firstEdge.length - 1;
+    if (firstEdge[0] != 0 || firstEdge[n] != edgeTarget.length) {
+      return false;
+    }
+    for (int v = 0; v < n; v++) {
+      if (firstEdge[v] > firstEdge[v + 1]) {
+        return false;
+      }
+      for (int e = firstEdge[v]; e < firstEdge[v + 1]; e++) {
+        if (edgeTarget[e] < 0 || edgeTarget[e] >= n || edgeVoyage[e] < 0 || edgeVoyage[e] >= voyages) {
+          return false;
+        }
+        if (e > firstEdge[v] && edgeDeparture[e - 1] > edgeDeparture[e]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static byte[] encode(final String value) throws IOException {
+    final byte[] bytes = value.getBytes(UTF8);
+    if (bytes.length > Short.MAX_VALUE) {
+      throw new IOException("Too long for a routing graph snapshot: " + value);
+    }
+    return bytes;
+  }
+
+  private static String decode(final ByteBuffer buffer, final File file) throws IOException {
+    final short length = buffer.getShort();
+    if (length < 0) {
+      throw new IOException("Corrupt routing graph snapshot: " + file);
+    }
+    final byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  private static ByteBuffer ensureRemaining(final FileChannel channel, final ByteBuffer buffer, final int bytes)
+    throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush(channel, buffer);
+    }
+    return buffer;
+  }
+
+  private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+}
@@ -0,0 +1,108 @@
+package com.pathfinder.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregate counters of the queries answered by the graph traversal service,
+ * see {@link QueryTrace}.
+ * <p/>
+ * The public getters are the metrics, and are exported over JMX.
+ */
+public class SearchStatistics {
+
+  private final AtomicLong queryCount = new AtomicLong();
+  private final AtomicLong tracedQueryCount = new AtomicLong();
+  private final AtomicLong candidateCount = new AtomicLong();
+  private final AtomicLong searchCount = new AtomicLong();
+  private final AtomicLong settledCount = new AtomicLong();
+  private final AtomicLong relaxedCount = new AtomicLong();
+  private final AtomicLong prunedCount = new AtomicLong();
+  private final AtomicLong[] phaseNanos = new AtomicLong[QueryTrace.Phase.values().length];
+
+  public SearchStatistics() {
+    for (int i = 0; i < phaseNanos.length; i++) {
+      phaseNanos[i] = new AtomicLong();
+    }
+  }
+
+  void record(final QueryTrace trace, final boolean traced) {
+    queryCount.incrementAndGet();
+    if (traced) {
+      tracedQueryCount.incrementAndGet();
+    }
+    candidateCount.addAndGet(trace.candidates());
+    searchCount.addAndGet(trace.searches());
+    settledCount.addAndGet(trace.settled());
+    relaxedCount.addAndGet(trace.relaxed());
+    prunedCount.addAndGet(trace.pruned());
+    for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+      phaseNanos[phase.ordinal()].addAndGet(trace.phaseNanos(phase));
+    }
+  }
+
+  public long getQueryCount() {
+    return queryCount.get();
+  }
+
+  public long getTracedQueryCount() {
+    return tracedQueryCount.get();
+  }
+
+  public long getCandidateCount() {
+    return candidateCount.get();
+  }
+
+  public long getSearchCount() {
+    return searchCount.get();
+  }
+
+  public long getSettledCount() {
+    return settledCount.get();
+  }
+
+  public long getRelaxedCount() {
+    return relaxedCount.get();
+  }
+
+  public long getPrunedCount() {
+    return prunedCount.get();
+  }
+
+  public double getAverageSettledPerQuery() {
+    return perQuery(settledCount.get());
+  }
+
+  public long getTotalLookupTime() {
+    return millis(QueryTrace.Phase.LOOKUP);
+  }
+
+  public long getTotalSearchTime() {
+    return millis(QueryTrace.Phase.SEARCH);
+  }
+
+  public long getTotalAlternativesTime() {
+    return millis(QueryTrace.Phase.ALTERNATIVES);
+  }
+
+  public long getTotalConversionTime() {
+    return millis(QueryTrace.Phase.CONVERSION);
+  }
+
+  public double getAverageQueryTime() {
+    long nanos = 0;
+    for (AtomicLong phase : phaseNanos) {
+      nanos += phase.get();
+    }
+    return perQuery(nanos) / 1000000.0;
+  }
+
+  private long millis(final QueryTrace.Phase phase) {
+    return phaseNanos[phase.ordinal()].get() / 1000000;
+  }
+
+  private double perQuery(final long total) {
+    final long queries = queryCount.get();
+    return queries == 0 ? 0.0 : (double) total / queries;
+  }
+
+}
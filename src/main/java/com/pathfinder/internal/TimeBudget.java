@@ -0,0 +1,39 @@
+package com.pathfinder.internal;
+
+/**
+ * Wall clock time that a query may spend, see {@link Limitations#TIME_BUDGET_MS}.
+ */
+final class TimeBudget {
+
+  /**
+   * A budget that is never spent.
+   */
+  static final TimeBudget UNLIMITED = new TimeBudget(0, false);
+
+  private final long endNanos;
+  private final boolean limited;
+
+  private TimeBudget(final long endNanos, final boolean limited) {
+    this.endNanos = endNanos;
+    this.limited = limited;
+  }
+
+  /**
+   * @param millis budget in millis, starting now, or zero for no limit
+   * @return A time budget.
+   */
+  static TimeBudget of(final long millis) {
+    if (millis <= 0) {
+      return UNLIMITED;
+    }
+    return new TimeBudget(System.nanoTime() + millis * 1000000L, true);
+  }
+
+  /**
+   * @return True if the budget has run out.
+   */
+  boolean isSpent() {
+    return limited && System.nanoTime() - endNanos >= 0;
+  }
+
+}
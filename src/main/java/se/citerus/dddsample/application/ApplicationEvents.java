@@ -2,8 +2,11 @@ package se.citerus.dddsample.application;
 
 import se.citerus.dddsample.domain.model.cargo.Cargo;
 import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
 import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
 
+import java.util.List;
+
 /**
  * This interface provides a way to let other parts
  * of the system know about events that have occurred.
@@ -41,4 +44,18 @@ public interface ApplicationEvents {
    */
   void receivedHandlingEventRegistrationAttempt(HandlingEventRegistrationAttempt attempt);
 
+  /**
+   * Many handling event registration attempts are received at once, in order.
+   *
+   * @param attempts handling event registration attempts
+   */
+  void receivedHandlingEventRegistrationAttempts(List<HandlingEventRegistrationAttempt> attempts);
+
+  /**
+   * The schedule of a voyage has changed.
+   *
+   * @param voyage voyage
+   */
+  void voyageScheduleChanged(Voyage voyage);
+
 }
@@ -44,4 +44,19 @@ public interface BookingService {
    */
   void changeDestination(TrackingId trackingId, UnLocode unLocode);
 
+  /**
+   * Re-routes misdirected cargos from where they are now, with a single batch routing request.
+   * Each cargo gets a new route specification from its last known location. If a route
+   * is found and assignment is requested, the earliest arriving itinerary is assigned,
+   * otherwise the cargo is left misrouted for an operator to pick a route.
+   * <p/>
+   * Cargos that are no longer misdirected, are not in port, or have already been
+   * re-routed from their last known location are skipped.
+   *
+   * @param trackingIds tracking ids of misdirected cargos
+   * @param assignBestRoute true to assign the best itinerary, false to only specify the new route
+   * @return Number of cargos that were assigned a new itinerary
+   */
+  int rerouteMisdirectedCargos(List<TrackingId> trackingIds, boolean assignBestRoute);
+
 }
@@ -0,0 +1,22 @@
+package se.citerus.dddsample.application;
+
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+
+import java.util.Date;
+
+/**
+ * Voyage service.
+ */
+public interface VoyageService {
+
+  /**
+   * Delays the departures of a voyage from a given time on, and notifies
+   * interested parties that the schedule of the voyage has changed.
+   *
+   * @param voyageNumber voyage number
+   * @param from time from which departures are delayed
+   * @param delayMillis delay in milliseconds
+   */
+  void delayVoyage(VoyageNumber voyageNumber, Date from, long delayMillis);
+
+}
@@ -5,11 +5,13 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.transaction.annotation.Transactional;
 import se.citerus.dddsample.application.BookingService;
 import se.citerus.dddsample.domain.model.cargo.*;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
 import se.citerus.dddsample.domain.model.location.Location;
 import se.citerus.dddsample.domain.model.location.LocationRepository;
 import se.citerus.dddsample.domain.model.location.UnLocode;
 import se.citerus.dddsample.domain.service.RoutingService;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -57,7 +59,7 @@ public final class BookingServiceImpl implements BookingService {
       return Collections.emptyList();
     }
 
-    return routingService.fetchRoutesForSpecification(cargo.routeSpecification());
+    return routingService.fetchRoutesForSpecification(cargo.routeSpecification(), availableSince(cargo));
   }
 
   @Override
@@ -89,4 +91,66 @@ public final class BookingServiceImpl implements BookingService {
     logger.info("Changed destination for cargo " + trackingId + " to " + routeSpecification.destination());
   }
 
+  @Override
+  @Transactional
+  public int rerouteMisdirectedCargos(final List<TrackingId> trackingIds, final boolean assignBestRoute) {
+    final List<Cargo> cargos = new ArrayList<Cargo>(trackingIds.size());
+    final List<RouteSpecification> routeSpecifications = new ArrayList<RouteSpecification>(trackingIds.size());
+    final List<Date> earliestDepartures = new ArrayList<Date>(trackingIds.size());
+    for (TrackingId trackingId : trackingIds) {
+      final Cargo cargo = cargoRepository.find(trackingId);
+      if (cargo == null || !needsRerouting(cargo)) {
+        continue;
+      }
+      final RouteSpecification fromHere = new RouteSpecification(
+        cargo.delivery().lastKnownLocation(),
+        cargo.routeSpecification().destination(),
+        cargo.routeSpecification().arrivalDeadline()
+      );
+      cargo.specifyNewRoute(fromHere);
+      cargos.add(cargo);
+      routeSpecifications.add(fromHere);
+      // Voyages that left the port before the cargo was unloaded there can't take it
+      earliestDepartures.add(availableSince(cargo));
+    }
+    if (cargos.isEmpty()) {
+      return 0;
+    }
+
+    // Only the best route is assigned, which the routing service can find without the alternatives
+    final List<List<Itinerary>> candidates = assignBestRoute ?
+      routingService.fetchRoutesForSpecifications(routeSpecifications, earliestDepartures, 1) :
+      routingService.fetchRoutesForSpecifications(routeSpecifications, earliestDepartures);
+
+    int assigned = 0;
+    for (int i = 0; i < cargos.size(); i++) {
+      final Cargo cargo = cargos.get(i);
+      // Candidates are ordered by arrival time
+      if (assignBestRoute && !candidates.get(i).isEmpty()) {
+        cargo.assignToRoute(candidates.get(i).get(0));
+        assigned++;
+      }
+      cargoRepository.store(cargo);
+    }
+
+    logger.info("Re-routed " + cargos.size() + " misdirected cargos, assigned " + assigned + " new itineraries");
+    return assigned;
+  }
+
+  /**
+   * @return Completion time of the last handling event, since the cargo can't leave
+   * on a voyage that departed before then, or null if it hasn't been handled yet.
+   */
+  private static Date availableSince(final Cargo cargo) {
+    final HandlingEvent lastEvent = cargo.delivery().lastEvent();
+    return lastEvent == null ? null : lastEvent.completionTime();
+  }
+
+  private boolean needsRerouting(final Cargo cargo) {
+    final Delivery delivery = cargo.delivery();
+    return delivery.isMisdirected() &&
+      delivery.transportStatus() == TransportStatus.IN_PORT &&
+      !cargo.routeSpecification().origin().sameIdentityAs(delivery.lastKnownLocation());
+  }
+
 }
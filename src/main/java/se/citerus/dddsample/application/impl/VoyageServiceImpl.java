@@ -0,0 +1,43 @@
+package se.citerus.dddsample.application.impl;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.transaction.annotation.Transactional;
+import se.citerus.dddsample.application.ApplicationEvents;
+import se.citerus.dddsample.application.VoyageService;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
+
+import java.util.Date;
+
+public class VoyageServiceImpl implements VoyageService {
+
+  private final VoyageRepository voyageRepository;
+  private final ApplicationEvents applicationEvents;
+  private final Log logger = LogFactory.getLog(getClass());
+
+  public VoyageServiceImpl(final VoyageRepository voyageRepository, final ApplicationEvents applicationEvents) {
+    this.voyageRepository = voyageRepository;
+    this.applicationEvents = applicationEvents;
+  }
+
+  @Override
+  @Transactional
+  public void delayVoyage(final VoyageNumber voyageNumber, final Date from, final long delayMillis) {
+    Validate.notNull(voyageNumber, "Voyage number is required");
+
+    final Voyage voyage = voyageRepository.find(voyageNumber);
+    if (voyage == null) {
+      logger.warn("Can't delay non-existing voyage " + voyageNumber);
+      return;
+    }
+
+    // The voyage is persistent, so the new schedule is stored when the transaction commits
+    voyage.delay(from, delayMillis);
+
+    applicationEvents.voyageScheduleChanged(voyage);
+  }
+
+}
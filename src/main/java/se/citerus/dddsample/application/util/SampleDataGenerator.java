@@ -148,17 +148,17 @@ public class SampleDataGenerator implements ServletContextListener {
 
   private static void loadLocationData(JdbcTemplate jdbcTemplate) {
     String locationSql =
-      "insert into Location (id, unlocode, name) " +
-      "values (?, ?, ?)";
+      "insert into Location (id, unlocode, name, latitude, longitude) " +
+      "values (?, ?, ?, ?, ?)";
 
     Object[][] locationArgs = {
-      {1, "SESTO", "Stockholm"},
-      {2, "AUMEL", "Melbourne"},
-      {3, "CNHKG", "Hongkong"},
-      {4, "JPTOK", "Tokyo"},
-      {5, "FIHEL", "Helsinki"},
-      {6, "DEHAM", "Hamburg"},
-      {7, "USCHI", "Chicago"}
+      {1, "SESTO", "Stockholm", 59.33, 18.07},
+      {2, "AUMEL", "Melbourne", -37.82, 144.96},
+      {3, "CNHKG", "Hongkong", 22.30, 114.17},
+      {4, "JPTOK", "Tokyo", 35.65, 139.77},
+      {5, "FIHEL", "Helsinki", 60.17, 24.94},
+      {6, "DEHAM", "Hamburg", 53.55, 9.99},
+      {7, "USCHI", "Chicago", 41.88, -87.63}
     };
     executeUpdate(jdbcTemplate, locationSql, locationArgs);
   }
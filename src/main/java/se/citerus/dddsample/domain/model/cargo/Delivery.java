@@ -97,6 +97,13 @@ public class Delivery implements ValueObject<Delivery> {
     return transportStatus;
   }
 
+  /**
+   * @return Most recently completed handling event, or null if the delivery history is empty.
+   */
+  public HandlingEvent lastEvent() {
+    return lastEvent;
+  }
+
   /**
    * @return Last known location of the cargo, or Location.UNKNOWN if the delivery history is empty.
    */
@@ -0,0 +1,73 @@
+package se.citerus.dddsample.domain.model.location;
+
+import org.apache.commons.lang.Validate;
+import se.citerus.dddsample.domain.shared.ValueObject;
+
+/**
+ * Geographic position of a location, in decimal degrees.
+ */
+public final class Coordinates implements ValueObject<Coordinates> {
+
+  private double latitude;
+  private double longitude;
+
+  /**
+   * Constructor.
+   *
+   * @param latitude  latitude, -90 to 90 degrees, positive is north
+   * @param longitude longitude, -180 to 180 degrees, positive is east
+   */
+  public Coordinates(final double latitude, final double longitude) {
+    Validate.isTrue(latitude >= -90 && latitude <= 90, "Latitude out of range: " + latitude);
+    Validate.isTrue(longitude >= -180 && longitude <= 180, "Longitude out of range: " + longitude);
+
+    this.latitude = latitude;
+    this.longitude = longitude;
+  }
+
+  /**
+   * @return Latitude in degrees, positive is north.
+   */
+  public double latitude() {
+    return latitude;
+  }
+
+  /**
+   * @return Longitude in degrees, positive is east.
+   */
+  public double longitude() {
+    return longitude;
+  }
+
+  @Override
+  public boolean sameValueAs(final Coordinates other) {
+    return other != null &&
+      Double.compare(latitude, other.latitude) == 0 &&
+      Double.compare(longitude, other.longitude) == 0;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    return sameValueAs((Coordinates) o);
+  }
+
+  @Override
+  public int hashCode() {
+    final long lat = Double.doubleToLongBits(latitude);
+    final long lon = Double.doubleToLongBits(longitude);
+    return 31 * (int) (lat ^ (lat >>> 32)) + (int) (lon ^ (lon >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return latitude + "," + longitude;
+  }
+
+  Coordinates() {
+    // Needed by Hibernate
+  }
+
+}
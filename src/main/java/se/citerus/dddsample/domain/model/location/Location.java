@@ -14,6 +14,7 @@ public final class Location implements Entity<Location> {
 
   private UnLocode unLocode;
   private String name;
+  private Coordinates coordinates;
 
   /**
    * Special Location object that marks an unknown location.
@@ -37,6 +38,21 @@ public final class Location implements Entity<Location> {
     this.name = name;
   }
 
+  /**
+   * Package-level constructor, visible for test only.
+   *
+   * @param unLocode    UN Locode
+   * @param name        location name
+   * @param coordinates geographic position
+   * @throws IllegalArgumentException if any argument is null
+   */
+  Location(final UnLocode unLocode, final String name, final Coordinates coordinates) {
+    this(unLocode, name);
+    Validate.notNull(coordinates);
+
+    this.coordinates = coordinates;
+  }
+
   /**
    * @return UN Locode for this location.
    */
@@ -51,6 +67,13 @@ public final class Location implements Entity<Location> {
     return name;
   }
 
+  /**
+   * @return Geographic position of this location, or null if it is not known.
+   */
+  public Coordinates coordinates() {
+    return coordinates;
+  }
+
   /**
    * @param object to compare
    * @return Since this is an entiy this will be true iff UN locodes are equal.
@@ -1,5 +1,6 @@
 package se.citerus.dddsample.domain.model.location;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface LocationRepository {
@@ -12,6 +13,14 @@ public interface LocationRepository {
    */
   Location find(UnLocode unLocode);
 
+  /**
+   * Finds many locations at once.
+   *
+   * @param unLocodes UN locodes.
+   * @return The locations that exist, in no particular order.
+   */
+  List<Location> findByUnLocodes(Collection<UnLocode> unLocodes);
+
   /**
    * Finds all locations.
    *
@@ -12,19 +12,19 @@ import java.util.Map;
  */
 public class SampleLocations {
 
-  public static final Location HONGKONG = new Location(new UnLocode("CNHKG"), "Hongkong");
-  public static final Location MELBOURNE = new Location(new UnLocode("AUMEL"), "Melbourne");
-  public static final Location STOCKHOLM = new Location(new UnLocode("SESTO"), "Stockholm");
-  public static final Location HELSINKI = new Location(new UnLocode("FIHEL"), "Helsinki");
-  public static final Location CHICAGO = new Location(new UnLocode("USCHI"), "Chicago");
-  public static final Location TOKYO = new Location(new UnLocode("JNTKO"), "Tokyo");
-  public static final Location HAMBURG = new Location(new UnLocode("DEHAM"), "Hamburg");
-  public static final Location SHANGHAI = new Location(new UnLocode("CNSHA"), "Shanghai");
-  public static final Location ROTTERDAM = new Location(new UnLocode("NLRTM"), "Rotterdam");
-  public static final Location GOTHENBURG = new Location(new UnLocode("SEGOT"), "Göteborg");
-  public static final Location HANGZOU = new Location(new UnLocode("CNHGH"), "Hangzhou");
-  public static final Location NEWYORK = new Location(new UnLocode("USNYC"), "New York");
-  public static final Location DALLAS = new Location(new UnLocode("USDAL"), "Dallas");
+  public static final Location HONGKONG = new Location(new UnLocode("CNHKG"), "Hongkong", new Coordinates(22.30, 114.17));
+  public static final Location MELBOURNE = new Location(new UnLocode("AUMEL"), "Melbourne", new Coordinates(-37.82, 144.96));
+  public static final Location STOCKHOLM = new Location(new UnLocode("SESTO"), "Stockholm", new Coordinates(59.33, 18.07));
+  public static final Location HELSINKI = new Location(new UnLocode("FIHEL"), "Helsinki", new Coordinates(60.17, 24.94));
+  public static final Location CHICAGO = new Location(new UnLocode("USCHI"), "Chicago", new Coordinates(41.88, -87.63));
+  public static final Location TOKYO = new Location(new UnLocode("JNTKO"), "Tokyo", new Coordinates(35.65, 139.77));
+  public static final Location HAMBURG = new Location(new UnLocode("DEHAM"), "Hamburg", new Coordinates(53.55, 9.99));
+  public static final Location SHANGHAI = new Location(new UnLocode("CNSHA"), "Shanghai", new Coordinates(31.23, 121.47));
+  public static final Location ROTTERDAM = new Location(new UnLocode("NLRTM"), "Rotterdam", new Coordinates(51.92, 4.48));
+  public static final Location GOTHENBURG = new Location(new UnLocode("SEGOT"), "Göteborg", new Coordinates(57.71, 11.97));
+  public static final Location HANGZOU = new Location(new UnLocode("CNHGH"), "Hangzhou", new Coordinates(30.27, 120.16));
+  public static final Location NEWYORK = new Location(new UnLocode("USNYC"), "New York", new Coordinates(40.71, -74.01));
+  public static final Location DALLAS = new Location(new UnLocode("USDAL"), "Dallas", new Coordinates(32.78, -96.80));
 
   public static final Map<UnLocode, Location> ALL = new HashMap<UnLocode, Location>();
 
@@ -3,8 +3,6 @@ package se.citerus.dddsample.domain.model.location;
 import org.apache.commons.lang.Validate;
 import se.citerus.dddsample.domain.shared.ValueObject;
 
-import java.util.regex.Pattern;
-
 /**
  * United nations location code.
  * <p/>
@@ -15,10 +13,6 @@ public final class UnLocode implements ValueObject<UnLocode> {
 
   private String unlocode;
 
-  // Country code is exactly two letters.
-  // Location code is usually three letters, but may contain the numbers 2-9 as well
-  private static final Pattern VALID_PATTERN = Pattern.compile("[a-zA-Z]{2}[a-zA-Z2-9]{3}");
-
   /**
    * Constructor.
    *
@@ -26,12 +20,34 @@ public final class UnLocode implements ValueObject<UnLocode> {
    */
   public UnLocode(final String countryAndLocation) {
     Validate.notNull(countryAndLocation, "Country and location may not be null");
-    Validate.isTrue(VALID_PATTERN.matcher(countryAndLocation).matches(),
+    Validate.isTrue(isValid(countryAndLocation),
       countryAndLocation + " is not a valid UN/LOCODE (does not match pattern)");
 
     this.unlocode = countryAndLocation.toUpperCase();
   }
 
+  /**
+   * Checks the syntax of a UN/LOCODE, without a regular expression.
+   *
+   * @param countryAndLocation Location string, may be null.
+   * @return True if it's a valid UN/LOCODE.
+   */
+  public static boolean isValid(final String countryAndLocation) {
+    if (countryAndLocation == null || countryAndLocation.length() != 5) {
+      return false;
+    }
+    for (int i = 0; i < 5; i++) {
+      final char c = countryAndLocation.charAt(i);
+      final boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+      // Country code is exactly two letters.
+      // Location code is usually three letters, but may contain the numbers 2-9 as well
+      if (!letter && (i < 2 || c < '2' || c > '9')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * @return country code and location code concatenated, always upper case.
    */
@@ -5,6 +5,7 @@ import org.apache.commons.lang.builder.HashCodeBuilder;
 import se.citerus.dddsample.domain.shared.ValueObject;
 
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -32,6 +33,26 @@ public class Schedule implements ValueObject<Schedule> {
     return Collections.unmodifiableList(carrierMovements);
   }
 
+  /**
+   * Replaces the carrier movements that depart at or after a given time with delayed ones.
+   * The list is updated in place rather than copied, since it is owned by the persistent voyage.
+   *
+   * @param from time from which departures are delayed
+   * @param delayMillis delay in milliseconds
+   */
+  void delayFrom(final Date from, final long delayMillis) {
+    for (int i = 0; i < carrierMovements.size(); i++) {
+      final CarrierMovement carrierMovement = carrierMovements.get(i);
+      if (!carrierMovement.departureTime().before(from)) {
+        carrierMovements.set(i, new CarrierMovement(
+          carrierMovement.departureLocation(), carrierMovement.arrivalLocation(),
+          new Date(carrierMovement.departureTime().getTime() + delayMillis),
+          new Date(carrierMovement.arrivalTime().getTime() + delayMillis)
+        ));
+      }
+    }
+  }
+
   @Override
   public boolean sameValueAs(final Schedule other) {
     return other != null && this.carrierMovements.equals(other.carrierMovements);
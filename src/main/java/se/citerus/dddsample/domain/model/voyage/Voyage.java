@@ -43,6 +43,21 @@ public class Voyage implements Entity<Voyage> {
     return schedule;
   }
 
+  /**
+   * Delays the carrier movements that depart at or after a given time.
+   * Later movements are delayed as much as the first one, so the voyage
+   * still calls at its locations in the same order.
+   *
+   * @param from time from which departures are delayed
+   * @param delayMillis delay in milliseconds
+   */
+  public void delay(final Date from, final long delayMillis) {
+    Validate.notNull(from, "Time is required");
+    Validate.isTrue(delayMillis > 0, "Delay must be positive");
+
+    schedule.delayFrom(from, delayMillis);
+  }
+
   @Override
   public int hashCode() {
     return voyageNumber.hashCode();
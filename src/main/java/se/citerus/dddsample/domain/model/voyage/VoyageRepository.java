@@ -1,5 +1,8 @@
 package se.citerus.dddsample.domain.model.voyage;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface VoyageRepository {
 
   /**
@@ -10,4 +13,19 @@ public interface VoyageRepository {
    */
   Voyage find(VoyageNumber voyageNumber);
 
+  /**
+   * Finds many voyages at once.
+   *
+   * @param voyageNumbers voyage numbers
+   * @return The voyages that exist, in no particular order.
+   */
+  List<Voyage> findByVoyageNumbers(Collection<VoyageNumber> voyageNumbers);
+
+  /**
+   * Finds all voyages.
+   *
+   * @return All voyages.
+   */
+  List<Voyage> findAll();
+
 }
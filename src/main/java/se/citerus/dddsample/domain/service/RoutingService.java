@@ -3,6 +3,7 @@ package se.citerus.dddsample.domain.service;
 import se.citerus.dddsample.domain.model.cargo.Itinerary;
 import se.citerus.dddsample.domain.model.cargo.RouteSpecification;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -17,4 +18,43 @@ public interface RoutingService {
    */
   List<Itinerary> fetchRoutesForSpecification(RouteSpecification routeSpecification);
 
+  /**
+   * @param routeSpecification route specification
+   * @param earliestDeparture time from which the cargo is available at the origin, or null for any time
+   * @return A list of itineraries that satisfy the specification and don't depart before the
+   * earliest departure. May be an empty list if no route is found.
+   */
+  List<Itinerary> fetchRoutesForSpecification(RouteSpecification routeSpecification, Date earliestDeparture);
+
+  /**
+   * Fetches routes for many specifications at once, for example when re-routing
+   * all cargos affected by a disruption.
+   *
+   * @param routeSpecifications route specifications
+   * @return A list of itineraries for each specification, in the same order.
+   */
+  List<List<Itinerary>> fetchRoutesForSpecifications(List<RouteSpecification> routeSpecifications);
+
+  /**
+   * Fetches routes for many specifications at once, each with its own earliest departure.
+   *
+   * @param routeSpecifications route specifications
+   * @param earliestDepartures time from which each cargo is available at its origin, null elements for any time
+   * @return A list of itineraries for each specification, in the same order.
+   */
+  List<List<Itinerary>> fetchRoutesForSpecifications(List<RouteSpecification> routeSpecifications,
+                                                     List<Date> earliestDepartures);
+
+  /**
+   * Fetches routes for many specifications at once, but no more than so many for each.
+   * Fewer alternatives are cheaper to find, and a single route may need no search at all.
+   *
+   * @param routeSpecifications route specifications
+   * @param earliestDepartures time from which each cargo is available at its origin, null elements for any time
+   * @param maxCandidates most itineraries to fetch for each specification, the earliest arriving first
+   * @return A list of itineraries for each specification, in the same order.
+   */
+  List<List<Itinerary>> fetchRoutesForSpecifications(List<RouteSpecification> routeSpecifications,
+                                                     List<Date> earliestDepartures, int maxCandidates);
+
 }
@@ -8,10 +8,14 @@ import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.ObjectMessage;
+import java.util.List;
 
 /**
  * Consumes handling event registration attempt messages and delegates to
  * proper registration.
+ * <p/>
+ * A message holds either a single attempt or a list of attempts, which are
+ * registered in order. An attempt that fails doesn't stop the rest of the list.
  * 
  */
 public class HandlingEventRegistrationAttemptConsumer implements MessageListener {
@@ -23,7 +27,21 @@ public class HandlingEventRegistrationAttemptConsumer implements MessageListener
   public void onMessage(final Message message) {
     try {
       final ObjectMessage om = (ObjectMessage) message;
-      HandlingEventRegistrationAttempt attempt = (HandlingEventRegistrationAttempt) om.getObject();
+      final Object object = om.getObject();
+      if (object instanceof List) {
+        for (Object attempt : (List<?>) object) {
+          register((HandlingEventRegistrationAttempt) attempt);
+        }
+      } else {
+        register((HandlingEventRegistrationAttempt) object);
+      }
+    } catch (Exception e) {
+      logger.error(e, e);
+    }
+  }
+
+  private void register(final HandlingEventRegistrationAttempt attempt) {
+    try {
       handlingEventService.registerHandlingEvent(
         attempt.getCompletionTime(),
         attempt.getTrackingId(),
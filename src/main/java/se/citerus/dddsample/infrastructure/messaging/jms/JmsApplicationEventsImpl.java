@@ -4,18 +4,26 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.jms.core.JmsOperations;
 import org.springframework.jms.core.MessageCreator;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import se.citerus.dddsample.application.ApplicationEvents;
 import se.citerus.dddsample.domain.model.cargo.Cargo;
 import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
 import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * JMS based implementation.
+ * <p/>
+ * Registration attempts that are received many at once are sent as object messages
+ * with a list of attempts, a message per so many attempts, instead of a message each.
  */
 public final class JmsApplicationEventsImpl implements ApplicationEvents {
 
@@ -25,6 +33,8 @@ public final class JmsApplicationEventsImpl implements ApplicationEvents {
   private Destination deliveredCargoQueue;
   private Destination rejectedRegistrationAttemptsQueue;
   private Destination handlingEventQueue;
+  private Destination voyageScheduleChangedQueue;
+  private int attemptsPerMessage = 100;
 
   private static final Log logger = LogFactory.getLog(JmsApplicationEventsImpl.class);
 
@@ -69,6 +79,46 @@ public final class JmsApplicationEventsImpl implements ApplicationEvents {
     });
   }
 
+  @Override
+  public void receivedHandlingEventRegistrationAttempts(final List<HandlingEventRegistrationAttempt> attempts) {
+    logger.info("Received " + attempts.size() + " handling event registration attempts");
+    for (int start = 0; start < attempts.size(); start += attemptsPerMessage) {
+      // A copy, since the list is serialized when the message is sent
+      final ArrayList<HandlingEventRegistrationAttempt> batch = new ArrayList<HandlingEventRegistrationAttempt>(
+        attempts.subList(start, Math.min(start + attemptsPerMessage, attempts.size())));
+      jmsOperations.send(handlingEventQueue, new MessageCreator() {
+        public Message createMessage(Session session) throws JMSException {
+          return session.createObjectMessage(batch);
+        }
+      });
+    }
+  }
+
+  @Override
+  public void voyageScheduleChanged(final Voyage voyage) {
+    logger.info("Voyage schedule changed " + voyage.voyageNumber());
+    final String voyageNumber = voyage.voyageNumber().idString();
+    // The consumer reads the new schedule back, so it isn't sent before the schedule is committed
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          sendVoyageScheduleChanged(voyageNumber);
+        }
+      });
+    } else {
+      sendVoyageScheduleChanged(voyageNumber);
+    }
+  }
+
+  private void sendVoyageScheduleChanged(final String voyageNumber) {
+    jmsOperations.send(voyageScheduleChangedQueue, new MessageCreator() {
+      public Message createMessage(Session session) throws JMSException {
+        return session.createTextMessage(voyageNumber);
+      }
+    });
+  }
+
   public void setJmsOperations(JmsOperations jmsOperations) {
     this.jmsOperations = jmsOperations;
   }
@@ -92,4 +142,15 @@ public final class JmsApplicationEventsImpl implements ApplicationEvents {
   public void setHandlingEventQueue(Destination destination) {
     this.handlingEventQueue = destination;
   }
+
+  public void setVoyageScheduleChangedQueue(Destination destination) {
+    this.voyageScheduleChangedQueue = destination;
+  }
+
+  /**
+   * @param attemptsPerMessage most registration attempts in one message
+   */
+  public void setAttemptsPerMessage(int attemptsPerMessage) {
+    this.attemptsPerMessage = attemptsPerMessage;
+  }
 }
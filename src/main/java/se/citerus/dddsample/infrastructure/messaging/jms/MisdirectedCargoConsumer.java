@@ -0,0 +1,156 @@
+package se.citerus.dddsample.infrastructure.messaging.jms;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
+import se.citerus.dddsample.application.BookingService;
+import se.citerus.dddsample.domain.model.cargo.TrackingId;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Consumes JMS messages about misdirected cargo and re-routes them in batches.
+ * <p/>
+ * A port closure or a mistake at a terminal misdirects many cargos at once,
+ * so tracking ids are received a batch at a time and handed to the booking service,
+ * which makes one routing request and one transaction per batch. A scheduled
+ * {@link #flush()} drains the queue.
+ * <p/>
+ * The messages of a batch are received in a transacted session, which is committed
+ * only after the batch is re-routed, so the tracking ids stay on the queue if re-routing
+ * fails or the application stops half way. A failed batch is rolled back, and its
+ * messages are then re-routed one at a time, so that a cargo that can't be re-routed
+ * doesn't hold back the rest. Re-routing twice is harmless, since a cargo that has
+ * already been re-routed from its current location is skipped.
+ * Duplicate messages within a batch are ignored.
+ */
+public class MisdirectedCargoConsumer {
+
+  private BookingService bookingService;
+  private JmsTemplate jmsTemplate;
+  private Destination misdirectedCargoQueue;
+  private int batchSize = 500;
+  private long receiveTimeout = 100;
+  private boolean assignBestRoute = true;
+
+  // Number of messages left of a failed batch, that are re-routed one at a time.
+  // Prefetched messages also come back as redelivered, so the JMS header can't tell.
+  private int suspects;
+
+  private final Log logger = LogFactory.getLog(getClass());
+
+  /**
+   * Re-routes all misdirected cargos on the queue, a batch at a time.
+   * Stops at the first failure, the failed batch is retried by the next flush.
+   */
+  public synchronized void flush() {
+    boolean more = true;
+    while (more) {
+      more = jmsTemplate.execute(new SessionCallback<Boolean>() {
+        public Boolean doInJms(Session session) throws JMSException {
+          return rerouteNextBatch(session);
+        }
+      }, true);
+    }
+  }
+
+  /**
+   * @return True if a full batch was re-routed, and there may be more.
+   */
+  private boolean rerouteNextBatch(final Session session) throws JMSException {
+    final MessageConsumer consumer = session.createConsumer(misdirectedCargoQueue);
+    try {
+      Message message = consumer.receive(receiveTimeout);
+      if (message == null) {
+        return false;
+      }
+      if (suspects > 0) {
+        if (!reroute(session, Collections.singletonList(trackingId(message)))) {
+          return false;
+        }
+        suspects--;
+        return true;
+      }
+
+      final Set<TrackingId> batch = new LinkedHashSet<TrackingId>();
+      int received = 0;
+      while (message != null) {
+        batch.add(trackingId(message));
+        received++;
+        message = received < batchSize ? consumer.receive(receiveTimeout) : null;
+      }
+      if (!reroute(session, new ArrayList<TrackingId>(batch))) {
+        suspects = received;
+        return false;
+      }
+      return received == batchSize;
+    } finally {
+      JmsUtils.closeMessageConsumer(consumer);
+    }
+  }
+
+  private boolean reroute(final Session session, final List<TrackingId> trackingIds) throws JMSException {
+    try {
+      bookingService.rerouteMisdirectedCargos(trackingIds, assignBestRoute);
+    } catch (RuntimeException e) {
+      logger.error("Failed to re-route " + trackingIds.size() + " misdirected cargos, rolling back for redelivery", e);
+      session.rollback();
+      return false;
+    }
+    session.commit();
+    return true;
+  }
+
+  private static TrackingId trackingId(final Message message) throws JMSException {
+    return new TrackingId(((TextMessage) message).getText());
+  }
+
+  public void setBookingService(BookingService bookingService) {
+    this.bookingService = bookingService;
+  }
+
+  /**
+   * @param jmsTemplate template for receiving, with transacted sessions
+   */
+  public void setJmsTemplate(JmsTemplate jmsTemplate) {
+    this.jmsTemplate = jmsTemplate;
+  }
+
+  public void setMisdirectedCargoQueue(Destination misdirectedCargoQueue) {
+    this.misdirectedCargoQueue = misdirectedCargoQueue;
+  }
+
+  /**
+   * @param batchSize maximum number of cargos to re-route in one batch
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @param receiveTimeout how long to wait for another message before re-routing a partial batch, in millis
+   */
+  public void setReceiveTimeout(long receiveTimeout) {
+    this.receiveTimeout = receiveTimeout;
+  }
+
+  /**
+   * @param assignBestRoute true to assign the earliest arriving route, false to leave
+   * the re-routed cargos misrouted for an operator to pick a route
+   */
+  public void setAssignBestRoute(boolean assignBestRoute) {
+    this.assignBestRoute = assignBestRoute;
+  }
+}
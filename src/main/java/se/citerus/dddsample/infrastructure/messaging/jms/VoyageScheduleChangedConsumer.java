@@ -0,0 +1,47 @@
+package se.citerus.dddsample.infrastructure.messaging.jms;
+
+import com.pathfinder.api.TimetableChangeListener;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.infrastructure.routing.RouteCandidateCache;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.TextMessage;
+
+/**
+ * Consumes JMS messages about voyage schedule changes. The pathfinder
+ * updates its routing graph with the new schedule of the voyage, and then
+ * the cached route candidates that use the voyage are invalidated.
+ */
+public class VoyageScheduleChangedConsumer implements MessageListener {
+
+  private TimetableChangeListener timetableChangeListener;
+  private RouteCandidateCache routeCandidateCache;
+  private final Log logger = LogFactory.getLog(getClass());
+
+  @Override
+  public void onMessage(final Message message) {
+    try {
+      final TextMessage textMessage = (TextMessage) message;
+      final String voyageNumberString = textMessage.getText();
+
+      // The graph goes first, so that invalidated routes are not reloaded from the old schedule
+      if (timetableChangeListener != null) {
+        timetableChangeListener.voyageChanged(voyageNumberString);
+      }
+      routeCandidateCache.invalidate(new VoyageNumber(voyageNumberString));
+    } catch (Exception e) {
+      logger.error(e, e);
+    }
+  }
+
+  public void setTimetableChangeListener(TimetableChangeListener timetableChangeListener) {
+    this.timetableChangeListener = timetableChangeListener;
+  }
+
+  public void setRouteCandidateCache(RouteCandidateCache routeCandidateCache) {
+    this.routeCandidateCache = routeCandidateCache;
+  }
+}
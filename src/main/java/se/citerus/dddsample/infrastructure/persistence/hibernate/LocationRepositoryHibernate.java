@@ -5,6 +5,9 @@ import se.citerus.dddsample.domain.model.location.Location;
 import se.citerus.dddsample.domain.model.location.LocationRepository;
 import se.citerus.dddsample.domain.model.location.UnLocode;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 @Repository
@@ -17,6 +20,20 @@ public final class LocationRepositoryHibernate extends HibernateRepository imple
       uniqueResult();
   }
 
+  public List<Location> findByUnLocodes(final Collection<UnLocode> unLocodes) {
+    if (unLocodes.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<String> idStrings = new ArrayList<String>(unLocodes.size());
+    for (UnLocode unLocode : unLocodes) {
+      idStrings.add(unLocode.idString());
+    }
+    return getSession().
+      createQuery("from Location where unLocode.unlocode in (:unlocodes)").
+      setParameterList("unlocodes", idStrings).
+      list();
+  }
+
   public List<Location> findAll() {
     return getSession().createQuery("from Location").list();
   }
@@ -5,6 +5,11 @@ import se.citerus.dddsample.domain.model.voyage.Voyage;
 import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
 import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Hibernate implementation of CarrierMovementRepository.
  */
@@ -18,4 +23,22 @@ public final class VoyageRepositoryHibernate extends HibernateRepository impleme
       uniqueResult();
   }
 
+  public List<Voyage> findByVoyageNumbers(final Collection<VoyageNumber> voyageNumbers) {
+    if (voyageNumbers.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<String> idStrings = new ArrayList<String>(voyageNumbers.size());
+    for (VoyageNumber voyageNumber : voyageNumbers) {
+      idStrings.add(voyageNumber.idString());
+    }
+    return getSession().
+      createQuery("from Voyage where voyageNumber.number in (:numbers)").
+      setParameterList("numbers", idStrings).
+      list();
+  }
+
+  public List<Voyage> findAll() {
+    return getSession().createQuery("from Voyage").list();
+  }
+
 }
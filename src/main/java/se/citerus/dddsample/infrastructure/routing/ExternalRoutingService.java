@@ -1,6 +1,8 @@
 package se.citerus.dddsample.infrastructure.routing;
 
 import com.pathfinder.api.GraphTraversalService;
+import com.pathfinder.api.LocalGraphTraversalService;
+import com.pathfinder.api.PathQuery;
 import com.pathfinder.api.TransitEdge;
 import com.pathfinder.api.TransitPath;
 import org.apache.commons.logging.Log;
@@ -11,15 +13,22 @@ import se.citerus.dddsample.domain.model.cargo.RouteSpecification;
 import se.citerus.dddsample.domain.model.location.Location;
 import se.citerus.dddsample.domain.model.location.LocationRepository;
 import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
 import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
 import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
 import se.citerus.dddsample.domain.service.RoutingService;
 
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Our end of the routing service. This is basically a data model
@@ -30,28 +39,52 @@ import java.util.Properties;
 public class ExternalRoutingService implements RoutingService {
 
   private GraphTraversalService graphTraversalService;
+  private LocalGraphTraversalService localGraphTraversalService;
   private LocationRepository locationRepository;
   private VoyageRepository voyageRepository;
+  private int maxCandidates = 5;
+  private int timeBudgetMillis;
+  private RouteCandidateCache routeCandidateCache;
+  private RoutingStatistics statistics = new RoutingStatistics();
+  private boolean trace;
   private static final Log log = LogFactory.getLog(ExternalRoutingService.class);
 
   public List<Itinerary> fetchRoutesForSpecification(RouteSpecification routeSpecification) {
+    return fetchRoutesForSpecification(routeSpecification, null);
+  }
+
+  public List<Itinerary> fetchRoutesForSpecification(RouteSpecification routeSpecification,
+                                                     final Date earliestDeparture) {
     /*
       The RouteSpecification is picked apart and adapted to the external API.
      */
     final Location origin = routeSpecification.origin();
     final Location destination = routeSpecification.destination();
 
-    final Properties limitations = new Properties();
-    limitations.setProperty("DEADLINE", routeSpecification.arrivalDeadline().toString());
-
     final List<TransitPath> transitPaths;
     try {
-      transitPaths = graphTraversalService.findShortestPath(
-      origin.unLocode().idString(),
-      destination.unLocode().idString(),
-      limitations
-    );
-    } catch (RemoteException e) {
+      if (routeCandidateCache != null) {
+        final boolean[] overBudget = new boolean[1];
+        transitPaths = routeCandidateCache.get(origin.unLocode(), destination.unLocode(),
+          earliestDeparture, routeSpecification.arrivalDeadline(), new RouteCandidateCache.Loader() {
+            public List<TransitPath> load(UnLocode origin, UnLocode destination, Date earliestDeparture,
+                                          Date deadline) throws Exception {
+              final long start = System.currentTimeMillis();
+              final List<TransitPath> transitPaths = findTransitPaths(origin, destination, earliestDeparture, deadline);
+              overBudget[0] = timeBudgetMillis > 0 && System.currentTimeMillis() - start >= timeBudgetMillis;
+              return transitPaths;
+            }
+          });
+        if (overBudget[0]) {
+          // The pathfinder may have cut the search short, so the result is not kept for other bookings
+          routeCandidateCache.remove(origin.unLocode(), destination.unLocode(), earliestDeparture,
+            routeSpecification.arrivalDeadline());
+        }
+      } else {
+        transitPaths = findTransitPaths(origin.unLocode(), destination.unLocode(), earliestDeparture,
+          routeSpecification.arrivalDeadline());
+      }
+    } catch (Exception e) {
       log.error(e, e);
       return Collections.EMPTY_LIST;
     }
@@ -59,42 +92,191 @@ public class ExternalRoutingService implements RoutingService {
     /*
      The returned result is then translated back into our domain model.
     */
+    return toItineraries(routeSpecification, earliestDeparture, transitPaths,
+      new References(Collections.singletonList(transitPaths)));
+  }
+
+  public List<List<Itinerary>> fetchRoutesForSpecifications(final List<RouteSpecification> routeSpecifications) {
+    return fetchRoutesForSpecifications(routeSpecifications, Collections.<Date>nCopies(routeSpecifications.size(), null));
+  }
+
+  public List<List<Itinerary>> fetchRoutesForSpecifications(final List<RouteSpecification> routeSpecifications,
+                                                            final List<Date> earliestDepartures) {
+    return fetchRoutesForSpecifications(routeSpecifications, earliestDepartures, maxCandidates);
+  }
+
+  public List<List<Itinerary>> fetchRoutesForSpecifications(final List<RouteSpecification> routeSpecifications,
+                                                            final List<Date> earliestDepartures,
+                                                            final int maxCandidates) {
+    final List<PathQuery> queries = new ArrayList<PathQuery>(routeSpecifications.size());
+    for (int i = 0; i < routeSpecifications.size(); i++) {
+      final RouteSpecification routeSpecification = routeSpecifications.get(i);
+      queries.add(new PathQuery(
+        routeSpecification.origin().unLocode().idString(),
+        routeSpecification.destination().unLocode().idString(),
+        limitations(earliestDepartures.get(i), routeSpecification.arrivalDeadline(), maxCandidates)
+      ));
+    }
+
+    final List<List<Itinerary>> itineraries = new ArrayList<List<Itinerary>>(routeSpecifications.size());
+    final List<List<TransitPath>> transitPaths;
+    try {
+      transitPaths = localGraphTraversalService != null ?
+        localGraphTraversalService.findShortestPaths(queries) :
+        graphTraversalService.findShortestPaths(queries);
+    } catch (RemoteException e) {
+      log.error(e, e);
+      for (int i = 0; i < routeSpecifications.size(); i++) {
+        itineraries.add(Collections.<Itinerary>emptyList());
+      }
+      return itineraries;
+    }
+
+    // Voyages and locations are shared by many candidates, so they are resolved once for the whole batch
+    final References references = new References(transitPaths);
+    for (int i = 0; i < routeSpecifications.size(); i++) {
+      itineraries.add(toItineraries(routeSpecifications.get(i), earliestDepartures.get(i), transitPaths.get(i), references));
+    }
+    return itineraries;
+  }
+
+  private List<Itinerary> toItineraries(RouteSpecification routeSpecification,
+                                        Date earliestDeparture,
+                                        List<TransitPath> transitPaths,
+                                        References references) {
     final List<Itinerary> itineraries = new ArrayList<Itinerary>();
 
+    int rejected = 0;
     for (TransitPath transitPath : transitPaths) {
-      final Itinerary itinerary = toItinerary(transitPath);
-      // Use the specification to safe-guard against invalid itineraries
-      if (routeSpecification.isSatisfiedBy(itinerary)) {
+      final Itinerary itinerary = toItinerary(transitPath, references);
+      // Use the specification to safe-guard against invalid itineraries, and against
+      // pathfinders that ignore the earliest departure
+      if (routeSpecification.isSatisfiedBy(itinerary) && !departsBefore(itinerary, earliestDeparture)) {
         itineraries.add(itinerary);
       } else {
+        rejected++;
         log.warn("Received itinerary that did not satisfy the route specification");
       }
     }
 
+    statistics.record(transitPaths.size(), rejected);
+    if (trace) {
+      log.info("Trace of " + routeSpecification.origin().unLocode() + " to " +
+        routeSpecification.destination().unLocode() + ": " + transitPaths.size() + " candidates, " +
+        rejected + " rejected by the route specification");
+    }
     return itineraries;
   }
 
-  private Itinerary toItinerary(TransitPath transitPath) {
+  private static boolean departsBefore(final Itinerary itinerary, final Date earliestDeparture) {
+    return earliestDeparture != null && !itinerary.legs().isEmpty() &&
+      itinerary.legs().get(0).loadTime().before(earliestDeparture);
+  }
+
+  private List<TransitPath> findTransitPaths(UnLocode origin, UnLocode destination, Date earliestDeparture,
+                                             Date deadline) throws RemoteException {
+    if (localGraphTraversalService != null) {
+      return localGraphTraversalService.findShortestPath(
+        origin.idString(),
+        destination.idString(),
+        limitations(earliestDeparture, deadline, maxCandidates)
+      );
+    }
+    return graphTraversalService.findShortestPath(
+      origin.idString(),
+      destination.idString(),
+      limitations(earliestDeparture, deadline, maxCandidates)
+    );
+  }
+
+  private Properties limitations(Date earliestDeparture, Date deadline, int maxCandidates) {
+    final Properties limitations = new Properties();
+    if (earliestDeparture != null) {
+      // Epoch millis, Date.toString() drops the milliseconds
+      limitations.setProperty("EARLIEST_DEPARTURE", Long.toString(earliestDeparture.getTime()));
+    }
+    limitations.setProperty("DEADLINE", deadline.toString());
+    limitations.setProperty("MAX_CANDIDATES", Integer.toString(maxCandidates));
+    if (timeBudgetMillis > 0) {
+      limitations.setProperty("TIME_BUDGET_MS", Integer.toString(timeBudgetMillis));
+    }
+    if (trace) {
+      limitations.setProperty("TRACE", "true");
+    }
+    return limitations;
+  }
+
+  private Itinerary toItinerary(TransitPath transitPath, References references) {
     List<Leg> legs = new ArrayList<Leg>(transitPath.getTransitEdges().size());
     for (TransitEdge edge : transitPath.getTransitEdges()) {
-      legs.add(toLeg(edge));
+      legs.add(toLeg(edge, references));
     }
     return new Itinerary(legs);
   }
 
-  private Leg toLeg(TransitEdge edge) {
+  private Leg toLeg(TransitEdge edge, References references) {
     return new Leg(
-      voyageRepository.find(new VoyageNumber(edge.getVoyageNumber())),
-      locationRepository.find(new UnLocode(edge.getFromUnLocode())),
-      locationRepository.find(new UnLocode(edge.getToUnLocode())),
+      references.voyage(edge.getVoyageNumber()),
+      references.location(edge.getFromUnLocode()),
+      references.location(edge.getToUnLocode()),
       edge.getFromDate(), edge.getToDate()
     );
   }
 
+  /**
+   * Resolution stage of the translation. All distinct voyage numbers and locations
+   * of a set of transit paths are collected first, and then fetched with a single
+   * query per repository, instead of three lookups per transit edge.
+   */
+  private final class References {
+    private final Map<String, Voyage> voyages = new HashMap<String, Voyage>();
+    private final Map<String, Location> locations = new HashMap<String, Location>();
+
+    References(Collection<List<TransitPath>> transitPathLists) {
+      final Set<VoyageNumber> voyageNumbers = new HashSet<VoyageNumber>();
+      final Set<UnLocode> unLocodes = new HashSet<UnLocode>();
+      for (List<TransitPath> transitPaths : transitPathLists) {
+        for (TransitPath transitPath : transitPaths) {
+          for (TransitEdge edge : transitPath.getTransitEdges()) {
+            voyageNumbers.add(new VoyageNumber(edge.getVoyageNumber()));
+            unLocodes.add(new UnLocode(edge.getFromUnLocode()));
+            unLocodes.add(new UnLocode(edge.getToUnLocode()));
+          }
+        }
+      }
+
+      if (!voyageNumbers.isEmpty()) {
+        for (Voyage voyage : voyageRepository.findByVoyageNumbers(voyageNumbers)) {
+          voyages.put(voyage.voyageNumber().idString(), voyage);
+        }
+      }
+      if (!unLocodes.isEmpty()) {
+        for (Location location : locationRepository.findByUnLocodes(unLocodes)) {
+          locations.put(location.unLocode().idString(), location);
+        }
+      }
+    }
+
+    Voyage voyage(String voyageNumber) {
+      return voyages.get(voyageNumber);
+    }
+
+    Location location(String unLocode) {
+      return locations.get(unLocode);
+    }
+  }
+
   public void setGraphTraversalService(GraphTraversalService graphTraversalService) {
     this.graphTraversalService = graphTraversalService;
   }
 
+  /**
+   * @param localGraphTraversalService co-located pathfinder, used instead of the remote one if set
+   */
+  public void setLocalGraphTraversalService(LocalGraphTraversalService localGraphTraversalService) {
+    this.localGraphTraversalService = localGraphTraversalService;
+  }
+
   public void setLocationRepository(LocationRepository locationRepository) {
     this.locationRepository = locationRepository;
   }
@@ -102,5 +284,41 @@ public class ExternalRoutingService implements RoutingService {
   public void setVoyageRepository(VoyageRepository voyageRepository) {
     this.voyageRepository = voyageRepository;
   }
+
+  /**
+   * @param maxCandidates maximum number of alternative routes to request from the pathfinder
+   */
+  public void setMaxCandidates(int maxCandidates) {
+    this.maxCandidates = maxCandidates;
+  }
+
+  /**
+   * @param timeBudgetMillis time the pathfinder may spend on a request, zero for no limit
+   */
+  public void setTimeBudgetMillis(int timeBudgetMillis) {
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  /**
+   * @param statistics counters of received and rejected candidates, for export over JMX
+   */
+  public void setStatistics(RoutingStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  /**
+   * @param trace whether to log the work done for each request, here and in the pathfinder
+   */
+  public void setTrace(boolean trace) {
+    this.trace = trace;
+  }
+
+  /**
+   * @param routeCandidateCache cache of pathfinder results, optional
+   */
+  public void setRouteCandidateCache(RouteCandidateCache routeCandidateCache) {
+    this.routeCandidateCache = routeCandidateCache;
+  }
+
   
 }
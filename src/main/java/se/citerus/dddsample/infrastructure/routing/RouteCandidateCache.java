@@ -0,0 +1,360 @@
+package se.citerus.dddsample.infrastructure.routing;
+
+import com.pathfinder.api.TransitEdge;
+import com.pathfinder.api.TransitPath;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded least-recently-used cache of pathfinder results, keyed by
+ * origin, destination, earliest departure and a deadline bucket. Many bookings
+ * share the same lane and deadline window, and the route specification is used
+ * to filter out candidates that don't meet the exact deadline anyway.
+ * The earliest departure is part of the key as is, since candidates that
+ * depart too early can't be filtered out without losing better ones.
+ * <p/>
+ * Concurrent misses for the same key are coalesced into a single load.
+ * Entries are invalidated when the schedule of a voyage that
+ * any of their transit paths use changes.
+ * <p/>
+ * The public getters are the cache metrics, and are exported over JMX.
+ */
+public class RouteCandidateCache {
+
+  private static final long ONE_DAY_MS = 1000L * 60 * 60 * 24;
+
+  private int maxEntries = 10000;
+  private long deadlineBucketMillis = ONE_DAY_MS;
+
+  // Guarded by this
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+  private final Map<String, Set<Key>> keysByVoyage = new HashMap<String, Set<Key>>();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong loadFailureCount = new AtomicLong();
+  private final AtomicLong totalLoadTime = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  private static final Log logger = LogFactory.getLog(RouteCandidateCache.class);
+
+  /**
+   * A loader of transit paths for a cache key.
+   */
+  public interface Loader {
+
+    /**
+     * @param origin origin
+     * @param destination destination
+     * @param earliestDeparture earliest departure, or null for any time
+     * @param deadline deadline to use for the lookup, the end of the deadline bucket
+     * @return Transit paths.
+     * @throws Exception if the lookup fails, in which case nothing is cached
+     */
+    List<TransitPath> load(UnLocode origin, UnLocode destination, Date earliestDeparture, Date deadline) throws Exception;
+  }
+
+  /**
+   * @param origin origin
+   * @param destination destination
+   * @param earliestDeparture earliest departure from the origin, or null for any time
+   * @param deadline arrival deadline
+   * @param loader loader to use on a miss
+   * @return Cached or loaded transit paths, which may arrive after the given deadline
+   * but not after the end of its deadline bucket.
+   * @throws Exception if the loader fails
+   */
+  public List<TransitPath> get(final UnLocode origin, final UnLocode destination, final Date earliestDeparture,
+                               final Date deadline, final Loader loader) throws Exception {
+    final Key key = key(origin, destination, earliestDeparture, deadline);
+    final Date bucketDeadline = new Date((key.deadlineBucket + 1) * deadlineBucketMillis);
+
+    final Entry entry;
+    final boolean miss;
+    synchronized (this) {
+      final Entry existing = entries.get(key);
+      if (existing != null) {
+        entry = existing;
+        miss = false;
+      } else {
+        entry = new Entry(new FutureTask<List<TransitPath>>(new Callable<List<TransitPath>>() {
+          public List<TransitPath> call() throws Exception {
+            return loader.load(origin, destination, earliestDeparture, bucketDeadline);
+          }
+        }));
+        entries.put(key, entry);
+        miss = true;
+        evictOverflow();
+      }
+    }
+
+    if (miss) {
+      missCount.incrementAndGet();
+      load(key, entry);
+    } else {
+      hitCount.incrementAndGet();
+    }
+
+    try {
+      return entry.future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private void load(final Key key, final Entry entry) {
+    final long start = System.currentTimeMillis();
+    entry.future.run();
+    totalLoadTime.addAndGet(System.currentTimeMillis() - start);
+
+    try {
+      final List<TransitPath> transitPaths = entry.future.get();
+      synchronized (this) {
+        // Only index the entry if it wasn't evicted or invalidated while loading
+        if (entries.get(key) == entry) {
+          entry.voyageNumbers = voyageNumbers(transitPaths);
+          for (String voyageNumber : entry.voyageNumbers) {
+            Set<Key> keys = keysByVoyage.get(voyageNumber);
+            if (keys == null) {
+              keys = new HashSet<Key>();
+              keysByVoyage.put(voyageNumber, keys);
+            }
+            keys.add(key);
+          }
+        }
+      }
+    } catch (Exception e) {
+      loadFailureCount.incrementAndGet();
+      synchronized (this) {
+        if (entries.get(key) == entry) {
+          entries.remove(key);
+        }
+      }
+    }
+  }
+
+  private Key key(final UnLocode origin, final UnLocode destination, final Date earliestDeparture,
+                  final Date deadline) {
+    return new Key(origin, destination, earliestDeparture == null ? Long.MIN_VALUE : earliestDeparture.getTime(),
+      Math.floorDiv(deadline.getTime(), deadlineBucketMillis));
+  }
+
+  /**
+   * Removes the cached result for a lane, for example one that the pathfinder
+   * didn't have the time to complete.
+   *
+   * @param origin origin
+   * @param destination destination
+   * @param earliestDeparture earliest departure from the origin, or null for any time
+   * @param deadline arrival deadline
+   */
+  public synchronized void remove(final UnLocode origin, final UnLocode destination, final Date earliestDeparture,
+                                  final Date deadline) {
+    final Key key = key(origin, destination, earliestDeparture, deadline);
+    final Entry entry = entries.remove(key);
+    if (entry != null) {
+      unindex(key, entry);
+    }
+  }
+
+  /**
+   * Invalidates all cached results that depend on a voyage, as well as all
+   * results that are being loaded, since their dependencies are not known yet.
+   *
+   * @param voyageNumber voyage number of the voyage whose schedule has changed
+   */
+  public synchronized void invalidate(final VoyageNumber voyageNumber) {
+    final Set<Key> keys = keysByVoyage.get(voyageNumber.idString());
+    int invalidated = 0;
+    if (keys != null) {
+      for (Key key : keys.toArray(new Key[keys.size()])) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+          unindex(key, entry);
+          invalidated++;
+        }
+      }
+    }
+    for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+      if (!it.next().isLoaded()) {
+        it.remove();
+        invalidated++;
+      }
+    }
+    invalidationCount.addAndGet(invalidated);
+    logger.info("Schedule of voyage " + voyageNumber + " changed, invalidated " + invalidated + " cached routes");
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public synchronized void clear() {
+    invalidationCount.addAndGet(entries.size());
+    entries.clear();
+    keysByVoyage.clear();
+  }
+
+  private void evictOverflow() {
+    final Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+    while (entries.size() > maxEntries && it.hasNext()) {
+      final Map.Entry<Key, Entry> eldest = it.next();
+      it.remove();
+      unindex(eldest.getKey(), eldest.getValue());
+      evictionCount.incrementAndGet();
+    }
+  }
+
+  private void unindex(final Key key, final Entry entry) {
+    if (!entry.isLoaded()) {
+      return;
+    }
+    for (String voyageNumber : entry.voyageNumbers) {
+      final Set<Key> keys = keysByVoyage.get(voyageNumber);
+      if (keys != null && keys.remove(key) && keys.isEmpty()) {
+        keysByVoyage.remove(voyageNumber);
+      }
+    }
+  }
+
+  private static Set<String> voyageNumbers(final List<TransitPath> transitPaths) {
+    final Set<String> voyageNumbers = new HashSet<String>();
+    for (TransitPath transitPath : transitPaths) {
+      for (TransitEdge edge : transitPath.getTransitEdges()) {
+        voyageNumbers.add(edge.getVoyageNumber());
+      }
+    }
+    return voyageNumbers;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public double getHitRate() {
+    final long hits = hitCount.get();
+    final long requests = hits + missCount.get();
+    return requests == 0 ? 0.0 : (double) hits / requests;
+  }
+
+  public long getLoadFailureCount() {
+    return loadFailureCount.get();
+  }
+
+  public long getTotalLoadTime() {
+    return totalLoadTime.get();
+  }
+
+  public double getAverageLoadTime() {
+    final long loads = missCount.get();
+    return loads == 0 ? 0.0 : (double) totalLoadTime.get() / loads;
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  public long getInvalidationCount() {
+    return invalidationCount.get();
+  }
+
+  public synchronized int getSize() {
+    return entries.size();
+  }
+
+  /**
+   * @return Number of keys in the voyage index, counted once per voyage.
+   */
+  synchronized int indexSize() {
+    int size = 0;
+    for (Set<Key> keys : keysByVoyage.values()) {
+      size += keys.size();
+    }
+    return size;
+  }
+
+  /**
+   * @param maxEntries maximum number of cached lanes, least recently used are evicted first
+   */
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * @param deadlineBucketMillis width of the deadline buckets, one day by default
+   */
+  public void setDeadlineBucketMillis(long deadlineBucketMillis) {
+    this.deadlineBucketMillis = deadlineBucketMillis;
+  }
+
+  private static final class Entry {
+    final FutureTask<List<TransitPath>> future;
+    // Voyages used by the transit paths, null while loading
+    Set<String> voyageNumbers;
+
+    Entry(final FutureTask<List<TransitPath>> future) {
+      this.future = future;
+    }
+
+    boolean isLoaded() {
+      return voyageNumbers != null;
+    }
+  }
+
+  private static final class Key {
+    final UnLocode origin;
+    final UnLocode destination;
+    // Long.MIN_VALUE for any time
+    final long earliestDeparture;
+    final long deadlineBucket;
+
+    Key(final UnLocode origin, final UnLocode destination, final long earliestDeparture, final long deadlineBucket) {
+      this.origin = origin;
+      this.destination = destination;
+      this.earliestDeparture = earliestDeparture;
+      this.deadlineBucket = deadlineBucket;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+
+      final Key other = (Key) o;
+      return deadlineBucket == other.deadlineBucket &&
+        earliestDeparture == other.earliestDeparture &&
+        origin.sameValueAs(other.origin) &&
+        destination.sameValueAs(other.destination);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 31 * origin.hashCode() + destination.hashCode();
+      result = 31 * result + (int) (earliestDeparture ^ (earliestDeparture >>> 32));
+      return 31 * result + (int) (deadlineBucket ^ (deadlineBucket >>> 32));
+    }
+  }
+
+}
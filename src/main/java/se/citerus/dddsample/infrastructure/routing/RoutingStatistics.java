@@ -0,0 +1,40 @@
+package se.citerus.dddsample.infrastructure.routing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the candidates that the pathfinder returned to the {@link ExternalRoutingService},
+ * and of those that didn't satisfy the route specification they were requested for.
+ * <p/>
+ * The public getters are the metrics, and are exported over JMX.
+ */
+public class RoutingStatistics {
+
+  private final AtomicLong specificationCount = new AtomicLong();
+  private final AtomicLong candidateCount = new AtomicLong();
+  private final AtomicLong rejectedCandidateCount = new AtomicLong();
+
+  void record(final int candidates, final int rejected) {
+    specificationCount.incrementAndGet();
+    candidateCount.addAndGet(candidates);
+    rejectedCandidateCount.addAndGet(rejected);
+  }
+
+  public long getSpecificationCount() {
+    return specificationCount.get();
+  }
+
+  public long getCandidateCount() {
+    return candidateCount.get();
+  }
+
+  public long getRejectedCandidateCount() {
+    return rejectedCandidateCount.get();
+  }
+
+  public double getRejectionRate() {
+    final long candidates = candidateCount.get();
+    return candidates == 0 ? 0.0 : (double) rejectedCandidateCount.get() / candidates;
+  }
+
+}
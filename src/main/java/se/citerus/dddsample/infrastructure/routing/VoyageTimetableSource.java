@@ -0,0 +1,145 @@
+package se.citerus.dddsample.infrastructure.routing;
+
+import com.pathfinder.api.PortPosition;
+import com.pathfinder.api.TimetableSource;
+import com.pathfinder.api.TransitEdge;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.citerus.dddsample.domain.model.location.Coordinates;
+import se.citerus.dddsample.domain.model.location.Location;
+import se.citerus.dddsample.domain.model.location.LocationRepository;
+import se.citerus.dddsample.domain.model.voyage.CarrierMovement;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Supplies the pathfinder with our voyage schedules. Each carrier movement
+ * is translated into a transit edge of the external API. The coordinates
+ * of our locations are supplied as port positions, and all our locations are listed
+ * whether any voyage calls there or not.
+ * <p/>
+ * The pathfinder reads the timetable on its own threads, so the
+ * voyages are loaded in a read-only transaction if a transaction manager is set.
+ *
+ */
+public class VoyageTimetableSource implements TimetableSource {
+
+  private VoyageRepository voyageRepository;
+  private LocationRepository locationRepository;
+  private TransactionTemplate transactionTemplate;
+
+  @Override
+  public List<TransitEdge> listTransitEdges() {
+    return inTransaction(new TransactionCallback<List<TransitEdge>>() {
+      public List<TransitEdge> doInTransaction(TransactionStatus status) {
+        final List<TransitEdge> transitEdges = new ArrayList<TransitEdge>();
+        for (Voyage voyage : voyageRepository.findAll()) {
+          addTransitEdges(voyage, transitEdges);
+        }
+        return transitEdges;
+      }
+    });
+  }
+
+  @Override
+  public List<TransitEdge> listTransitEdges(final String voyageNumber) {
+    return inTransaction(new TransactionCallback<List<TransitEdge>>() {
+      public List<TransitEdge> doInTransaction(TransactionStatus status) {
+        final Voyage voyage = voyageRepository.find(new VoyageNumber(voyageNumber));
+        if (voyage == null) {
+          return Collections.emptyList();
+        }
+        final List<TransitEdge> transitEdges = new ArrayList<TransitEdge>();
+        addTransitEdges(voyage, transitEdges);
+        return transitEdges;
+      }
+    });
+  }
+
+  @Override
+  public List<PortPosition> listPortPositions() {
+    if (locationRepository == null) {
+      return Collections.emptyList();
+    }
+    return inTransaction(new TransactionCallback<List<PortPosition>>() {
+      public List<PortPosition> doInTransaction(TransactionStatus status) {
+        final List<PortPosition> portPositions = new ArrayList<PortPosition>();
+        for (Location location : locationRepository.findAll()) {
+          final Coordinates coordinates = location.coordinates();
+          if (coordinates != null) {
+            portPositions.add(new PortPosition(
+              location.unLocode().idString(), coordinates.latitude(), coordinates.longitude()));
+          }
+        }
+        return portPositions;
+      }
+    });
+  }
+
+  @Override
+  public List<String> listLocations() {
+    if (locationRepository == null) {
+      return Collections.emptyList();
+    }
+    return inTransaction(new TransactionCallback<List<String>>() {
+      public List<String> doInTransaction(TransactionStatus status) {
+        final List<String> unLocodes = new ArrayList<String>();
+        for (Location location : locationRepository.findAll()) {
+          unLocodes.add(location.unLocode().idString());
+        }
+        return unLocodes;
+      }
+    });
+  }
+
+  private void addTransitEdges(Voyage voyage, List<TransitEdge> transitEdges) {
+    for (CarrierMovement carrierMovement : voyage.schedule().carrierMovements()) {
+      transitEdges.add(toTransitEdge(voyage, carrierMovement));
+    }
+  }
+
+  private TransitEdge toTransitEdge(Voyage voyage, CarrierMovement carrierMovement) {
+    return new TransitEdge(
+      voyage.voyageNumber().idString(),
+      carrierMovement.departureLocation().unLocode().idString(),
+      carrierMovement.arrivalLocation().unLocode().idString(),
+      carrierMovement.departureTime(),
+      carrierMovement.arrivalTime()
+    );
+  }
+
+  private <T> T inTransaction(TransactionCallback<T> callback) {
+    if (transactionTemplate == null) {
+      return callback.doInTransaction(null);
+    }
+    return transactionTemplate.execute(callback);
+  }
+
+  public void setVoyageRepository(VoyageRepository voyageRepository) {
+    this.voyageRepository = voyageRepository;
+  }
+
+  /**
+   * @param locationRepository location repository, optional, without it the pathfinder
+   * gets no port positions, and only knows the locations that voyages call at
+   */
+  public void setLocationRepository(LocationRepository locationRepository) {
+    this.locationRepository = locationRepository;
+  }
+
+  /**
+   * @param transactionManager transaction manager for reading voyages, optional
+   */
+  public void setTransactionManager(PlatformTransactionManager transactionManager) {
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.transactionTemplate.setReadOnly(true);
+  }
+
+}
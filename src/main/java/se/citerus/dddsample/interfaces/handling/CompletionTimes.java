@@ -0,0 +1,56 @@
+package se.citerus.dddsample.interfaces.handling;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Converts the fields of completion times on {@link HandlingReportParser#ISO_8601_FORMAT},
+ * as decoded by a parser, to millis in the default time zone. Reports come in bursts
+ * from the same hours, so the start of the last hour is cached and the minutes are
+ * added to it.
+ * <p/>
+ * Not thread-safe, since calendars aren't.
+ */
+public final class CompletionTimes {
+
+  private final Calendar calendar = Calendar.getInstance();
+  // Start of the hour of the last completion time, if the zone offset is the same all hour
+  private long cachedHour = -1;
+  private long cachedHourMillis;
+
+  /**
+   * Out of range fields roll over, like in a lenient date format.
+   *
+   * @param year year
+   * @param month month, starting at 1
+   * @param day day of the month
+   * @param hour hour of the day
+   * @param minute minute
+   * @return The completion time in millis, or {@link HandlingReportParser#INVALID_TIME}
+   * if any field is negative, as decoded from something else than digits.
+   */
+  public long completionTime(final int year, final int month, final int day, final int hour, final int minute) {
+    if ((year | month | day | hour | minute) < 0) {
+      return HandlingReportParser.INVALID_TIME;
+    }
+
+    final long hourKey = ((year * 100L + month) * 100 + day) * 100 + hour;
+    if (hourKey != cachedHour) {
+      calendar.clear();
+      calendar.set(year, month - 1, day, hour, 0);
+      final long millis = calendar.getTimeInMillis();
+      final TimeZone zone = calendar.getTimeZone();
+      // Minutes can only be added to the start of the hour if the offset doesn't change within it
+      if (zone.getOffset(millis) == zone.getOffset(millis + 60 * 60 * 1000 - 1)) {
+        cachedHour = hourKey;
+        cachedHourMillis = millis;
+      } else {
+        cachedHour = -1;
+        calendar.set(Calendar.MINUTE, minute);
+        return calendar.getTimeInMillis();
+      }
+    }
+    return cachedHourMillis + minute * 60 * 1000L;
+  }
+
+}
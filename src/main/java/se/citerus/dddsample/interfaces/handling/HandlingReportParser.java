@@ -8,29 +8,179 @@ import se.citerus.dddsample.domain.model.location.UnLocode;
 import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
 
 import javax.xml.datatype.XMLGregorianCalendar;
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utility methods for parsing various forms of handling report formats.
  *
  * Supports the notification pattern for incremental error reporting.
+ * <p/>
+ * Invalid input is detected without exceptions, since feeds from the terminals
+ * can be dirty. The {@link #validate} methods return compact error codes instead
+ * of messages, for callers that only need to know what's wrong.
  *
  */
 public class HandlingReportParser {
 
   public static final String ISO_8601_FORMAT = "yyyy-MM-dd HH:mm";
 
+  /**
+   * Error codes, bits that can be or'ed together.
+   */
+  public static final int VALID = 0;
+  public static final int INVALID_COMPLETION_TIME = 1;
+  public static final int INVALID_TRACKING_ID = 1 << 1;
+  public static final int INVALID_UNLOCODE = 1 << 2;
+  public static final int INVALID_EVENT_TYPE = 1 << 3;
+
+  /**
+   * Returned by {@link #completionTime(String)} for an invalid completion time.
+   */
+  public static final long INVALID_TIME = Long.MIN_VALUE;
+
+  private static final Map<String, HandlingEvent.Type> EVENT_TYPES;
+
+  static {
+    final Map<String, HandlingEvent.Type> eventTypes = new HashMap<String, HandlingEvent.Type>();
+    for (HandlingEvent.Type type : HandlingEvent.Type.values()) {
+      eventTypes.put(type.name(), type);
+    }
+    EVENT_TYPES = Collections.unmodifiableMap(eventTypes);
+  }
+
+  // Per thread, since neither calendars nor date formats are thread-safe
+  private static final ThreadLocal<CompletionTimes> COMPLETION_TIMES = new ThreadLocal<CompletionTimes>() {
+    @Override
+    protected CompletionTimes initialValue() {
+      return new CompletionTimes();
+    }
+  };
+
+  private static final ThreadLocal<SimpleDateFormat> DATE_FORMATS = new ThreadLocal<SimpleDateFormat>() {
+    @Override
+    protected SimpleDateFormat initialValue() {
+      return new SimpleDateFormat(ISO_8601_FORMAT);
+    }
+  };
+
+  /**
+   * Validates the columns of a handling report. The voyage number is optional,
+   * and is always valid.
+   *
+   * @return VALID, or the error codes of the invalid columns or'ed together.
+   */
+  public static int validate(final String completionTime, final String trackingId,
+                             final String unLocode, final String eventType) {
+    int errors = VALID;
+    if (completionTime(completionTime) == INVALID_TIME) {
+      errors |= INVALID_COMPLETION_TIME;
+    }
+    if (trackingId == null) {
+      errors |= INVALID_TRACKING_ID;
+    }
+    if (!UnLocode.isValid(unLocode)) {
+      errors |= INVALID_UNLOCODE;
+    }
+    if (eventType(eventType) == null) {
+      errors |= INVALID_EVENT_TYPE;
+    }
+    return errors;
+  }
+
+  /**
+   * Validates a handling report from the web service, like
+   * {@link #validate(String, String, String, String)} for each of its tracking ids.
+   *
+   * @return VALID, or the error codes of the invalid fields or'ed together.
+   */
+  public static int validate(final HandlingReport handlingReport) {
+    int errors = VALID;
+    if (handlingReport.getCompletionTime() == null) {
+      errors |= INVALID_COMPLETION_TIME;
+    }
+    for (String trackingId : handlingReport.getTrackingIds()) {
+      if (trackingId == null) {
+        errors |= INVALID_TRACKING_ID;
+      }
+    }
+    if (!UnLocode.isValid(handlingReport.getUnLocode())) {
+      errors |= INVALID_UNLOCODE;
+    }
+    if (eventType(handlingReport.getType()) == null) {
+      errors |= INVALID_EVENT_TYPE;
+    }
+    return errors;
+  }
+
+  /**
+   * Completion times on {@link #ISO_8601_FORMAT} are parsed from the digits,
+   * anything else is left to a lenient {@link SimpleDateFormat}, like {@link #parseDate}.
+   *
+   * @param completionTime completion time, may be null
+   * @return The completion time in millis, or INVALID_TIME.
+   */
+  public static long completionTime(final String completionTime) {
+    if (completionTime == null) {
+      return INVALID_TIME;
+    }
+    final boolean canonical = completionTime.length() == 16 && completionTime.charAt(4) == '-' &&
+      completionTime.charAt(7) == '-' && completionTime.charAt(10) == ' ' && completionTime.charAt(13) == ':';
+    if (canonical) {
+      final long millis = COMPLETION_TIMES.get().completionTime(
+        digits(completionTime, 0, 4),
+        digits(completionTime, 5, 2),
+        digits(completionTime, 8, 2),
+        digits(completionTime, 11, 2),
+        digits(completionTime, 14, 2));
+      if (millis != INVALID_TIME) {
+        return millis;
+      }
+    }
+    // Not canonical, but the lenient date format may still accept it
+    final Date date = DATE_FORMATS.get().parse(completionTime, new ParsePosition(0));
+    return date == null ? INVALID_TIME : date.getTime();
+  }
+
+  /**
+   * @return The decimal value of the digits, or -1 if there is a non-digit.
+   */
+  private static int digits(final String s, final int start, final int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      final int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * @param eventType event type name, may be null
+   * @return The event type, or null if there is no such type.
+   */
+  public static HandlingEvent.Type eventType(final String eventType) {
+    return eventType == null ? null : EVENT_TYPES.get(eventType);
+  }
+
   public static UnLocode parseUnLocode(final String unlocode, final List<String> errors) {
-    try {
-      return new UnLocode(unlocode);
-    } catch (IllegalArgumentException e) {
-      errors.add(e.getMessage());
+    if (unlocode == null) {
+      errors.add("Country and location may not be null");
       return null;
     }
+    if (!UnLocode.isValid(unlocode)) {
+      errors.add(unlocode + " is not a valid UN/LOCODE (does not match pattern)");
+      return null;
+    }
+    return new UnLocode(unlocode);
   }
 
   public static TrackingId parseTrackingId(final String trackingId, final List<String> errors) {
@@ -56,23 +206,20 @@ public class HandlingReportParser {
   }
 
   public static Date parseDate(final String completionTime, final List<String> errors) {
-    Date date;
-    try {
-      date = new SimpleDateFormat(ISO_8601_FORMAT).parse(completionTime);
-    } catch (ParseException e) {
+    final long millis = completionTime(completionTime);
+    if (millis == INVALID_TIME) {
       errors.add("Invalid date format: " + completionTime + ", must be on ISO 8601 format: " + ISO_8601_FORMAT);
-      date = null;
+      return null;
     }
-    return date;
+    return new Date(millis);
   }
 
   public static HandlingEvent.Type parseEventType(final String eventType, final List<String> errors) {
-    try {
-      return HandlingEvent.Type.valueOf(eventType);
-    } catch (IllegalArgumentException e) {
+    final HandlingEvent.Type type = eventType(eventType);
+    if (type == null) {
       errors.add(eventType + " is not a valid handling event type. Valid types are: " + Arrays.toString(HandlingEvent.Type.values()));
-      return null;
     }
+    return type;
   }
 
   public static Date parseCompletionTime(HandlingReport handlingReport, List<String> errors) {
@@ -84,4 +231,5 @@ public class HandlingReportParser {
 
     return completionTime.toGregorianCalendar().getTime();
   }
+
 }
@@ -0,0 +1,379 @@
+package se.citerus.dddsample.interfaces.handling.file;
+
+import se.citerus.dddsample.domain.model.cargo.TrackingId;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.interfaces.handling.CompletionTimes;
+import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
+import se.citerus.dddsample.interfaces.handling.HandlingReportParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Parser of tab separated handling files, with the columns completion time,
+ * tracking id, voyage number (optional), UN/LOCODE and event type.
+ * <p/>
+ * The file is memory-mapped, a window at a time, and the lines and columns are
+ * found by scanning the bytes for tabs and line breaks. Each column is validated
+ * on the bytes, and Strings are only created for the columns of valid lines, to
+ * construct the registration attempt. Rejected lines are passed on as a slice of
+ * the mapped file.
+ * <p/>
+ * Completion times in the canonical {@link HandlingReportParser#ISO_8601_FORMAT}
+ * are decoded from the digits, anything else is left to the lenient date format,
+ * so the accepted lines and their values are the same as with the date format.
+ * Lines are split like {@link String#split(String)} on tabs, which drops trailing
+ * empty columns. The charset must encode tabs, line breaks and ASCII letters and
+ * digits as single bytes, which all common charsets except UTF-16 and UTF-32 do.
+ * <p/>
+ * Not thread-safe, use a parser per file.
+ */
+public final class MappedHandlingFileParser {
+
+  /**
+   * Receives the outcome of each line, in order.
+   */
+  public interface Handler {
+
+    /**
+     * @param attempt registration attempt parsed from a valid line
+     * @throws IOException if the progress can't be saved
+     */
+    void accepted(HandlingEventRegistrationAttempt attempt) throws IOException;
+
+    /**
+     * @param line bytes of the line, without the line break, valid until this method returns
+     * @param lineNumber line number, starting at 1
+     * @param reason why the line was rejected
+     * @throws IOException if the line can't be saved
+     */
+    void rejected(ByteBuffer line, long lineNumber, String reason) throws IOException;
+  }
+
+  // Large enough for any sane line, small enough to map in a 32-bit address space
+  private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+  private static final int MAX_COLUMNS = 5;
+  // Open addressing table of locations, cleared when it is half full
+  private static final int LOCATION_TABLE_SIZE = 1 << 14;
+  private static final byte[][] EVENT_TYPES = new byte[HandlingEvent.Type.values().length][];
+
+  static {
+    for (HandlingEvent.Type type : HandlingEvent.Type.values()) {
+      EVENT_TYPES[type.ordinal()] = type.name().getBytes(Charset.forName("US-ASCII"));
+    }
+  }
+
+  private final Charset charset;
+  private final int windowSize;
+  private final CompletionTimes completionTimes = new CompletionTimes();
+  // Files mention the same few locations over and over, by their five bytes, zero for a free slot
+  private final long[] locationKeys = new long[LOCATION_TABLE_SIZE];
+  private final UnLocode[] locations = new UnLocode[LOCATION_TABLE_SIZE];
+  private int locationCount;
+
+  // Column boundaries of the current line: column i is [starts[i], ends[i])
+  private final int[] starts = new int[MAX_COLUMNS];
+  private final int[] ends = new int[MAX_COLUMNS];
+  private char[] chars = new char[64];
+  // Of the line being handled
+  private long lineOffset;
+  private long lineNumber;
+
+  /**
+   * @param charset charset of the files
+   */
+  public MappedHandlingFileParser(final Charset charset) {
+    this(charset, DEFAULT_WINDOW_SIZE);
+  }
+
+  MappedHandlingFileParser(final Charset charset, final int windowSize) {
+    this.charset = charset;
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * @param file handling file
+   * @param handler handler of the accepted and rejected lines
+   * @return Number of lines.
+   * @throws IOException if the file can't be read, or the handler fails
+   */
+  public long parse(final File file, final Handler handler) throws IOException {
+    return parse(file, 0, 0, handler);
+  }
+
+  /**
+   * Resumes parsing after the lines that have already been handled.
+   *
+   * @param file handling file
+   * @param offset byte offset of the first line to parse, a {@link #lineOffset()}
+   * @param linesBefore number of lines before the offset
+   * @param handler handler of the accepted and rejected lines
+   * @return Number of lines, including those before the offset.
+   * @throws IOException if the file can't be read, or the handler fails
+   */
+  public long parse(final File file, final long offset, final long linesBefore, final Handler handler) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      final long size = channel.size();
+      long lineNumber = linesBefore;
+      long windowStart = offset;
+      // A carriage return at the end of the previous window, so a line feed at the start of this one is part of it
+      boolean carriageReturn = false;
+      while (windowStart < size) {
+        final long length = Math.min(windowSize, size - windowStart);
+        final boolean last = windowStart + length == size;
+        final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+        final int limit = (int) length;
+
+        int position = 0;
+        if (carriageReturn && window.get(0) == '\n') {
+          position++;
+        }
+        carriageReturn = false;
+        while (position < limit) {
+          // A single scan finds the tabs and the end of the line
+          int tabs = 0;
+          int end = position;
+          while (end < limit) {
+            final byte b = window.get(end);
+            if (b == '\n' || b == '\r') {
+              break;
+            }
+            if (b == '\t') {
+              if (tabs < MAX_COLUMNS) {
+                ends[tabs] = end;
+              }
+              tabs++;
+            }
+            end++;
+          }
+          if (end == limit && !last) {
+            if (position == 0) {
+              throw new IOException("Line " + (lineNumber + 1) + " of " + file + " is longer than " +
+                windowSize + " bytes");
+            }
+            // Continue with this line at the start of the next window
+            break;
+          }
+          lineNumber++;
+          this.lineOffset = windowStart + position;
+          this.lineNumber = lineNumber;
+          parseLine(window, position, end, tabs, lineNumber, handler);
+
+          position = end;
+          if (position < limit && window.get(position++) == '\r') {
+            if (position < limit) {
+              if (window.get(position) == '\n') {
+                position++;
+              }
+            } else {
+              carriageReturn = true;
+            }
+          }
+        }
+        windowStart += position;
+      }
+      return lineNumber;
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * @return Byte offset in the file of the line being handled, where parsing can be resumed
+   * once the handler is done with it.
+   */
+  public long lineOffset() {
+    return lineOffset;
+  }
+
+  /**
+   * @return Line number of the line being handled, starting at 1.
+   */
+  public long lineNumber() {
+    return lineNumber;
+  }
+
+  private void parseLine(final ByteBuffer window, final int start, final int end, final int tabs,
+                         final long lineNumber, final Handler handler) throws IOException {
+    // Trailing empty columns are dropped, like String.split does
+    int columns = tabs + 1;
+    int last = end;
+    while (columns > 1 && last > start && window.get(last - 1) == '\t') {
+      columns--;
+      last--;
+    }
+    if (columns != 4 && columns != 5) {
+      reject(window, start, end, lineNumber, "Wrong number of columns, must be 4 or 5", handler);
+      return;
+    }
+
+    starts[0] = start;
+    for (int i = 1; i < columns; i++) {
+      starts[i] = ends[i - 1] + 1;
+    }
+    ends[columns - 1] = last;
+
+    // Columns as in the five column layout, the voyage number is missing from the four column layout
+    final int voyage = columns == 5 ? 2 : -1;
+    final int location = columns == 5 ? 3 : 2;
+    final int type = columns == 5 ? 4 : 3;
+
+    final long completionTime = completionTime(window, starts[0], ends[0]);
+    if (completionTime == HandlingReportParser.INVALID_TIME) {
+      reject(window, start, end, lineNumber, "Invalid date format, must be on ISO 8601 format: " +
+        HandlingReportParser.ISO_8601_FORMAT, handler);
+      return;
+    }
+    if (!isUnLocode(window, starts[location], ends[location])) {
+      reject(window, start, end, lineNumber, "Invalid UN/LOCODE", handler);
+      return;
+    }
+    final HandlingEvent.Type eventType = eventType(window, starts[type], ends[type]);
+    if (eventType == null) {
+      reject(window, start, end, lineNumber, "Invalid handling event type", handler);
+      return;
+    }
+
+    final VoyageNumber voyageNumber = voyage < 0 || starts[voyage] == ends[voyage] ?
+      null : new VoyageNumber(decode(window, starts[voyage], ends[voyage]));
+    handler.accepted(new HandlingEventRegistrationAttempt(
+      new Date(),
+      new Date(completionTime),
+      new TrackingId(decode(window, starts[1], ends[1])),
+      voyageNumber,
+      eventType,
+      unLocode(window, starts[location])
+    ));
+  }
+
+  private void reject(final ByteBuffer window, final int start, final int end, final long lineNumber,
+                      final String reason, final Handler handler) throws IOException {
+    final ByteBuffer line = window.duplicate();
+    line.limit(end).position(start);
+    handler.rejected(line, lineNumber, reason);
+  }
+
+  /**
+   * @return The completion time in millis, or INVALID_TIME if it is invalid.
+   */
+  private long completionTime(final ByteBuffer window, final int start, final int end) {
+    final boolean canonical = end - start == 16 && window.get(start + 4) == '-' && window.get(start + 7) == '-' &&
+      window.get(start + 10) == ' ' && window.get(start + 13) == ':';
+    if (canonical) {
+      final long millis = completionTimes.completionTime(
+        digits(window, start, 4),
+        digits(window, start + 5, 2),
+        digits(window, start + 8, 2),
+        digits(window, start + 11, 2),
+        digits(window, start + 14, 2));
+      if (millis != HandlingReportParser.INVALID_TIME) {
+        return millis;
+      }
+    }
+    // Not canonical, but the lenient date format may still accept it
+    return HandlingReportParser.completionTime(decode(window, start, end));
+  }
+
+  /**
+   * @return The decimal value of the digits, or -1 if there is a non-digit.
+   */
+  private static int digits(final ByteBuffer window, final int start, final int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      final int digit = window.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static boolean isUnLocode(final ByteBuffer window, final int start, final int end) {
+    if (end - start != 5) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      final byte b = window.get(i);
+      final boolean letter = (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+      if (!letter && (i - start < 2 || b < '2' || b > '9')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static HandlingEvent.Type eventType(final ByteBuffer window, final int start, final int end) {
+    for (HandlingEvent.Type type : HandlingEvent.Type.values()) {
+      final byte[] name = EVENT_TYPES[type.ordinal()];
+      if (name.length != end - start) {
+        continue;
+      }
+      int i = 0;
+      while (i < name.length && window.get(start + i) == name[i]) {
+        i++;
+      }
+      if (i == name.length) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  private UnLocode unLocode(final ByteBuffer window, final int start) {
+    long key = 0;
+    for (int i = start; i < start + 5; i++) {
+      key = key << 8 | window.get(i) & 0xff;
+    }
+    final int mask = LOCATION_TABLE_SIZE - 1;
+    int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 40) & mask;
+    while (locationKeys[slot] != 0) {
+      if (locationKeys[slot] == key) {
+        return locations[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    final UnLocode unLocode = new UnLocode(decode(window, start, start + 5));
+    if (2 * ++locationCount > LOCATION_TABLE_SIZE) {
+      Arrays.fill(locationKeys, 0);
+      Arrays.fill(locations, null);
+      locationCount = 1;
+      slot = (int) (key * 0x9E3779B97F4A7C15L >>> 40) & mask;
+    }
+    locationKeys[slot] = key;
+    locations[slot] = unLocode;
+    return unLocode;
+  }
+
+  private String decode(final ByteBuffer window, final int start, final int end) {
+    final int length = end - start;
+    if (chars.length < length) {
+      chars = new char[Math.max(length, 2 * chars.length)];
+    }
+    // ASCII decodes the same in any supported charset, without a charset decoder
+    for (int i = 0; i < length; i++) {
+      final byte b = window.get(start + i);
+      if (b < 0) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer column = window.duplicate();
+        column.limit(end).position(start);
+        column.get(bytes);
+        return new String(bytes, charset);
+      }
+      chars[i] = (char) b;
+    }
+    return new String(chars, 0, length);
+  }
+
+}
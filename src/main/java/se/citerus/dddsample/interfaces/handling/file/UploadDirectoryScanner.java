@@ -1,23 +1,44 @@
 package se.citerus.dddsample.interfaces.handling.file;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SyncTaskExecutor;
 import se.citerus.dddsample.application.ApplicationEvents;
-import se.citerus.dddsample.domain.model.cargo.TrackingId;
-import se.citerus.dddsample.domain.model.handling.HandlingEvent;
-import se.citerus.dddsample.domain.model.location.UnLocode;
-import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
 import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
-import static se.citerus.dddsample.interfaces.handling.HandlingReportParser.*;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Periodically scans a certain directory for files and attempts
@@ -25,85 +46,348 @@ import java.util.TimerTask;
  * <p/>
  * Files that fail to parse are moved into a separate directory,
  * succesful files are deleted.
+ * <p/>
+ * Files are parsed from a memory mapping, see {@link MappedHandlingFileParser}, and
+ * rejected lines are written to a reject file in the parse failure directory as they
+ * are found, so that memory use doesn't depend on the size of the file.
+ * <p/>
+ * In watch mode, the directory is also watched for new and modified files,
+ * which are imported as soon as they haven't been modified for a short quiet
+ * period, so that files are not read while they are still being written.
+ * The periodic scan then only catches files whose events were missed.
+ * <p/>
+ * Each file is claimed by moving it into the processing directory, and is
+ * then imported by one of the workers, so that several files can be imported
+ * concurrently while the lines of each file are imported in order. Files left
+ * in the processing directory by an interrupted import are imported again
+ * after a restart.
+ * <p/>
+ * While a file is imported, a checkpoint is saved next to it in the processing
+ * directory every so many lines, with the offset of the next line and the length
+ * of the reject file. An interrupted import resumes from its last checkpoint, so
+ * that at most the lines since the checkpoint are registered again.
+ * <p/>
+ * Registration attempts are handed over a batch at a time, and the pending batch
+ * is handed over before each checkpoint. The checkpoint
+ * is replaced atomically, which survives the JVM dying but not the machine crashing.
  */
-public class UploadDirectoryScanner extends TimerTask implements InitializingBean {
+public class UploadDirectoryScanner extends TimerTask implements InitializingBean, DisposableBean {
 
   private File uploadDirectory;
   private File parseFailureDirectory;
+  private File processingDirectory;
+  private Executor workers = new SyncTaskExecutor();
+  private long checkpointLines = 10000;
+  private int batchSize = 100;
+  private boolean watch;
+  private long quietPeriodMillis = 200;
+  private Thread watcher;
+  private WatchService watchService;
+  // Files with watch events in the last quiet period, by nano time of their last event
+  private final Map<File, Long> pending = new ConcurrentHashMap<File, Long>();
 
   private final static Log logger = LogFactory.getLog(UploadDirectoryScanner.class);
   private ApplicationEvents applicationEvents;
 
   @Override
   public void run() {
-    for (File file : uploadDirectory.listFiles()) {
-      try {
-        parse(file);
-        delete(file);
-        logger.info("Import of " + file.getName() + " complete");
-      } catch (Exception e) {
-        logger.error(e, e);
-        move(file);
+    final File[] files = uploadDirectory.listFiles();
+    if (files == null) {
+      logger.error("Could not list " + uploadDirectory);
+      return;
+    }
+    for (File file : files) {
+      if (!pending.containsKey(file)) {
+        process(file);
       }
     }
   }
 
-  private void parse(final File file) throws IOException {
-    final List<String> lines = FileUtils.readLines(file);
-    final List<String> rejectedLines = new ArrayList<String>();
-    for (String line : lines) {
-      try {
-        parseLine(line);
-      } catch (Exception e) {
-        logger.error("Rejected line \n" + line + "\nReason is: " + e);
-        rejectedLines.add(line);
+  private void process(final File file) {
+    final File claimed = claim(file);
+    if (claimed == null) {
+      return;
+    }
+    workers.execute(new Runnable() {
+      public void run() {
+        importFile(claimed);
+      }
+    });
+  }
+
+  /**
+   * @return The file in the processing directory, or null if it couldn't be claimed.
+   */
+  private synchronized File claim(final File file) {
+    final File claimed = new File(processingDirectory, file.getName());
+    if (claimed.exists()) {
+      // A file by the same name is still being imported, this one is left for a later scan
+      return null;
+    }
+    try {
+      Files.move(file.toPath(), claimed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      return claimed;
+    } catch (NoSuchFileException e) {
+      // Already claimed by the watcher or the periodic scan
+      return null;
+    } catch (IOException e) {
+      logger.error("Could not claim " + file.getName(), e);
+      return null;
+    }
+  }
+
+  private void importFile(final File file) {
+    try {
+      parse(file);
+      delete(file);
+      logger.info("Import of " + file.getName() + " complete");
+    } catch (Exception e) {
+      logger.error(e, e);
+      move(file);
+    }
+    delete(toCheckpointFile(file));
+  }
+
+  private void watch() {
+    final long quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis);
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        final WatchKey key = waitForEvents(quietPeriodNanos);
+        if (key != null) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              logger.warn("Missed watch events in " + uploadDirectory + ", left to the periodic scan");
+            } else {
+              pending.put(new File(uploadDirectory, ((Path) event.context()).toString()), System.nanoTime());
+            }
+          }
+          if (!key.reset()) {
+            logger.error("Stopped watching " + uploadDirectory + ", left to the periodic scan");
+            return;
+          }
+        }
+        processQuietFiles(quietPeriodNanos);
       }
+    } catch (InterruptedException e) {
+      // Stopped
+    } catch (Exception e) {
+      // Includes the ClosedWatchServiceException on shutdown
+      logger.info("Stopped watching " + uploadDirectory + ": " + e);
     }
-    if (!rejectedLines.isEmpty()) {
-      writeRejectedLinesToFile(toRejectedFilename(file), rejectedLines);
+  }
+
+  private WatchKey waitForEvents(final long quietPeriodNanos) throws InterruptedException {
+    if (pending.isEmpty()) {
+      return watchService.take();
+    }
+    // Until the first pending file has been quiet long enough
+    final long now = System.nanoTime();
+    long wait = quietPeriodNanos;
+    for (long lastEvent : pending.values()) {
+      wait = Math.min(wait, lastEvent + quietPeriodNanos - now);
+    }
+    return watchService.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+  }
+
+  private void processQuietFiles(final long quietPeriodNanos) {
+    for (Iterator<Map.Entry<File, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+      final Map.Entry<File, Long> entry = it.next();
+      if (System.nanoTime() - entry.getValue() >= quietPeriodNanos) {
+        it.remove();
+        process(entry.getKey());
+      }
+    }
+  }
+
+  private void parse(final File file) throws IOException {
+    final File checkpointFile = toCheckpointFile(file);
+    final Checkpoint resumed = Checkpoint.read(checkpointFile, file);
+    if (resumed != null) {
+      logger.info("Resuming import of " + file.getName() + " after line " + resumed.lineNumber);
+    }
+    final RejectedLines rejectedLines = new RejectedLines(toRejectedFile(file),
+      resumed == null ? 0 : resumed.rejectedLength);
+    if (resumed != null) {
+      rejectedLines.resume();
+    }
+    final List<HandlingEventRegistrationAttempt> batch = new ArrayList<HandlingEventRegistrationAttempt>(batchSize);
+    try {
+      final MappedHandlingFileParser parser = new MappedHandlingFileParser(Charset.defaultCharset());
+      parser.parse(file, resumed == null ? 0 : resumed.offset, resumed == null ? 0 : resumed.lineNumber,
+        new MappedHandlingFileParser.Handler() {
+          public void accepted(HandlingEventRegistrationAttempt attempt) throws IOException {
+            checkpoint();
+            batch.add(attempt);
+            if (batch.size() >= batchSize) {
+              handOver(batch);
+            }
+          }
+
+          public void rejected(ByteBuffer line, long lineNumber, String reason) throws IOException {
+            checkpoint();
+            logger.error("Rejected line " + lineNumber + " of " + file.getName() + ", reason is: " + reason);
+            rejectedLines.write(line);
+          }
+
+          // Before the current line is handled, so all the lines before it are done
+          private void checkpoint() throws IOException {
+            final long linesBefore = parser.lineNumber() - 1;
+            if (linesBefore > 0 && linesBefore % checkpointLines == 0) {
+              handOver(batch);
+              new Checkpoint(parser.lineOffset(), linesBefore, rejectedLines.flush()).write(checkpointFile, file);
+            }
+          }
+        });
+      handOver(batch);
+    } finally {
+      rejectedLines.close();
     }
   }
 
-  private String toRejectedFilename(final File file) {
-    return file.getName() + ".reject";
+  private void handOver(final List<HandlingEventRegistrationAttempt> batch) {
+    if (!batch.isEmpty()) {
+      applicationEvents.receivedHandlingEventRegistrationAttempts(new ArrayList<HandlingEventRegistrationAttempt>(batch));
+      batch.clear();
+    }
   }
 
-  private void writeRejectedLinesToFile(final String filename, final List<String> rejectedLines) throws IOException {
-    FileUtils.writeLines(
-      new File(parseFailureDirectory, filename), rejectedLines
-    );
+  private File toRejectedFile(final File file) {
+    return new File(parseFailureDirectory, file.getName() + ".reject");
   }
 
-  private void parseLine(final String line) throws Exception {
-    final String[] columns = line.split("\t");
-    if (columns.length == 5) {
-      queueAttempt(columns[0], columns[1], columns[2], columns[3], columns[4]);
-    } else if (columns.length == 4) {
-      queueAttempt(columns[0], columns[1], "", columns[2], columns[3]);
-    } else {
-      throw new IllegalArgumentException("Wrong number of columns on line: " + line + ", must be 4 or 5");
+  private File toCheckpointFile(final File file) {
+    return new File(processingDirectory, file.getName() + Checkpoint.SUFFIX);
+  }
+
+  /**
+   * How far the import of a file had come, valid as long as the file is unchanged.
+   */
+  private static final class Checkpoint {
+
+    static final String SUFFIX = ".checkpoint";
+    static final String TEMPORARY_SUFFIX = ".tmp";
+
+    final long offset;
+    final long lineNumber;
+    final long rejectedLength;
+
+    Checkpoint(final long offset, final long lineNumber, final long rejectedLength) {
+      this.offset = offset;
+      this.lineNumber = lineNumber;
+      this.rejectedLength = rejectedLength;
+    }
+
+    /**
+     * @return The checkpoint, or null if there is none for this version of the file.
+     */
+    static Checkpoint read(final File checkpointFile, final File file) {
+      if (!checkpointFile.exists()) {
+        return null;
+      }
+      final Properties properties = new Properties();
+      try {
+        final InputStream in = new FileInputStream(checkpointFile);
+        try {
+          properties.load(in);
+        } finally {
+          in.close();
+        }
+        if (Long.parseLong(properties.getProperty("size")) != file.length() ||
+          Long.parseLong(properties.getProperty("lastModified")) != file.lastModified()) {
+          logger.warn("Importing " + file.getName() + " from the start, it has changed since " + checkpointFile);
+          return null;
+        }
+        return new Checkpoint(Long.parseLong(properties.getProperty("offset")),
+          Long.parseLong(properties.getProperty("lineNumber")),
+          Long.parseLong(properties.getProperty("rejectedLength")));
+      } catch (Exception e) {
+        logger.warn("Importing " + file.getName() + " from the start, could not read " + checkpointFile, e);
+        return null;
+      }
+    }
+
+    void write(final File checkpointFile, final File file) throws IOException {
+      final Properties properties = new Properties();
+      properties.setProperty("size", String.valueOf(file.length()));
+      properties.setProperty("lastModified", String.valueOf(file.lastModified()));
+      properties.setProperty("offset", String.valueOf(offset));
+      properties.setProperty("lineNumber", String.valueOf(lineNumber));
+      properties.setProperty("rejectedLength", String.valueOf(rejectedLength));
+      final File written = new File(checkpointFile.getPath() + TEMPORARY_SUFFIX);
+      final OutputStream out = new FileOutputStream(written);
+      try {
+        properties.store(out, null);
+      } finally {
+        out.close();
+      }
+      Files.move(written.toPath(), checkpointFile.toPath(),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
     }
   }
 
-  private void queueAttempt(String completionTimeStr, String trackingIdStr, String voyageNumberStr, String unLocodeStr, String eventTypeStr) throws Exception {
-    final List<String> errors = new ArrayList<String>();
+  /**
+   * The reject file of an upload file, created on the first rejected line.
+   * The lines are copied as bytes, in the charset of the upload file.
+   * A resumed import continues the reject file from the length at the checkpoint.
+   */
+  private static final class RejectedLines {
+
+    private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(Charset.defaultCharset());
+
+    private final File file;
+    private long length;
+    private OutputStream out;
+    private WritableByteChannel channel;
 
-    final Date date = parseDate(completionTimeStr, errors);
-    final TrackingId trackingId = parseTrackingId(trackingIdStr, errors);
-    final VoyageNumber voyageNumber = parseVoyageNumber(voyageNumberStr, errors);
-    final HandlingEvent.Type eventType = parseEventType(eventTypeStr, errors);
-    final UnLocode unLocode = parseUnLocode(unLocodeStr, errors);
+    RejectedLines(final File file, final long length) {
+      this.file = file;
+      this.length = length;
+    }
+
+    /**
+     * Drops the lines that were written after the checkpoint.
+     */
+    void resume() throws IOException {
+      if (length > 0 && file.length() > length) {
+        final FileChannel truncated = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+          truncated.truncate(length);
+        } finally {
+          truncated.close();
+        }
+      } else if (length == 0 && file.exists() && !file.delete()) {
+        throw new IOException("Could not delete " + file);
+      }
+    }
 
-    if (errors.isEmpty()) {
-      final HandlingEventRegistrationAttempt attempt = new HandlingEventRegistrationAttempt(new Date(), date, trackingId, voyageNumber, eventType, unLocode);
-      applicationEvents.receivedHandlingEventRegistrationAttempt(attempt);
-    } else {
-      throw new Exception(errors.toString());
+    void write(final ByteBuffer line) throws IOException {
+      if (channel == null) {
+        out = new BufferedOutputStream(new FileOutputStream(file, length > 0));
+        channel = Channels.newChannel(out);
+      }
+      length += channel.write(line);
+      length += channel.write(ByteBuffer.wrap(LINE_SEPARATOR));
+    }
+
+    /**
+     * @return The length of the reject file, once the lines written so far are in it.
+     */
+    long flush() throws IOException {
+      if (out != null) {
+        out.flush();
+      }
+      return length;
+    }
+
+    void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+      }
     }
   }
 
   private void delete(final File file) {
-    if (!file.delete()) {
+    if (file.exists() && !file.delete()) {
       logger.error("Could not delete " + file.getName());
     }
   }
@@ -127,6 +411,53 @@ public class UploadDirectoryScanner extends TimerTask implements InitializingBea
     if (!parseFailureDirectory.exists()) {
       parseFailureDirectory.mkdirs();
     }
+    if (processingDirectory == null) {
+      processingDirectory = new File(uploadDirectory.getPath() + ".processing");
+    }
+    if (processingDirectory.equals(uploadDirectory) || processingDirectory.equals(parseFailureDirectory)) {
+      throw new Exception("Processing directory must not be the upload or parse failed directory: " + processingDirectory);
+    }
+    if (!processingDirectory.exists()) {
+      processingDirectory.mkdirs();
+    }
+    final File[] interrupted = processingDirectory.listFiles();
+    if (interrupted != null) {
+      for (File file : interrupted) {
+        if (file.getName().endsWith(Checkpoint.SUFFIX)) {
+          // Left for the import, or removed when it's done
+          continue;
+        }
+        if (file.getName().endsWith(Checkpoint.SUFFIX + Checkpoint.TEMPORARY_SUFFIX)) {
+          delete(file);
+          continue;
+        }
+        logger.warn("Importing " + file.getName() + " again, its import was interrupted");
+        if (!file.renameTo(new File(uploadDirectory, file.getName()))) {
+          logger.error("Could not move " + file.getName() + " back to " + uploadDirectory.getAbsolutePath());
+        }
+      }
+    }
+    if (watch) {
+      watchService = FileSystems.getDefault().newWatchService();
+      uploadDirectory.toPath().register(watchService,
+        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      watcher = new Thread(new Runnable() {
+        public void run() {
+          watch();
+        }
+      }, "upload-directory-watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    if (watcher != null) {
+      watcher.interrupt();
+      watchService.close();
+      watcher.join();
+    }
   }
 
   public void setUploadDirectory(File uploadDirectory) {
@@ -137,6 +468,51 @@ public class UploadDirectoryScanner extends TimerTask implements InitializingBea
     this.parseFailureDirectory = parseFailureDirectory;
   }
 
+  /**
+   * @param processingDirectory directory that files are claimed into while they are imported, on the same
+   * file system as the upload directory, next to the upload directory by default
+   */
+  public void setProcessingDirectory(File processingDirectory) {
+    this.processingDirectory = processingDirectory;
+  }
+
+  /**
+   * @param workers executor that imports the claimed files, preferably bounded and running
+   * rejected imports on the caller, the scanning thread by default
+   */
+  public void setWorkers(Executor workers) {
+    this.workers = workers;
+  }
+
+  /**
+   * @param checkpointLines number of lines between the checkpoints of an import, which is
+   * also the most lines that are registered again when an interrupted import resumes
+   */
+  public void setCheckpointLines(long checkpointLines) {
+    this.checkpointLines = checkpointLines;
+  }
+
+  /**
+   * @param batchSize number of registration attempts that are handed over at once
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @param watch whether to import files as soon as they are written, instead of only on the periodic scan
+   */
+  public void setWatch(boolean watch) {
+    this.watch = watch;
+  }
+
+  /**
+   * @param quietPeriodMillis time without modifications after which a watched file is considered written
+   */
+  public void setQuietPeriodMillis(long quietPeriodMillis) {
+    this.quietPeriodMillis = quietPeriodMillis;
+  }
+
   public void setApplicationEvents(ApplicationEvents applicationEvents) {
     this.applicationEvents = applicationEvents;
   }
@@ -24,6 +24,9 @@ import java.util.List;
  * This web service endpoint implementation performs basic validation and parsing
  * of incoming data, and in case of a valid registration attempt, sends an asynchronous message
  * with the informtion to the handling event registration system for proper registration.
+ * <p/>
+ * The attempts for all the tracking ids of a report are handed over at once,
+ * and only if the whole report is valid.
  *  
  */
 @WebService(endpointInterface = "com.aggregator.HandlingReportService")
@@ -41,23 +44,29 @@ public class HandlingReportServiceImpl implements HandlingReportService {
     final HandlingEvent.Type type = parseEventType(handlingReport.getType(), errors);
     final UnLocode unLocode = parseUnLocode(handlingReport.getUnLocode(), errors);
 
-    for (String trackingIdStr : handlingReport.getTrackingIds()) {
-      final TrackingId trackingId = parseTrackingId(trackingIdStr, errors);
-
-      if (errors.isEmpty()) {
-        final Date registrationTime = new Date();
-        final HandlingEventRegistrationAttempt attempt = new HandlingEventRegistrationAttempt(
-          registrationTime, completionTime, trackingId, voyageNumber, type, unLocode
-        );
-
-        applicationEvents.receivedHandlingEventRegistrationAttempt(attempt);
-      } else {
-        logger.error("Parse error in handling report: " + errors);
-        final HandlingReportErrors faultInfo = new HandlingReportErrors();
-        throw new HandlingReportErrors_Exception(errors.toString(), faultInfo);
+    if (validate(handlingReport) != VALID) {
+      // Only for the messages, of all the invalid tracking ids
+      for (String trackingIdStr : handlingReport.getTrackingIds()) {
+        parseTrackingId(trackingIdStr, errors);
       }
+      logger.error("Parse error in handling report: " + errors);
+      final HandlingReportErrors faultInfo = new HandlingReportErrors();
+      throw new HandlingReportErrors_Exception(errors.toString(), faultInfo);
     }
 
+    final Date registrationTime = new Date();
+    final List<HandlingEventRegistrationAttempt> attempts = new ArrayList<HandlingEventRegistrationAttempt>();
+    for (String trackingIdStr : handlingReport.getTrackingIds()) {
+      attempts.add(new HandlingEventRegistrationAttempt(
+        registrationTime, completionTime, new TrackingId(trackingIdStr), voyageNumber, type, unLocode
+      ));
+    }
+
+    if (attempts.size() == 1) {
+      applicationEvents.receivedHandlingEventRegistrationAttempt(attempts.get(0));
+    } else if (!attempts.isEmpty()) {
+      applicationEvents.receivedHandlingEventRegistrationAttempts(attempts);
+    }
   }
 
   public void setApplicationEvents(ApplicationEvents applicationEvents) {
@@ -0,0 +1,40 @@
+package com.pathfinder.internal;
+
+/**
+ * Runs the graph traversal tests with the connection scan engine.
+ */
+public class ConnectionScanTraversalTest extends GraphTraversalServiceImplTest {
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    service.setEngine(RoutingEngine.CONNECTION_SCAN);
+  }
+
+  public void testSameArrivalAsGraphSearch() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(30, 100, 1));
+    final PathSearch graphSearch = RoutingEngine.GRAPH_SEARCH.search(graph, Long.MAX_VALUE);
+    final PathSearch connectionScan = RoutingEngine.CONNECTION_SCAN.search(graph, Long.MAX_VALUE);
+
+    for (int origin = 0; origin < graph.vertexCount(); origin++) {
+      for (int destination = 0; destination < graph.vertexCount(); destination++) {
+        if (origin == destination) {
+          continue;
+        }
+        final int[] expected = graphSearch.search(origin, 0, destination);
+        final int[] actual = connectionScan.search(origin, 0, destination);
+        if (expected == null) {
+          assertNull(actual);
+        } else {
+          assertNotNull(actual);
+          assertEquals(graph.arrival(expected[expected.length - 1]), graph.arrival(actual[actual.length - 1]));
+          assertEquals(origin, graph.source(actual[0]));
+          for (int i = 1; i < actual.length; i++) {
+            assertEquals(graph.target(actual[i - 1]), graph.source(actual[i]));
+            assertTrue(graph.arrival(actual[i - 1]) <= graph.departure(actual[i]));
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.pathfinder.internal;
+
+import com.pathfinder.api.PortPosition;
+import com.pathfinder.api.TransitEdge;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.pathfinder.internal.GraphTraversalServiceImplTest.edge;
+
+/**
+ * Runs the graph traversal tests with the goal-directed engine. The test
+ * timetable has no positions, so these also cover the fallback to the undirected search.
+ */
+public class GoalDirectedTraversalTest extends GraphTraversalServiceImplTest {
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    service.setEngine(RoutingEngine.GOAL_DIRECTED_SEARCH);
+  }
+
+  public void testSameArrivalAsGraphSearch() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(30, 100, 1),
+      RandomTimetables.positions(30, 1), PortPositions.DEFAULT_MAX_SPEED_KNOTS);
+    assertTrue(graph.positions().isGoalDirected());
+    assertSameArrival(graph, Long.MAX_VALUE);
+  }
+
+  public void testDeadlinePruning() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(30, 100, 1),
+      RandomTimetables.positions(30, 1), PortPositions.DEFAULT_MAX_SPEED_KNOTS);
+    // Two weeks, which cuts off part of the month long timetable
+    assertSameArrival(graph, 14 * 24 * 60 * 60 * 1000L);
+  }
+
+  private void assertSameArrival(final RoutingGraph graph, final long deadline) {
+    final PathSearch graphSearch = RoutingEngine.GRAPH_SEARCH.search(graph, deadline);
+    final PathSearch goalDirected = RoutingEngine.GOAL_DIRECTED_SEARCH.search(graph, deadline);
+    final PathSearch connectionScan = RoutingEngine.CONNECTION_SCAN.search(graph, deadline);
+
+    for (int origin = 0; origin < graph.vertexCount(); origin++) {
+      for (int destination = 0; destination < graph.vertexCount(); destination++) {
+        if (origin == destination) {
+          continue;
+        }
+        final int[] expected = graphSearch.search(origin, 0, destination);
+        for (PathSearch search : Arrays.asList(goalDirected, connectionScan)) {
+          final int[] actual = search.search(origin, 0, destination);
+          if (expected == null) {
+            assertNull(actual);
+          } else {
+            assertNotNull(actual);
+            assertEquals(graph.arrival(expected[expected.length - 1]), graph.arrival(actual[actual.length - 1]));
+          }
+        }
+      }
+    }
+  }
+
+  public void testSpeedIsRaisedToFastestEdge() throws Exception {
+    // Stockholm to Helsinki is about 210 nautical miles, V1 sails it in an hour
+    final List<TransitEdge> timetable = Arrays.asList(
+      edge("V1", "SESTO", "FIHEL", 0, 1),
+      edge("V2", "SESTO", "DEHAM", 0, 1),
+      edge("V3", "DEHAM", "FIHEL", 1, 2)
+    );
+    final List<PortPosition> positions = Arrays.asList(
+      new PortPosition("SESTO", 59.33, 18.07),
+      new PortPosition("FIHEL", 60.17, 24.94),
+      new PortPosition("DEHAM", 53.55, 9.99)
+    );
+    final RoutingGraph graph = RoutingGraph.build(timetable, positions, 20);
+
+    final PortPositions portPositions = graph.positions();
+    final int stockholm = graph.indexOf("SESTO");
+    final int helsinki = graph.indexOf("FIHEL");
+    assertEquals(210, portPositions.distance(stockholm, helsinki), 10);
+    assertTrue(portPositions.maxSpeedKnots() > 400);
+    for (int e = 0; e < graph.edgeCount(); e++) {
+      final long duration = graph.arrival(e) - graph.departure(e);
+      assertTrue(portPositions.minTravelTime(graph.source(e), graph.target(e)) <= duration);
+    }
+
+    final int[] path = RoutingEngine.GOAL_DIRECTED_SEARCH.search(graph, Long.MAX_VALUE).search(stockholm, 0, helsinki);
+    assertEquals(1, path.length);
+    assertEquals("V1", graph.toTransitEdge(path[0]).getVoyageNumber());
+  }
+
+  public void testUnknownPositions() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(Arrays.asList(edge("V1", "SESTO", "FIHEL", 0, 10)),
+      Arrays.asList(new PortPosition("SESTO", 59.33, 18.07)), 20);
+    assertEquals(0, graph.positions().minTravelTime(graph.indexOf("SESTO"), graph.indexOf("FIHEL")));
+
+    final RoutingGraph updated = graph.withVoyage("V2", Arrays.asList(edge("V2", "FIHEL", "DEHAM", 10, 20)));
+    assertEquals(0, updated.positions().minTravelTime(graph.indexOf("SESTO"), updated.indexOf("DEHAM")));
+  }
+
+}
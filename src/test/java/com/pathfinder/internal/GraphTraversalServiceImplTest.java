@@ -0,0 +1,275 @@
+package com.pathfinder.internal;
+
+import com.pathfinder.api.PathQuery;
+import com.pathfinder.api.TransitEdge;
+import com.pathfinder.api.TransitPath;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+public class GraphTraversalServiceImplTest extends TestCase {
+
+  private static final long HOUR = 60 * 60 * 1000L;
+
+  private final List<TransitEdge> timetable = new ArrayList<TransitEdge>();
+  GraphTraversalServiceImpl service;
+
+  protected void setUp() throws Exception {
+    // V1: A - B - C, slow but early
+    timetable.add(edge("V1", "AAAAA", "BBBBB", 0, 10));
+    timetable.add(edge("V1", "BBBBB", "CCCCC", 12, 40));
+    // V2: A - C direct, departs later but arrives earlier
+    timetable.add(edge("V2", "AAAAA", "CCCCC", 5, 30));
+    // V3: B - C, departs before V1 arrives in B
+    timetable.add(edge("V3", "BBBBB", "CCCCC", 8, 20));
+    // V4: C - D
+    timetable.add(edge("V4", "CCCCC", "DDDDD", 35, 50));
+    timetable.add(edge("V4", "CCCCC", "DDDDD", 25, 45));
+
+    service = new GraphTraversalServiceImpl(new GraphDAO() {
+      public List<TransitEdge> listTransitEdges() {
+        return timetable;
+      }
+
+      public List<TransitEdge> listTransitEdges(String voyageNumber) {
+        final List<TransitEdge> edges = new ArrayList<TransitEdge>();
+        for (TransitEdge edge : timetable) {
+          if (edge.getVoyageNumber().equals(voyageNumber)) {
+            edges.add(edge);
+          }
+        }
+        return edges;
+      }
+    });
+  }
+
+  public void testEarliestArrival() throws Exception {
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.MAX_CANDIDATES, "1");
+    final List<TransitPath> paths = service.findShortestPath("AAAAA", "CCCCC", limitations);
+    assertEquals(1, paths.size());
+
+    final List<TransitEdge> edges = paths.get(0).getTransitEdges();
+    assertEquals(1, edges.size());
+    assertEquals("V2", edges.get(0).getVoyageNumber());
+    assertEquals(new Date(30 * HOUR), edges.get(0).getToDate());
+  }
+
+  public void testAlternativeCandidates() throws Exception {
+    final List<TransitPath> paths = service.findShortestPath("AAAAA", "CCCCC", new Properties());
+    assertEquals(2, paths.size());
+
+    // Direct on V2 first, then staying on V1 all the way, since V3 has left B when V1 arrives
+    assertEquals("V2", paths.get(0).getTransitEdges().get(0).getVoyageNumber());
+    final List<TransitEdge> alternative = paths.get(1).getTransitEdges();
+    assertEquals(1, alternative.size());
+    assertEquals("V1", alternative.get(0).getVoyageNumber());
+    assertEquals(new Date(40 * HOUR), alternative.get(0).getToDate());
+  }
+
+  public void testCandidatesAreDifferent() throws Exception {
+    // Two more voyages from A to C via B, and a later sailing of V2
+    timetable.add(edge("V5", "AAAAA", "BBBBB", 1, 6));
+    timetable.add(edge("V6", "BBBBB", "CCCCC", 7, 35));
+    timetable.add(edge("V7", "AAAAA", "CCCCC", 50, 60));
+
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.MAX_CANDIDATES, "10");
+    final List<TransitPath> paths = service.findShortestPath("AAAAA", "CCCCC", limitations);
+
+    final List<String> routes = new ArrayList<String>();
+    long previousArrival = Long.MIN_VALUE;
+    for (TransitPath path : paths) {
+      final List<TransitEdge> edges = path.getTransitEdges();
+      final StringBuilder route = new StringBuilder();
+      for (TransitEdge edge : edges) {
+        route.append(edge.getVoyageNumber()).append(edge.getFromUnLocode()).append(edge.getToUnLocode());
+      }
+      assertFalse("Duplicate candidate " + route, routes.contains(route.toString()));
+      routes.add(route.toString());
+
+      final long arrival = edges.get(edges.size() - 1).getToDate().getTime();
+      assertTrue(arrival >= previousArrival);
+      previousArrival = arrival;
+    }
+
+    // V5-V3, V2, V5-V6, V1, V5-V1, V7
+    assertEquals(6, paths.size());
+  }
+
+  public void testConnectionMustDepartAfterArrival() throws Exception {
+    final List<TransitPath> paths = service.findShortestPath("AAAAA", "DDDDD", new Properties());
+    assertEquals(1, paths.size());
+
+    // V4 departing at 25 is missed, since V2 arrives in C at 30
+    final List<TransitEdge> edges = paths.get(0).getTransitEdges();
+    assertEquals(2, edges.size());
+    assertEquals("V2", edges.get(0).getVoyageNumber());
+    assertEquals("V4", edges.get(1).getVoyageNumber());
+    assertEquals(new Date(35 * HOUR), edges.get(1).getFromDate());
+    assertEquals(new Date(50 * HOUR), edges.get(1).getToDate());
+  }
+
+  public void testEarliestDeparture() throws Exception {
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.EARLIEST_DEPARTURE, Long.toString(9 * HOUR));
+
+    // Nothing departs from A after 9, and V3 has already left B
+    assertTrue(service.findShortestPath("AAAAA", "CCCCC", limitations).isEmpty());
+    assertEquals("V1", service.findShortestPath("BBBBB", "CCCCC", limitations).get(0).getTransitEdges().get(0).getVoyageNumber());
+  }
+
+  public void testDeadline() throws Exception {
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.DEADLINE, new Date(30 * HOUR).toString());
+    assertTrue(service.findShortestPath("AAAAA", "CCCCC", limitations).isEmpty());
+
+    limitations.setProperty(Limitations.DEADLINE, new Date(31 * HOUR).toString());
+    assertEquals(1, service.findShortestPath("AAAAA", "CCCCC", limitations).size());
+  }
+
+  public void testTimeBudget() throws Exception {
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.TIME_BUDGET_MS, "10000");
+    assertEquals(2, service.findShortestPath("AAAAA", "CCCCC", limitations).size());
+
+    // With the budget spent, only the earliest arrival path is returned
+    final RoutingGraph graph = RoutingGraph.build(timetable);
+    final TimeBudget budget = TimeBudget.of(1);
+    Thread.sleep(5);
+    assertTrue(budget.isSpent());
+    final List<int[]> paths = new CandidatePaths(graph, RoutingEngine.GRAPH_SEARCH.search(graph, Long.MAX_VALUE),
+      new ForkJoinPool(1)).find(graph.indexOf("AAAAA"), Long.MIN_VALUE, graph.indexOf("CCCCC"), 5, budget);
+    assertEquals(1, paths.size());
+    assertEquals("V2", graph.toTransitEdge(paths.get(0)[0]).getVoyageNumber());
+
+    assertFalse(TimeBudget.of(0).isSpent());
+  }
+
+  public void testTimeBudgetBoundsFirstSearch() throws Exception {
+    // A long chain of ports, and a slow direct voyage from the first to the last
+    final List<TransitEdge> chain = new ArrayList<TransitEdge>();
+    for (int i = 0; i < 5000; i++) {
+      chain.add(edge("C" + i, port(i), port(i + 1), i, i + 1));
+    }
+    chain.add(edge("SLOW", port(0), port(5000), 0, 100000));
+    final RoutingGraph graph = RoutingGraph.build(chain);
+    final int origin = graph.indexOf(port(0));
+    final int destination = graph.indexOf(port(5000));
+
+    final TimeBudget budget = TimeBudget.of(1);
+    Thread.sleep(5);
+    for (RoutingEngine engine : RoutingEngine.values()) {
+      final PathSearch search = engine.search(graph, Long.MAX_VALUE);
+      assertEquals(engine.name(), 5000, search.search(origin, Long.MIN_VALUE, destination).length);
+
+      // Stopped long before the chain is done, with the path found so far
+      final int[] path = search.search(origin, Long.MIN_VALUE, destination, budget);
+      assertEquals(engine.name(), 1, path.length);
+      assertEquals(engine.name(), "SLOW", graph.toTransitEdge(path[0]).getVoyageNumber());
+    }
+  }
+
+  public void testStatisticsAndTrace() throws Exception {
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.TRACE, "true");
+    assertEquals(2, service.findShortestPath("AAAAA", "CCCCC", limitations).size());
+
+    final SearchStatistics statistics = service.getStatistics();
+    assertEquals(1, statistics.getQueryCount());
+    assertEquals(1, statistics.getTracedQueryCount());
+    assertEquals(2, statistics.getCandidateCount());
+    // The earliest arrival search, and at least one spur search
+    assertTrue(statistics.getSearchCount() >= 2);
+    assertTrue(statistics.getSettledCount() > 0);
+    assertTrue(statistics.getRelaxedCount() > 0);
+
+    // The deadline prunes V1 to C and the V4 departure after V2 arrives
+    limitations.setProperty(Limitations.TRACE, "false");
+    limitations.setProperty(Limitations.DEADLINE, new Date(31 * HOUR).toString());
+    limitations.setProperty(Limitations.MAX_CANDIDATES, "1");
+    final long pruned = statistics.getPrunedCount();
+    assertTrue(service.findShortestPath("AAAAA", "DDDDD", limitations).isEmpty());
+    assertEquals(2, statistics.getQueryCount());
+    assertEquals(1, statistics.getTracedQueryCount());
+    assertTrue(statistics.getPrunedCount() > pruned);
+  }
+
+  public void testUnknownLocations() throws Exception {
+    assertTrue(service.findShortestPath("AAAAA", "XXXXX", new Properties()).isEmpty());
+    assertTrue(service.findShortestPath("AAAAA", "AAAAA", new Properties()).isEmpty());
+    assertTrue(service.findShortestPath("DDDDD", "AAAAA", new Properties()).isEmpty());
+  }
+
+  public void testBatch() throws Exception {
+    final List<PathQuery> queries = Arrays.asList(
+      new PathQuery("AAAAA", "CCCCC", new Properties()),
+      new PathQuery("AAAAA", "XXXXX", new Properties()),
+      new PathQuery("AAAAA", "DDDDD", new Properties()),
+      new PathQuery("BBBBB", "CCCCC", null)
+    );
+    final List<List<TransitPath>> results = service.findShortestPaths(queries);
+    assertEquals(queries.size(), results.size());
+
+    for (int i = 0; i < queries.size(); i++) {
+      final PathQuery query = queries.get(i);
+      final List<TransitPath> expected = service.findShortestPath(
+        query.getOriginUnLocode(), query.getDestinationUnLocode(), query.getLimitations());
+      assertEquals(voyages(expected), voyages(results.get(i)));
+    }
+    assertTrue(results.get(1).isEmpty());
+  }
+
+  public void testVoyageChanged() throws Exception {
+    assertEquals("V2", service.findShortestPath("AAAAA", "CCCCC", new Properties()).get(0).getTransitEdges().get(0).getVoyageNumber());
+
+    // V2 is cancelled
+    timetable.remove(2);
+    service.voyageChanged("V2");
+
+    final List<TransitPath> paths = service.findShortestPath("AAAAA", "CCCCC", new Properties());
+    assertEquals(1, paths.size());
+    assertEquals("V1", paths.get(0).getTransitEdges().get(0).getVoyageNumber());
+  }
+
+  public void testMergeVoyages() throws Exception {
+    final List<TransitEdge> legs = GraphTraversalServiceImpl.mergeVoyages(Arrays.asList(
+      edge("V1", "AAAAA", "BBBBB", 0, 10),
+      edge("V1", "BBBBB", "CCCCC", 12, 40),
+      edge("V4", "CCCCC", "DDDDD", 41, 50)
+    ));
+
+    assertEquals(2, legs.size());
+    assertEquals("AAAAA", legs.get(0).getFromUnLocode());
+    assertEquals("CCCCC", legs.get(0).getToUnLocode());
+    assertEquals(new Date(0), legs.get(0).getFromDate());
+    assertEquals(new Date(40 * HOUR), legs.get(0).getToDate());
+    assertEquals("V4", legs.get(1).getVoyageNumber());
+  }
+
+  private static List<List<String>> voyages(final List<TransitPath> paths) {
+    final List<List<String>> voyages = new ArrayList<List<String>>();
+    for (TransitPath path : paths) {
+      final List<String> legs = new ArrayList<String>();
+      for (TransitEdge edge : path.getTransitEdges()) {
+        legs.add(edge.getVoyageNumber());
+      }
+      voyages.add(legs);
+    }
+    return voyages;
+  }
+
+  private static String port(final int index) {
+    return "P" + (10000 + index);
+  }
+
+  static TransitEdge edge(String voyage, String from, String to, int departureHour, int arrivalHour) {
+    return new TransitEdge(voyage, from, to, new Date(departureHour * HOUR), new Date(arrivalHour * HOUR));
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.pathfinder.internal;
+
+import junit.framework.TestCase;
+
+import com.pathfinder.api.TransitEdge;
+import com.pathfinder.api.TransitPath;
+
+import java.util.List;
+import java.util.Properties;
+
+public class HubOverlayTest extends TestCase {
+
+  private static final long DAY = 24 * 60 * 60 * 1000;
+
+  public void testSameArrivalAsGraphSearch() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(40, 150, 3));
+    final PathSearch search = RoutingEngine.GRAPH_SEARCH.search(graph, Long.MAX_VALUE);
+
+    for (int hubCount : new int[]{1, 5, 40}) {
+      final HubOverlay overlay = HubOverlay.build(graph, hubCount);
+      for (int origin = 0; origin < graph.vertexCount(); origin++) {
+        for (int destination = 0; destination < graph.vertexCount(); destination++) {
+          if (origin == destination) {
+            continue;
+          }
+          for (long departure = 0; departure < 40 * DAY; departure += 7 * DAY) {
+            final int[] expected = search.search(origin, departure, destination);
+            final int[] actual = overlay.path(origin, departure, destination);
+            if (expected == null) {
+              assertNull(actual);
+            } else {
+              assertNotNull(actual);
+              assertValidPath(graph, actual, origin, departure, destination);
+              assertEquals(graph.arrival(expected[expected.length - 1]), graph.arrival(actual[actual.length - 1]));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  public void testServiceAnswersThroughHubs() throws Exception {
+    final List<TransitEdge> timetable = RandomTimetables.timetable(20, 60, 4);
+    final GraphTraversalServiceImpl service = new GraphTraversalServiceImpl(new GraphDAO() {
+      public List<TransitEdge> listTransitEdges() {
+        return timetable;
+      }
+    });
+    service.setHubCount(3);
+    service.preprocess();
+    assertNotNull(service.hubOverlay());
+    assertNull(service.laneProfiles());
+
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.MAX_CANDIDATES, "1");
+    final RoutingGraph graph = RoutingGraph.build(timetable);
+    final PathSearch search = RoutingEngine.GRAPH_SEARCH.search(graph, Long.MAX_VALUE);
+    for (int destination = 1; destination < graph.vertexCount(); destination++) {
+      final List<TransitPath> paths = service.findShortestPath(graph.unLocode(0), graph.unLocode(destination), limitations);
+      final int[] expected = search.search(0, Long.MIN_VALUE, destination);
+      if (expected == null) {
+        assertTrue(paths.isEmpty());
+      } else {
+        final List<TransitEdge> edges = paths.get(0).getTransitEdges();
+        assertEquals(graph.arrival(expected[expected.length - 1]), edges.get(edges.size() - 1).getToDate().getTime());
+      }
+    }
+  }
+
+  private static void assertValidPath(final RoutingGraph graph, final int[] path,
+                                      final int origin, final long departure, final int destination) {
+    int vertex = origin;
+    long time = departure;
+    for (int edge : path) {
+      assertEquals(vertex, graph.source(edge));
+      assertTrue(graph.departure(edge) >= time);
+      vertex = graph.target(edge);
+      time = graph.arrival(edge);
+    }
+    assertEquals(destination, vertex);
+  }
+
+}
@@ -0,0 +1,208 @@
+package com.pathfinder.internal;
+
+import junit.framework.TestCase;
+
+import com.pathfinder.api.TransitEdge;
+import com.pathfinder.api.TransitPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static com.pathfinder.internal.GraphTraversalServiceImplTest.edge;
+
+public class LaneProfilesTest extends TestCase {
+
+  private static final long HOUR = 60 * 60 * 1000;
+
+  public void testSameArrivalAsGraphSearch() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(30, 100, 1));
+    assertSameArrival(graph, LaneProfiles.build(graph));
+  }
+
+  public void testPathsFollowTheSchedule() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(30, 100, 1));
+    final LaneProfiles profiles = LaneProfiles.build(graph);
+
+    for (int origin = 0; origin < graph.vertexCount(); origin++) {
+      for (int destination = 0; destination < graph.vertexCount(); destination++) {
+        if (origin == destination) {
+          continue;
+        }
+        final int[] path = profiles.path(origin, 0, destination);
+        if (path == null) {
+          assertEquals(Long.MAX_VALUE, profiles.earliestArrival(origin, 0, destination));
+          continue;
+        }
+        int vertex = origin;
+        long time = 0;
+        for (int edge : path) {
+          assertEquals(vertex, graph.source(edge));
+          assertTrue(graph.departure(edge) >= time);
+          vertex = graph.target(edge);
+          time = graph.arrival(edge);
+        }
+        assertEquals(destination, vertex);
+        assertEquals(profiles.earliestArrival(origin, 0, destination), time);
+      }
+    }
+  }
+
+  public void testWithVoyageMatchesFullBuild() throws Exception {
+    final List<TransitEdge> timetable = RandomTimetables.timetable(30, 100, 1);
+    final RoutingGraph original = RoutingGraph.build(timetable);
+    final LaneProfiles profiles = LaneProfiles.build(original);
+
+    // V7 is cancelled, then V8 gets a fast direct sailing between two of its ports
+    final RoutingGraph cancelled = original.withVoyage("V7", new ArrayList<TransitEdge>());
+    assertSameArrival(cancelled, profiles.withVoyage(cancelled, cancelled.indexOfVoyage("V7")));
+
+    final RoutingGraph faster = original.withVoyage("V8", Arrays.asList(
+      edge("V8", cancelled.unLocode(0), cancelled.unLocode(1), 1, 2)));
+    assertSameArrival(faster, profiles.withVoyage(faster, faster.indexOfVoyage("V8")));
+  }
+
+  public void testPartialTableCoversItsLanes() throws Exception {
+    final List<TransitEdge> timetable = RandomTimetables.timetable(30, 100, 1);
+    final RoutingGraph original = RoutingGraph.build(timetable);
+    final LaneProfiles all = LaneProfiles.build(original);
+    final int[][] lanes = {{0, 1}, {2, 1}, {3, 4}};
+    final LaneProfiles partial = LaneProfiles.build(original, lanes);
+
+    assertTrue(partial.covers(0, 1));
+    assertTrue(partial.covers(2, 4));
+    assertFalse(partial.covers(1, 0));
+    assertFalse(partial.covers(5, 1));
+    assertTrue(partial.footprint() < all.footprint());
+    assertSameArrival(original, all, partial, lanes);
+
+    // V7 is cancelled, then V8 gets a fast direct sailing between two of its ports
+    final RoutingGraph cancelled = original.withVoyage("V7", new ArrayList<TransitEdge>());
+    assertSameArrival(cancelled, LaneProfiles.build(cancelled),
+      partial.withVoyage(cancelled, cancelled.indexOfVoyage("V7")), lanes);
+
+    final RoutingGraph faster = original.withVoyage("V8", Arrays.asList(
+      edge("V8", original.unLocode(3), original.unLocode(4), 1, 2)));
+    assertSameArrival(faster, LaneProfiles.build(faster), partial.withVoyage(faster, faster.indexOfVoyage("V8")), lanes);
+  }
+
+  public void testSingleCandidateOnProfiledLaneNeedsNoSearch() throws Exception {
+    final List<TransitEdge> timetable = RandomTimetables.timetable(10, 30, 2);
+    final GraphTraversalServiceImpl service = new GraphTraversalServiceImpl(new GraphDAO() {
+      public List<TransitEdge> listTransitEdges() {
+        return timetable;
+      }
+    });
+    service.setLaneProfiles(true);
+    service.setProfiledLanes(Arrays.asList("P10000-P10001", "P10002-XXXXX"));
+    service.preprocess();
+    final LaneProfiles profiles = service.laneProfiles();
+    final int p0 = profiles.graph().indexOf("P10000");
+    final int p1 = profiles.graph().indexOf("P10001");
+    assertTrue(profiles.covers(p0, p1));
+    assertFalse(profiles.covers(p1, p0));
+
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.MAX_CANDIDATES, "1");
+    service.findShortestPath("P10000", "P10001", limitations);
+    assertEquals(0, service.getStatistics().getSearchCount());
+
+    // Other lanes are searched
+    service.findShortestPath("P10001", "P10000", limitations);
+    assertEquals(1, service.getStatistics().getSearchCount());
+  }
+
+  public void testServiceAnswersFromProfiles() throws Exception {
+    final List<TransitEdge> timetable = RandomTimetables.timetable(10, 30, 2);
+    final GraphTraversalServiceImpl service = new GraphTraversalServiceImpl(new GraphDAO() {
+      public List<TransitEdge> listTransitEdges() {
+        return timetable;
+      }
+    });
+    service.setLaneProfiles(true);
+
+    final Properties limitations = new Properties();
+    limitations.setProperty(Limitations.MAX_CANDIDATES, "1");
+    final List<TransitPath> searched = service.findShortestPath("P10000", "P10001", limitations);
+    for (int i = 0; i < 100 && service.laneProfiles() == null; i++) {
+      Thread.sleep(50);
+    }
+    assertNotNull(service.laneProfiles());
+
+    final List<TransitPath> looked = service.findShortestPath("P10000", "P10001", limitations);
+    assertEquals(searched.size(), looked.size());
+    if (!searched.isEmpty()) {
+      assertEquals(arrival(searched.get(0)), arrival(looked.get(0)));
+
+      // Nothing arrives before the earliest arrival
+      limitations.setProperty(Limitations.DEADLINE, Long.toString(arrival(looked.get(0))));
+      assertTrue(service.findShortestPath("P10000", "P10001", limitations).isEmpty());
+    }
+  }
+
+  public void testProfilesFollowTheLatestGraph() throws Exception {
+    final List<TransitEdge> timetable = RandomTimetables.timetable(10, 30, 2);
+    final GraphTraversalServiceImpl service = new GraphTraversalServiceImpl(new GraphDAO() {
+      public List<TransitEdge> listTransitEdges() {
+        return timetable;
+      }
+
+      public List<TransitEdge> listTransitEdges(final String voyageNumber) {
+        return Arrays.asList(edge(voyageNumber, "P10000", "P10001", 1, 2));
+      }
+    });
+    service.setLaneProfiles(true);
+    service.findShortestPath("P10000", "P10001", new Properties());
+
+    // A burst of changes, the profiles of the intermediate graphs may be skipped
+    for (int i = 0; i < 20; i++) {
+      service.voyageChanged("X" + i);
+    }
+    for (int i = 0; i < 100 && service.laneProfiles() == null; i++) {
+      Thread.sleep(50);
+    }
+    assertNotNull(service.laneProfiles());
+  }
+
+  private static long arrival(final TransitPath path) {
+    final List<TransitEdge> edges = path.getTransitEdges();
+    return edges.get(edges.size() - 1).getToDate().getTime();
+  }
+
+  private void assertSameArrival(final RoutingGraph graph, final LaneProfiles expected, final LaneProfiles actual,
+                                 final int[][] lanes) {
+    for (int[] lane : lanes) {
+      assertTrue(actual.covers(lane[0], lane[1]));
+      for (long departure = 0; departure < 40 * 24 * HOUR; departure += 24 * HOUR) {
+        assertEquals(expected.earliestArrival(lane[0], departure, lane[1]),
+          actual.earliestArrival(lane[0], departure, lane[1]));
+        final int[] path = actual.path(lane[0], departure, lane[1]);
+        if (path != null) {
+          assertEquals(lane[1], graph.target(path[path.length - 1]));
+        }
+      }
+    }
+  }
+
+  private void assertSameArrival(final RoutingGraph graph, final LaneProfiles profiles) {
+    final PathSearch search = RoutingEngine.GRAPH_SEARCH.search(graph, Long.MAX_VALUE);
+    for (int origin = 0; origin < graph.vertexCount(); origin++) {
+      for (int destination = 0; destination < graph.vertexCount(); destination++) {
+        if (origin == destination) {
+          continue;
+        }
+        for (long departure = 0; departure < 40 * 24 * HOUR; departure += 5 * 24 * HOUR) {
+          final int[] expected = search.search(origin, departure, destination);
+          final long arrival = profiles.earliestArrival(origin, departure, destination);
+          if (expected == null) {
+            assertEquals(Long.MAX_VALUE, arrival);
+          } else {
+            assertEquals(graph.arrival(expected[expected.length - 1]), arrival);
+          }
+        }
+      }
+    }
+  }
+
+}
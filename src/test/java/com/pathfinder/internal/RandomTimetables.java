@@ -0,0 +1,78 @@
+package com.pathfinder.internal;
+
+import com.pathfinder.api.PortPosition;
+import com.pathfinder.api.TransitEdge;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random timetables for the routing tests, reproducible from their seeds.
+ */
+final class RandomTimetables {
+
+  private static final long HOUR = 60 * 60 * 1000L;
+
+  private RandomTimetables() {
+  }
+
+  /**
+   * @param ports number of ports
+   * @param voyages number of voyages
+   * @param seed random seed
+   * @return A timetable of voyages calling at 2 to 8 random ports each, over about a month.
+   * Voyages sail at 12 to 24 knots between the {@link #positions(int, long)} of the ports.
+   */
+  static List<TransitEdge> timetable(final int ports, final int voyages, final long seed) {
+    final List<PortPosition> positions = positions(ports, seed);
+    final Random random = new Random(seed);
+    final List<TransitEdge> timetable = new ArrayList<TransitEdge>();
+    for (int v = 0; v < voyages; v++) {
+      final String voyageNumber = "V" + v;
+      long time = random.nextInt(30 * 24) * HOUR;
+      int from = random.nextInt(ports);
+      final int stops = 2 + random.nextInt(7);
+      for (int s = 1; s < stops; s++) {
+        int to = random.nextInt(ports);
+        if (to == from) {
+          to = (to + 1) % ports;
+        }
+        final double knots = 12 + random.nextInt(13);
+        final long arrival = time + (long) (distance(positions.get(from), positions.get(to)) / knots * HOUR);
+        timetable.add(new TransitEdge(voyageNumber, port(from), port(to), new Date(time), new Date(arrival)));
+        time = arrival + random.nextInt(24) * HOUR;
+        from = to;
+      }
+    }
+    return timetable;
+  }
+
+  /**
+   * @param ports number of ports
+   * @param seed random seed
+   * @return Random positions between 60 degrees south and north.
+   */
+  static List<PortPosition> positions(final int ports, final long seed) {
+    final Random random = new Random(~seed);
+    final List<PortPosition> positions = new ArrayList<PortPosition>(ports);
+    for (int p = 0; p < ports; p++) {
+      positions.add(new PortPosition(port(p), random.nextDouble() * 120 - 60, random.nextDouble() * 360 - 180));
+    }
+    return positions;
+  }
+
+  private static double distance(final PortPosition from, final PortPosition to) {
+    final double sinLatitude = Math.sin(Math.toRadians(to.getLatitude() - from.getLatitude()) / 2);
+    final double sinLongitude = Math.sin(Math.toRadians(to.getLongitude() - from.getLongitude()) / 2);
+    final double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(from.getLatitude())) *
+      Math.cos(Math.toRadians(to.getLatitude())) * sinLongitude * sinLongitude;
+    return 2 * 3440.065 * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  private static String port(final int index) {
+    return "P" + (10000 + index);
+  }
+
+}
@@ -0,0 +1,104 @@
+package com.pathfinder.internal;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class RoutingGraphSnapshotTest extends TestCase {
+
+  private File file;
+
+  protected void setUp() throws Exception {
+    file = File.createTempFile("routing-graph", ".bin");
+  }
+
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testReadWhatWasWritten() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(30, 100, 1),
+      RandomTimetables.positions(30, 1), PortPositions.DEFAULT_MAX_SPEED_KNOTS);
+    RoutingGraphSnapshot.write(graph, file);
+
+    final RoutingGraph read = RoutingGraphSnapshot.read(file).graph();
+    assertEquals(graph.vertexCount(), read.vertexCount());
+    assertEquals(graph.edgeCount(), read.edgeCount());
+    assertEquals(graph.voyageCount(), read.voyageCount());
+    assertEquals(graph.positions().maxSpeedKnots(), read.positions().maxSpeedKnots());
+
+    for (int v = 0; v < graph.vertexCount(); v++) {
+      assertEquals(v, read.indexOf(graph.unLocode(v)));
+      assertEquals(graph.firstEdge(v), read.firstEdge(v));
+      assertEquals(graph.endEdge(v), read.endEdge(v));
+    }
+    for (int e = 0; e < graph.edgeCount(); e++) {
+      assertEquals(graph.target(e), read.target(e));
+      assertEquals(graph.departure(e), read.departure(e));
+      assertEquals(graph.arrival(e), read.arrival(e));
+      assertEquals(graph.voyageNumber(graph.voyage(e)), read.voyageNumber(read.voyage(e)));
+    }
+    for (int from = 0; from < graph.vertexCount(); from++) {
+      for (int to = 0; to < graph.vertexCount(); to++) {
+        assertEquals(graph.positions().minTravelTime(from, to), read.positions().minTravelTime(from, to));
+      }
+    }
+  }
+
+  public void testUnknownPositions() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(10, 20, 2));
+    RoutingGraphSnapshot.write(graph, file);
+
+    final RoutingGraph read = RoutingGraphSnapshot.read(file).graph();
+    assertFalse(read.positions().isGoalDirected());
+    assertEquals(graph.edgeCount(), read.edgeCount());
+  }
+
+  public void testReplacesPreviousSnapshot() throws Exception {
+    RoutingGraphSnapshot.write(RoutingGraph.build(RandomTimetables.timetable(10, 20, 2)), file);
+    RoutingGraphSnapshot.write(RoutingGraph.build(RandomTimetables.timetable(5, 10, 3)), file);
+
+    assertEquals(5, RoutingGraphSnapshot.read(file).graph().vertexCount());
+  }
+
+  public void testRejectsOtherFiles() throws Exception {
+    final FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[100]);
+    out.close();
+
+    assertUnreadable();
+  }
+
+  public void testRejectsTruncatedFile() throws Exception {
+    RoutingGraphSnapshot.write(RoutingGraph.build(RandomTimetables.timetable(10, 20, 2)), file);
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length() - 10);
+    raf.close();
+
+    assertUnreadable();
+  }
+
+  public void testRejectsCorruptEdges() throws Exception {
+    final RoutingGraph graph = RoutingGraph.build(RandomTimetables.timetable(10, 20, 2));
+    RoutingGraphSnapshot.write(graph, file);
+    // First target vertex, after the header, the times, the positions and the first edge positions
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(40 + 16 * graph.edgeCount() + 24 * graph.vertexCount() + 4 * (graph.vertexCount() + 1));
+    raf.writeInt(-1);
+    raf.close();
+
+    assertUnreadable();
+  }
+
+  private void assertUnreadable() {
+    try {
+      RoutingGraphSnapshot.read(file);
+      fail("Expected the snapshot to be rejected");
+    } catch (IOException expected) {
+    }
+  }
+
+}
@@ -0,0 +1,171 @@
+package com.pathfinder.internal;
+
+import junit.framework.TestCase;
+
+import com.pathfinder.api.TransitEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.pathfinder.internal.GraphTraversalServiceImplTest.edge;
+
+public class RoutingGraphTest extends TestCase {
+
+  private RoutingGraph graph;
+
+  protected void setUp() throws Exception {
+    graph = RoutingGraph.build(Arrays.asList(
+      edge("V1", "AAAAA", "BBBBB", 20, 30),
+      edge("V2", "CCCCC", "AAAAA", 0, 5),
+      edge("V1", "AAAAA", "CCCCC", 10, 15),
+      edge("V3", "AAAAA", "BBBBB", 30, 25), // arrives before it departs
+      edge("V2", "BBBBB", "CCCCC", 40, 50)
+    ));
+  }
+
+  public void testVerticesAndEdges() throws Exception {
+    assertEquals(3, graph.vertexCount());
+    assertEquals(4, graph.edgeCount());
+    assertEquals(-1, graph.indexOf("DDDDD"));
+    assertEquals("BBBBB", graph.unLocode(graph.indexOf("BBBBB")));
+  }
+
+  public void testOutgoingEdgesSortedByDeparture() throws Exception {
+    final int a = graph.indexOf("AAAAA");
+    assertEquals(2, graph.endEdge(a) - graph.firstEdge(a));
+
+    final int first = graph.firstEdge(a);
+    assertEquals(graph.indexOf("CCCCC"), graph.target(first));
+    assertEquals(graph.indexOf("BBBBB"), graph.target(first + 1));
+    assertTrue(graph.departure(first) < graph.departure(first + 1));
+  }
+
+  public void testFirstDepartureAtOrAfter() throws Exception {
+    final int a = graph.indexOf("AAAAA");
+    final int first = graph.firstEdge(a);
+    assertEquals(first, graph.firstDepartureAtOrAfter(a, Long.MIN_VALUE));
+    assertEquals(first + 1, graph.firstDepartureAtOrAfter(a, graph.departure(first) + 1));
+    assertEquals(graph.endEdge(a), graph.firstDepartureAtOrAfter(a, Long.MAX_VALUE));
+  }
+
+  public void testSource() throws Exception {
+    for (int v = 0; v < graph.vertexCount(); v++) {
+      for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+        assertEquals(v, graph.source(e));
+        assertEquals(graph.unLocode(v), graph.toTransitEdge(e).getFromUnLocode());
+      }
+    }
+  }
+
+  public void testWithVoyageMatchesFullBuild() throws Exception {
+    final List<TransitEdge> timetable = new ArrayList<TransitEdge>(Arrays.asList(
+      edge("V1", "AAAAA", "BBBBB", 20, 30),
+      edge("V2", "CCCCC", "AAAAA", 0, 5),
+      edge("V1", "AAAAA", "CCCCC", 10, 15),
+      edge("V2", "BBBBB", "CCCCC", 40, 50)
+    ));
+    final RoutingGraph original = RoutingGraph.build(timetable);
+    original.connections();
+
+    // V1 now calls at a new location, and leaves A later
+    final List<TransitEdge> v1 = Arrays.asList(
+      edge("V1", "AAAAA", "DDDDD", 12, 18),
+      edge("V1", "DDDDD", "BBBBB", 19, 35)
+    );
+    final RoutingGraph updated = original.withVoyage("V1", v1);
+
+    timetable.remove(2);
+    timetable.remove(0);
+    timetable.addAll(v1);
+    assertSameEdges(RoutingGraph.build(timetable), updated);
+    assertConnectionsSorted(updated);
+    assertEquals(updated.edgeCount(), updated.connections().size());
+
+    // The old snapshot is unchanged
+    assertEquals(3, original.vertexCount());
+    assertEquals(4, original.edgeCount());
+    assertEquals(-1, original.indexOf("DDDDD"));
+    assertEquals(4, original.connections().size());
+  }
+
+  public void testWithCancelledVoyage() throws Exception {
+    final RoutingGraph updated = graph.withVoyage("V2", Collections.<TransitEdge>emptyList());
+    assertEquals(3, updated.vertexCount());
+    assertEquals(2, updated.edgeCount());
+    for (int e = 0; e < updated.edgeCount(); e++) {
+      assertEquals("V1", updated.toTransitEdge(e).getVoyageNumber());
+    }
+  }
+
+  public void testWithNewVoyage() throws Exception {
+    graph.connections();
+    final RoutingGraph updated = graph.withVoyage("V9", Arrays.asList(edge("V9", "BBBBB", "AAAAA", 35, 38)));
+    assertEquals(5, updated.edgeCount());
+    assertEquals(5, updated.connections().size());
+    assertConnectionsSorted(updated);
+    final int b = updated.indexOf("BBBBB");
+    assertEquals("V9", updated.toTransitEdge(updated.firstEdge(b)).getVoyageNumber());
+  }
+
+  public void testConnectionsSortedByDepartureArrivalAndEdge() throws Exception {
+    final String[] locations = {"AAAAA", "BBBBB", "CCCCC", "DDDDD", "EEEEE"};
+    final List<TransitEdge> timetable = new ArrayList<TransitEdge>();
+    for (int i = 0; i < 100; i++) {
+      // Few distinct times, so that many departures and arrivals are equal
+      timetable.add(edge("V" + i, locations[i % 5], locations[(i * 3 + 1) % 5], i * 7 % 10, 10 + i * 11 % 5));
+    }
+    final RoutingGraph graph = RoutingGraph.build(timetable);
+    assertConnectionsSorted(graph);
+
+    final ConnectionIndex connections = graph.connections();
+    assertEquals(graph.edgeCount(), connections.size());
+    for (int c = 1; c < connections.size(); c++) {
+      if (connections.departure(c - 1) == connections.departure(c)) {
+        assertTrue(connections.arrival(c - 1) <= connections.arrival(c));
+        if (connections.arrival(c - 1) == connections.arrival(c)) {
+          assertTrue(connections.edge(c - 1) < connections.edge(c));
+        }
+      }
+    }
+  }
+
+  private static void assertSameEdges(final RoutingGraph expected, final RoutingGraph actual) {
+    assertEquals(expected.vertexCount(), actual.vertexCount());
+    assertEquals(expected.edgeCount(), actual.edgeCount());
+    for (int v = 0; v < expected.vertexCount(); v++) {
+      final int w = actual.indexOf(expected.unLocode(v));
+      assertEquals(expected.endEdge(v) - expected.firstEdge(v), actual.endEdge(w) - actual.firstEdge(w));
+      for (int i = 0; i < expected.endEdge(v) - expected.firstEdge(v); i++) {
+        final TransitEdge e1 = expected.toTransitEdge(expected.firstEdge(v) + i);
+        final TransitEdge e2 = actual.toTransitEdge(actual.firstEdge(w) + i);
+        assertEquals(e1.getVoyageNumber(), e2.getVoyageNumber());
+        assertEquals(e1.getToUnLocode(), e2.getToUnLocode());
+        assertEquals(e1.getFromDate(), e2.getFromDate());
+        assertEquals(e1.getToDate(), e2.getToDate());
+      }
+    }
+  }
+
+  private static void assertConnectionsSorted(final RoutingGraph graph) {
+    final ConnectionIndex connections = graph.connections();
+    for (int c = 0; c < connections.size(); c++) {
+      final int edge = connections.edge(c);
+      assertEquals(graph.source(edge), connections.source(c));
+      assertEquals(graph.target(edge), connections.target(c));
+      assertEquals(graph.departure(edge), connections.departure(c));
+      assertEquals(graph.arrival(edge), connections.arrival(c));
+      if (c > 0) {
+        assertTrue(connections.departure(c - 1) <= connections.departure(c));
+      }
+    }
+  }
+
+  public void testFootprint() throws Exception {
+    // Four edges of 24 bytes each, plus headers and the location index
+    assertTrue(graph.footprint() > 4 * 24);
+    assertTrue(graph.footprint() < 4096);
+  }
+
+}
@@ -1,18 +1,43 @@
 package se.citerus.dddsample.application;
 
+import com.pathfinder.internal.GraphDAO;
+import com.pathfinder.internal.GraphTraversalServiceImpl;
 import junit.framework.TestCase;
 import static org.easymock.EasyMock.*;
+import static se.citerus.dddsample.application.util.DateTestUtil.toDate;
 import se.citerus.dddsample.application.impl.BookingServiceImpl;
 import se.citerus.dddsample.domain.model.cargo.Cargo;
 import se.citerus.dddsample.domain.model.cargo.CargoRepository;
+import se.citerus.dddsample.domain.model.cargo.Itinerary;
+import se.citerus.dddsample.domain.model.cargo.RouteSpecification;
+import se.citerus.dddsample.domain.model.cargo.Leg;
+import se.citerus.dddsample.domain.model.cargo.RoutingStatus;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.handling.HandlingHistory;
 import se.citerus.dddsample.domain.model.cargo.TrackingId;
 import se.citerus.dddsample.domain.model.location.LocationRepository;
 import static se.citerus.dddsample.domain.model.location.SampleLocations.CHICAGO;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.DALLAS;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.HELSINKI;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.HONGKONG;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.NEWYORK;
 import static se.citerus.dddsample.domain.model.location.SampleLocations.STOCKHOLM;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.TOKYO;
 import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import static se.citerus.dddsample.domain.model.voyage.SampleVoyages.DALLAS_TO_HELSINKI;
+import static se.citerus.dddsample.domain.model.voyage.SampleVoyages.HONGKONG_TO_NEW_YORK;
+import static se.citerus.dddsample.domain.model.voyage.SampleVoyages.NEW_YORK_TO_DALLAS;
 import se.citerus.dddsample.domain.service.RoutingService;
+import se.citerus.dddsample.infrastructure.persistence.inmemory.LocationRepositoryInMem;
+import se.citerus.dddsample.infrastructure.persistence.inmemory.VoyageRepositoryInMem;
+import se.citerus.dddsample.infrastructure.routing.ExternalRoutingService;
+import se.citerus.dddsample.infrastructure.routing.VoyageTimetableSource;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 public class BookingServiceTest extends TestCase {
 
@@ -45,6 +70,91 @@ public class BookingServiceTest extends TestCase {
     assertEquals(expectedTrackingId, trackingId);
   }
 
+  public void testRerouteMisdirectedCargos() throws Exception {
+    TrackingId trackingId = new TrackingId("TRK1");
+    Voyage voyage = new Voyage.Builder(new VoyageNumber("V100"), HONGKONG).
+      addMovement(NEWYORK, toDate("2009-03-01"), toDate("2009-03-05")).
+      addMovement(STOCKHOLM, toDate("2009-03-06"), toDate("2009-03-10")).
+      build();
+    Date arrivalDeadline = toDate("2009-03-20");
+    Cargo cargo = new Cargo(trackingId, new RouteSpecification(HONGKONG, STOCKHOLM, arrivalDeadline));
+    cargo.assignToRoute(new Itinerary(Arrays.asList(
+      new Leg(voyage, HONGKONG, NEWYORK, toDate("2009-03-01"), toDate("2009-03-05")),
+      new Leg(voyage, NEWYORK, STOCKHOLM, toDate("2009-03-06"), toDate("2009-03-10"))
+    )));
+
+    // Unloaded in Tokyo by mistake
+    cargo.deriveDeliveryProgress(new HandlingHistory(Arrays.asList(
+      new HandlingEvent(cargo, toDate("2009-03-03"), new Date(), HandlingEvent.Type.UNLOAD, TOKYO, voyage)
+    )));
+    assertTrue(cargo.delivery().isMisdirected());
+
+    RouteSpecification fromTokyo = new RouteSpecification(TOKYO, STOCKHOLM, arrivalDeadline);
+    Itinerary newItinerary = new Itinerary(Arrays.asList(
+      new Leg(voyage, TOKYO, STOCKHOLM, toDate("2009-03-08"), toDate("2009-03-15"))
+    ));
+
+    expect(cargoRepository.find(trackingId)).andReturn(cargo).times(2);
+    expect(cargoRepository.find(new TrackingId("NONE"))).andReturn(null);
+    expect(routingService.fetchRoutesForSpecifications(Arrays.asList(fromTokyo), Arrays.asList(toDate("2009-03-03")), 1)).
+      andReturn(Arrays.asList(Arrays.asList(newItinerary)));
+    cargoRepository.store(cargo);
+
+    replay(cargoRepository, locationRepository, routingService);
+
+    assertEquals(1, bookingService.rerouteMisdirectedCargos(Arrays.asList(trackingId, new TrackingId("NONE")), true));
+    assertEquals(fromTokyo, cargo.routeSpecification());
+    assertEquals(newItinerary, cargo.itinerary());
+    assertEquals(RoutingStatus.ROUTED, cargo.delivery().routingStatus());
+
+    // Already re-routed from Tokyo
+    assertEquals(0, bookingService.rerouteMisdirectedCargos(Arrays.asList(trackingId), true));
+    verify(routingService);
+  }
+
+  public void testRerouteIgnoresVoyagesDepartedBeforeMisdirection() throws Exception {
+    TrackingId trackingId = new TrackingId("TRK2");
+    Cargo cargo = new Cargo(trackingId, new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01")));
+    cargo.assignToRoute(new Itinerary(Arrays.asList(
+      new Leg(HONGKONG_TO_NEW_YORK, HONGKONG, NEWYORK, toDate("2008-10-01", "12:00"), toDate("2008-10-23", "23:10")),
+      new Leg(NEW_YORK_TO_DALLAS, NEWYORK, DALLAS, toDate("2008-10-24", "07:00"), toDate("2008-10-25", "19:30")),
+      new Leg(DALLAS_TO_HELSINKI, DALLAS, HELSINKI, toDate("2008-10-29", "03:30"), toDate("2008-11-02", "11:15"))
+    )));
+    // Unloaded in Tokyo by mistake, after the voyage has left again
+    Date unloaded = toDate("2008-10-07");
+    cargo.deriveDeliveryProgress(new HandlingHistory(Arrays.asList(
+      new HandlingEvent(cargo, unloaded, new Date(), HandlingEvent.Type.UNLOAD, TOKYO, HONGKONG_TO_NEW_YORK)
+    )));
+
+    ExternalRoutingService externalRoutingService = new ExternalRoutingService();
+    externalRoutingService.setLocationRepository(new LocationRepositoryInMem());
+    externalRoutingService.setVoyageRepository(new VoyageRepositoryInMem());
+    VoyageTimetableSource timetableSource = new VoyageTimetableSource();
+    timetableSource.setVoyageRepository(new VoyageRepositoryInMem());
+    GraphDAO graphDAO = new GraphDAO();
+    graphDAO.setTimetableSource(timetableSource);
+    GraphTraversalServiceImpl pathfinder = new GraphTraversalServiceImpl(graphDAO);
+    externalRoutingService.setGraphTraversalService(pathfinder);
+    externalRoutingService.setLocalGraphTraversalService(pathfinder);
+    bookingService = new BookingServiceImpl(cargoRepository, locationRepository, externalRoutingService);
+
+    // Without the time of the misdirection, the pathfinder would put the cargo back on the voyage it missed
+    RouteSpecification fromTokyo = new RouteSpecification(TOKYO, HELSINKI, toDate("2008-12-01"));
+    List<Itinerary> anyTime = externalRoutingService.fetchRoutesForSpecification(fromTokyo);
+    assertFalse(anyTime.isEmpty());
+    for (Itinerary itinerary : anyTime) {
+      assertTrue(itinerary.legs().get(0).loadTime().before(unloaded));
+    }
+
+    expect(cargoRepository.find(trackingId)).andReturn(cargo);
+    cargoRepository.store(cargo);
+    replay(cargoRepository, locationRepository);
+
+    assertEquals(0, bookingService.rerouteMisdirectedCargos(Arrays.asList(trackingId), true));
+    assertEquals(fromTokyo, cargo.routeSpecification());
+    assertEquals(RoutingStatus.MISROUTED, cargo.delivery().routingStatus());
+  }
+
   protected void tearDown() throws Exception {
     verify(cargoRepository, locationRepository);
   }
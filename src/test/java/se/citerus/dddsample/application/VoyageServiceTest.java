@@ -0,0 +1,50 @@
+package se.citerus.dddsample.application;
+
+import junit.framework.TestCase;
+import static org.easymock.EasyMock.*;
+import se.citerus.dddsample.application.impl.VoyageServiceImpl;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.*;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
+
+import java.util.Date;
+
+public class VoyageServiceTest extends TestCase {
+  private VoyageServiceImpl service;
+  private VoyageRepository voyageRepository;
+  private ApplicationEvents applicationEvents;
+
+  // Not one of the sample voyages, which are shared by other tests
+  private final Voyage voyage = new Voyage.Builder(new VoyageNumber("V1"), HONGKONG).
+    addMovement(HAMBURG, new Date(10), new Date(20)).
+    build();
+
+  protected void setUp() throws Exception {
+    voyageRepository = createMock(VoyageRepository.class);
+    applicationEvents = createMock(ApplicationEvents.class);
+    service = new VoyageServiceImpl(voyageRepository, applicationEvents);
+  }
+
+  protected void tearDown() throws Exception {
+    verify(voyageRepository, applicationEvents);
+  }
+
+  public void testDelayVoyage() throws Exception {
+    expect(voyageRepository.find(voyage.voyageNumber())).andReturn(voyage);
+    applicationEvents.voyageScheduleChanged(voyage);
+    replay(voyageRepository, applicationEvents);
+
+    service.delayVoyage(voyage.voyageNumber(), new Date(0), 5);
+
+    assertEquals(new Date(15), voyage.schedule().carrierMovements().get(0).departureTime());
+  }
+
+  public void testDelayNonExistingVoyage() throws Exception {
+    expect(voyageRepository.find(new VoyageNumber("XX000"))).andReturn(null);
+    replay(voyageRepository, applicationEvents);
+
+    service.delayVoyage(new VoyageNumber("XX000"), new Date(0), 5);
+  }
+
+}
@@ -0,0 +1,136 @@
+package se.citerus.dddsample.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.citerus.dddsample.domain.model.cargo.TrackingId;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
+import se.citerus.dddsample.interfaces.handling.file.MappedHandlingFileParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static se.citerus.dddsample.interfaces.handling.HandlingReportParser.*;
+
+/**
+ * Ingestion throughput of handling files, in lines per second on a single thread,
+ * for the memory-mapped {@link MappedHandlingFileParser} and for reading lines,
+ * splitting them and parsing the columns as Strings. One line in twenty is rejected,
+ * and the lines mention a thousand different ports.
+ * The file is written at setup, and is in the page cache when it is parsed.
+ * <pre>
+ *   mvn -Pbenchmark test -Djmh.args="HandlingFileBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlingFileBenchmark {
+
+  private static final int LINES = 1000000;
+  private static final int PORTS = 1000;
+  private static final String[] TYPES = {"LOAD", "UNLOAD", "RECEIVE", "CLAIM", "CUSTOMS"};
+
+  private final Charset charset = Charset.defaultCharset();
+  private File file;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    file = File.createTempFile("handling", ".tsv");
+    final Random random = new Random(42);
+    final BufferedWriter writer = Files.newBufferedWriter(file.toPath(), charset);
+    try {
+      long minutes = 0;
+      for (int i = 0; i < LINES; i++) {
+        // Terminal dumps are roughly in completion time order
+        minutes += random.nextInt(3);
+        final String type = TYPES[random.nextInt(TYPES.length)];
+        final boolean voyage = type.equals("LOAD") || type.equals("UNLOAD");
+        final String location = i % 20 == 0 ? "XX1XX" : unLocode(random.nextInt(PORTS));
+        writer.write(String.format("2009-%02d-%02d %02d:%02d\tT%08d\t%s%s\t%s", 1 + minutes / (28 * 24 * 60) % 12,
+          1 + minutes / (24 * 60) % 28, minutes / 60 % 24, minutes % 60, random.nextInt(100000),
+          voyage ? String.format("V%04d\t", random.nextInt(5000)) : "", location, type));
+        writer.newLine();
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static String unLocode(final int index) {
+    return "SE" + (char) ('A' + index / (26 * 26)) + (char) ('A' + index / 26 % 26) + (char) ('A' + index % 26);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public void mapped(final Blackhole blackhole) throws IOException {
+    new MappedHandlingFileParser(charset).parse(file, new MappedHandlingFileParser.Handler() {
+      public void accepted(HandlingEventRegistrationAttempt attempt) {
+        blackhole.consume(attempt);
+      }
+
+      public void rejected(ByteBuffer line, long lineNumber, String reason) {
+        blackhole.consume(line);
+      }
+    });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public void readAndSplit(final Blackhole blackhole) throws IOException {
+    final BufferedReader reader = Files.newBufferedReader(file.toPath(), charset);
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] columns = line.split("\t");
+        final boolean withVoyage = columns.length == 5;
+        final List<String> errors = new ArrayList<String>();
+        final Date date = parseDate(columns[0], errors);
+        final TrackingId trackingId = parseTrackingId(columns[1], errors);
+        final VoyageNumber voyageNumber = parseVoyageNumber(withVoyage ? columns[2] : "", errors);
+        final HandlingEvent.Type eventType = parseEventType(columns[withVoyage ? 4 : 3], errors);
+        final UnLocode unLocode = parseUnLocode(columns[withVoyage ? 3 : 2], errors);
+        if (errors.isEmpty()) {
+          blackhole.consume(new HandlingEventRegistrationAttempt(new Date(), date, trackingId, voyageNumber, eventType, unLocode));
+        } else {
+          blackhole.consume(line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+}
@@ -0,0 +1,192 @@
+package se.citerus.dddsample.benchmark;
+
+import com.pathfinder.api.TransitPath;
+import com.pathfinder.internal.GraphDAO;
+import com.pathfinder.internal.GraphTraversalServiceImpl;
+import com.pathfinder.internal.RoutingEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.citerus.dddsample.domain.model.cargo.Itinerary;
+import se.citerus.dddsample.domain.model.cargo.RouteSpecification;
+import se.citerus.dddsample.domain.model.location.Location;
+import se.citerus.dddsample.infrastructure.routing.ExternalRoutingService;
+import se.citerus.dddsample.infrastructure.routing.VoyageTimetableSource;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing latency and throughput on {@link SyntheticNetwork}s of different sizes,
+ * for spoke to spoke queries, which need a feeder, one or more trunk services and
+ * another feeder. Run with the benchmark profile, which also reports the
+ * allocation rate:
+ * <pre>
+ *   mvn -Pbenchmark test
+ * </pre>
+ * Sample time mode reports the p50 and p99 latencies.
+ * <p/>
+ * The {@link Search} state compares the routing engines, and {@link #findEarliestArrival(Search)}
+ * measures the search for the earliest arrival path on its own. With hub overlay preprocessing,
+ * that path comes from the overlay whatever the engine, so the {@link HubOverlay} state has no
+ * engine parameter, and its time and memory spent on preprocessing are printed at setup.
+ * A subset can be selected with the usual JMH options, for example:
+ * <pre>
+ *   mvn -Pbenchmark test -Djmh.args="RoutingBenchmark.findEarliestArrival -p ports=10000 -p engine=GRAPH_SEARCH"
+ * </pre>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+  // Long enough for the schedules to overlap on intercontinental lanes
+  private static final int WEEKS = 16;
+  private static final int QUERIES = 1024;
+
+  /**
+   * A pathfinder and the queries to run against it, round robin.
+   */
+  @State(Scope.Benchmark)
+  public abstract static class Queries {
+
+    @Param({"100", "1000", "10000"})
+    public int ports;
+
+    GraphTraversalServiceImpl graphTraversalService;
+    ExternalRoutingService routingService;
+    RouteSpecification[] routeSpecifications;
+    Properties[] limitations;
+    Properties[] singleCandidateLimitations;
+    private int next;
+
+    void setUp(final RoutingEngine engine, final boolean hubOverlay) {
+      final SyntheticNetwork network = new SyntheticNetwork(ports, WEEKS, 42);
+
+      final VoyageTimetableSource timetableSource = new VoyageTimetableSource();
+      timetableSource.setVoyageRepository(network.voyageRepository());
+      timetableSource.setLocationRepository(network.locationRepository());
+      final GraphDAO graphDAO = new GraphDAO();
+      graphDAO.setTimetableSource(timetableSource);
+      graphTraversalService = new GraphTraversalServiceImpl(graphDAO);
+      graphTraversalService.setEngine(engine);
+
+      routingService = new ExternalRoutingService();
+      routingService.setLocalGraphTraversalService(graphTraversalService);
+      routingService.setLocationRepository(network.locationRepository());
+      routingService.setVoyageRepository(network.voyageRepository());
+
+      final Date deadline = new Date(network.start().getTime() + TimeUnit.DAYS.toMillis(7 * WEEKS));
+      final List<Location> spokes = network.spokes();
+      final Random random = new Random(7);
+      routeSpecifications = new RouteSpecification[QUERIES];
+      limitations = new Properties[QUERIES];
+      singleCandidateLimitations = new Properties[QUERIES];
+      for (int i = 0; i < QUERIES; i++) {
+        final Location origin = spokes.get(random.nextInt(spokes.size()));
+        Location destination = spokes.get(random.nextInt(spokes.size()));
+        while (destination.sameIdentityAs(origin)) {
+          destination = spokes.get(random.nextInt(spokes.size()));
+        }
+        routeSpecifications[i] = new RouteSpecification(origin, destination, deadline);
+        limitations[i] = new Properties();
+        limitations[i].setProperty("DEADLINE", Long.toString(deadline.getTime()));
+        singleCandidateLimitations[i] = new Properties();
+        singleCandidateLimitations[i].putAll(limitations[i]);
+        singleCandidateLimitations[i].setProperty("MAX_CANDIDATES", "1");
+      }
+
+      // Builds the routing graph
+      System.out.println(ports + " ports, " + network.voyageCount() + " voyages, " +
+        graphTraversalService.routingGraphFootprint() / 1024 + " kB routing graph");
+
+      if (hubOverlay) {
+        graphTraversalService.setHubCount(network.hubCount());
+        final long start = System.currentTimeMillis();
+        graphTraversalService.preprocess();
+        System.out.println("Preprocessed around " + network.hubCount() + " hubs in " +
+          (System.currentTimeMillis() - start) + " ms, " + graphTraversalService.preprocessingFootprint() / 1024 + " kB");
+      }
+    }
+
+    int nextQuery() {
+      return next++ & (QUERIES - 1);
+    }
+
+    List<TransitPath> findShortestPath(final int query, final Properties[] limitations) {
+      final RouteSpecification routeSpecification = routeSpecifications[query];
+      return graphTraversalService.findShortestPath(
+        routeSpecification.origin().unLocode().idString(),
+        routeSpecification.destination().unLocode().idString(),
+        limitations[query]);
+    }
+  }
+
+  /**
+   * Searches with each of the routing engines, without preprocessing.
+   */
+  @State(Scope.Benchmark)
+  public static class Search extends Queries {
+
+    @Param({"GRAPH_SEARCH", "GOAL_DIRECTED_SEARCH", "CONNECTION_SCAN"})
+    public RoutingEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      setUp(engine, false);
+    }
+  }
+
+  /**
+   * Looks up the earliest arrival path in a hub overlay, the alternatives are
+   * searched with the default engine.
+   */
+  @State(Scope.Benchmark)
+  public static class HubOverlay extends Queries {
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      setUp(RoutingEngine.GRAPH_SEARCH, true);
+    }
+  }
+
+  @Benchmark
+  public List<TransitPath> findEarliestArrival(final Search search) {
+    return search.findShortestPath(search.nextQuery(), search.singleCandidateLimitations);
+  }
+
+  @Benchmark
+  public List<TransitPath> findShortestPath(final Search search) {
+    return search.findShortestPath(search.nextQuery(), search.limitations);
+  }
+
+  @Benchmark
+  public List<Itinerary> fetchRoutesForSpecification(final Search search) {
+    return search.routingService.fetchRoutesForSpecification(search.routeSpecifications[search.nextQuery()]);
+  }
+
+  @Benchmark
+  public List<TransitPath> findEarliestArrivalWithHubOverlay(final HubOverlay hubOverlay) {
+    return hubOverlay.findShortestPath(hubOverlay.nextQuery(), hubOverlay.singleCandidateLimitations);
+  }
+
+  @Benchmark
+  public List<TransitPath> findShortestPathWithHubOverlay(final HubOverlay hubOverlay) {
+    return hubOverlay.findShortestPath(hubOverlay.nextQuery(), hubOverlay.limitations);
+  }
+
+}
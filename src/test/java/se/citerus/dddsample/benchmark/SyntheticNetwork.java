@@ -0,0 +1,220 @@
+package se.citerus.dddsample.benchmark;
+
+import se.citerus.dddsample.domain.model.location.Coordinates;
+import se.citerus.dddsample.domain.model.location.Location;
+import se.citerus.dddsample.domain.model.location.LocationRepository;
+import se.citerus.dddsample.domain.model.location.SyntheticLocations;
+import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A generated hub-and-spoke port network with weekly voyage schedules.
+ * <p/>
+ * One port in fifty is a hub. Hubs are connected by round trip trunk services
+ * calling at four to eight neighbouring hubs, or at hubs spread around the world.
+ * Every other port lies near a hub and is served
+ * by a feeder service from that hub calling at two to four ports. Each service
+ * departs weekly, and every departure is a voyage of its own.
+ */
+public final class SyntheticNetwork {
+
+  private static final long HOUR = 60 * 60 * 1000L;
+  private static final long WEEK = 7 * 24 * HOUR;
+  private static final String CODE_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ23456789";
+
+  private final Map<UnLocode, Location> locations = new LinkedHashMap<UnLocode, Location>();
+  private final Map<VoyageNumber, Voyage> voyages = new LinkedHashMap<VoyageNumber, Voyage>();
+  private final List<Location> hubs = new ArrayList<Location>();
+  private final List<Location> spokes = new ArrayList<Location>();
+  private final Date start;
+  private final Random random;
+  private int serviceCount;
+
+  /**
+   * @param ports number of ports, at most 39304
+   * @param weeks number of weekly departures of each service
+   * @param seed random seed
+   */
+  public SyntheticNetwork(final int ports, final int weeks, final long seed) {
+    this.random = new Random(seed);
+    this.start = new Date(0);
+
+    final int hubCount = Math.max(4, ports / 50);
+    for (int i = 0; i < hubCount; i++) {
+      hubs.add(addLocation(i, random.nextDouble() * 110 - 50, random.nextDouble() * 360 - 180));
+    }
+    final Map<Location, List<Location>> spokesByHub = new LinkedHashMap<Location, List<Location>>();
+    for (Location hub : hubs) {
+      spokesByHub.put(hub, new ArrayList<Location>());
+    }
+    for (int i = hubCount; i < ports; i++) {
+      final Location hub = hubs.get(random.nextInt(hubCount));
+      final Coordinates near = hub.coordinates();
+      final Location spoke = addLocation(i,
+        clamp(near.latitude() + random.nextGaussian() * 4, 80),
+        clamp(near.longitude() + random.nextGaussian() * 4, 180));
+      spokes.add(spoke);
+      spokesByHub.get(hub).add(spoke);
+    }
+
+    // Trunk services along east-west lanes, every hub is on at least one
+    final List<Location> byLongitude = new ArrayList<Location>(hubs);
+    Collections.sort(byLongitude, new Comparator<Location>() {
+      public int compare(Location l1, Location l2) {
+        return Double.compare(l1.coordinates().longitude(), l2.coordinates().longitude());
+      }
+    });
+    for (int i = 0; i < byLongitude.size(); i += 3) {
+      final List<Location> calls = new ArrayList<Location>();
+      final int callCount = 4 + random.nextInt(5);
+      // Every other service is intercontinental, calling at hubs spread around the world
+      final int stride = i % 2 == 0 ? 1 : Math.max(1, byLongitude.size() / callCount);
+      for (int c = 0; c < callCount; c++) {
+        calls.add(byLongitude.get((i + c * stride) % byLongitude.size()));
+      }
+      // Round trip
+      for (int c = callCount - 2; c >= 0; c--) {
+        calls.add(calls.get(c));
+      }
+      addService(calls, weeks);
+    }
+
+    // Feeder services
+    for (Map.Entry<Location, List<Location>> entry : spokesByHub.entrySet()) {
+      final List<Location> feederPorts = entry.getValue();
+      for (int i = 0; i < feederPorts.size(); ) {
+        final int callCount = Math.min(2 + random.nextInt(3), feederPorts.size() - i);
+        final List<Location> calls = new ArrayList<Location>();
+        calls.add(entry.getKey());
+        calls.addAll(feederPorts.subList(i, i + callCount));
+        calls.add(entry.getKey());
+        addService(calls, weeks);
+        i += callCount;
+      }
+    }
+  }
+
+  private Location addLocation(final int index, final double latitude, final double longitude) {
+    final StringBuilder code = new StringBuilder("ZZ");
+    int remainder = index;
+    for (int i = 0; i < 3; i++) {
+      code.insert(2, CODE_CHARACTERS.charAt(remainder % CODE_CHARACTERS.length()));
+      remainder /= CODE_CHARACTERS.length();
+    }
+    final UnLocode unLocode = new UnLocode(code.toString());
+    final Location location = SyntheticLocations.location(unLocode, "Port " + index, new Coordinates(latitude, longitude));
+    locations.put(unLocode, location);
+    return location;
+  }
+
+  /**
+   * Adds one voyage per week along the port calls, at 16 to 22 knots and with a day in each port.
+   */
+  private void addService(final List<Location> calls, final int weeks) {
+    final int service = serviceCount++;
+    final double knots = 16 + random.nextInt(7);
+    final long firstDeparture = start.getTime() + random.nextInt(7 * 24) * HOUR;
+    for (int week = 0; week < weeks; week++) {
+      final VoyageNumber voyageNumber = new VoyageNumber("S" + service + "W" + week);
+      final Voyage.Builder builder = new Voyage.Builder(voyageNumber, calls.get(0));
+      long time = firstDeparture + week * WEEK;
+      for (int c = 1; c < calls.size(); c++) {
+        final long arrival = time + Math.max(HOUR, (long) (distance(calls.get(c - 1), calls.get(c)) / knots * HOUR));
+        builder.addMovement(calls.get(c), new Date(time), new Date(arrival));
+        time = arrival + 24 * HOUR;
+      }
+      voyages.put(voyageNumber, builder.build());
+    }
+  }
+
+  private static double distance(final Location from, final Location to) {
+    final double lat1 = Math.toRadians(from.coordinates().latitude());
+    final double lat2 = Math.toRadians(to.coordinates().latitude());
+    final double sinLatitude = Math.sin((lat2 - lat1) / 2);
+    final double sinLongitude = Math.sin(Math.toRadians(to.coordinates().longitude() - from.coordinates().longitude()) / 2);
+    final double a = sinLatitude * sinLatitude + Math.cos(lat1) * Math.cos(lat2) * sinLongitude * sinLongitude;
+    return 2 * 3440.065 * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  private static double clamp(final double value, final double limit) {
+    return Math.max(-limit, Math.min(limit, value));
+  }
+
+  /**
+   * @return Ports that are not hubs.
+   */
+  public List<Location> spokes() {
+    return spokes;
+  }
+
+  public int hubCount() {
+    return hubs.size();
+  }
+
+  public Date start() {
+    return start;
+  }
+
+  public int voyageCount() {
+    return voyages.size();
+  }
+
+  public LocationRepository locationRepository() {
+    return new LocationRepository() {
+      public Location find(UnLocode unLocode) {
+        return locations.get(unLocode);
+      }
+
+      public List<Location> findByUnLocodes(Collection<UnLocode> unLocodes) {
+        final List<Location> result = new ArrayList<Location>(unLocodes.size());
+        for (UnLocode unLocode : unLocodes) {
+          final Location location = locations.get(unLocode);
+          if (location != null) {
+            result.add(location);
+          }
+        }
+        return result;
+      }
+
+      public List<Location> findAll() {
+        return new ArrayList<Location>(locations.values());
+      }
+    };
+  }
+
+  public VoyageRepository voyageRepository() {
+    return new VoyageRepository() {
+      public Voyage find(VoyageNumber voyageNumber) {
+        return voyages.get(voyageNumber);
+      }
+
+      public List<Voyage> findByVoyageNumbers(Collection<VoyageNumber> voyageNumbers) {
+        final List<Voyage> result = new ArrayList<Voyage>(voyageNumbers.size());
+        for (VoyageNumber voyageNumber : voyageNumbers) {
+          final Voyage voyage = voyages.get(voyageNumber);
+          if (voyage != null) {
+            result.add(voyage);
+          }
+        }
+        return result;
+      }
+
+      public List<Voyage> findAll() {
+        return new ArrayList<Voyage>(voyages.values());
+      }
+    };
+  }
+
+}
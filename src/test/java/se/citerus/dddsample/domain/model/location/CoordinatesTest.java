@@ -0,0 +1,38 @@
+package se.citerus.dddsample.domain.model.location;
+
+import junit.framework.TestCase;
+
+public class CoordinatesTest extends TestCase {
+
+  public void testNew() throws Exception {
+    final Coordinates stockholm = new Coordinates(59.33, 18.07);
+    assertEquals(59.33, stockholm.latitude());
+    assertEquals(18.07, stockholm.longitude());
+
+    new Coordinates(-90, -180);
+    new Coordinates(90, 180);
+
+    try {
+      new Coordinates(90.5, 0);
+      fail("Latitude beyond the pole should not be allowed");
+    } catch (IllegalArgumentException expected) {}
+
+    try {
+      new Coordinates(0, -181);
+      fail("Longitude out of range should not be allowed");
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testEquals() throws Exception {
+    assertTrue(new Coordinates(59.33, 18.07).sameValueAs(new Coordinates(59.33, 18.07)));
+    assertFalse(new Coordinates(59.33, 18.07).sameValueAs(new Coordinates(18.07, 59.33)));
+    assertEquals(new Coordinates(59.33, 18.07).hashCode(), new Coordinates(59.33, 18.07).hashCode());
+    assertFalse(new Coordinates(59.33, 18.07).sameValueAs(null));
+  }
+
+  public void testLocationCoordinates() throws Exception {
+    assertEquals(new Coordinates(59.33, 18.07), SampleLocations.STOCKHOLM.coordinates());
+    assertNull(new Location(new UnLocode("ATEST"), "test-name").coordinates());
+  }
+
+}
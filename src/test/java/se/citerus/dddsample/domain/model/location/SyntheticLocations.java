@@ -0,0 +1,15 @@
+package se.citerus.dddsample.domain.model.location;
+
+/**
+ * Creates locations outside the sample set, for benchmarks.
+ */
+public final class SyntheticLocations {
+
+  public static Location location(final UnLocode unLocode, final String name, final Coordinates coordinates) {
+    return new Location(unLocode, name, coordinates);
+  }
+
+  private SyntheticLocations() {
+  }
+
+}
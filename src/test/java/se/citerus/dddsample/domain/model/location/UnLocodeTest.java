@@ -15,6 +15,8 @@ public class UnLocodeTest extends TestCase {
     assertInvalid("AAAAAA");
     assertInvalid("22AAA");
     assertInvalid("AA111");
+    assertInvalid("AA1BC");
+    assertInvalid("A-BCD");
     assertInvalid(null);
   }
 
@@ -42,10 +44,12 @@ public class UnLocodeTest extends TestCase {
   }
   
   private void assertValid(String unlocode) {
+    assertTrue(UnLocode.isValid(unlocode));
     new UnLocode(unlocode);
   }
 
   private void assertInvalid(String unlocode) {
+    assertFalse(UnLocode.isValid(unlocode));
     try {
       new UnLocode(unlocode);
       fail("The combination [" + unlocode + "] is not a valid UnLocode");
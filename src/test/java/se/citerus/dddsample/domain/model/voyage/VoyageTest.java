@@ -2,6 +2,11 @@ package se.citerus.dddsample.domain.model.voyage;
 
 import junit.framework.TestCase;
 
+import java.util.Date;
+import java.util.List;
+
+import static se.citerus.dddsample.domain.model.location.SampleLocations.*;
+
 public class VoyageTest extends TestCase {
 
     public void testVoyageNumber() throws Exception {
@@ -12,6 +17,28 @@ public class VoyageTest extends TestCase {
         //TODO: Test goes here...
     }
 
+    public void testDelay() throws Exception {
+        Voyage voyage = new Voyage.Builder(new VoyageNumber("V1"), HONGKONG).
+          addMovement(HAMBURG, new Date(10), new Date(20)).
+          addMovement(STOCKHOLM, new Date(30), new Date(40)).
+          build();
+
+        voyage.delay(new Date(25), 100);
+
+        List<CarrierMovement> carrierMovements = voyage.schedule().carrierMovements();
+        assertEquals(new Date(10), carrierMovements.get(0).departureTime());
+        assertEquals(new Date(20), carrierMovements.get(0).arrivalTime());
+        assertEquals(HAMBURG, carrierMovements.get(1).departureLocation());
+        assertEquals(STOCKHOLM, carrierMovements.get(1).arrivalLocation());
+        assertEquals(new Date(130), carrierMovements.get(1).departureTime());
+        assertEquals(new Date(140), carrierMovements.get(1).arrivalTime());
+
+        try {
+            voyage.delay(new Date(25), 0);
+            fail("Delay must be positive");
+        } catch (IllegalArgumentException expected) {}
+    }
+
     public void testHashCode() throws Exception {
         //TODO: Test goes here...
     }
@@ -0,0 +1,63 @@
+package se.citerus.dddsample.infrastructure.messaging.jms;
+
+import junit.framework.TestCase;
+import static org.easymock.EasyMock.*;
+import se.citerus.dddsample.application.HandlingEventService;
+import se.citerus.dddsample.domain.model.cargo.TrackingId;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.handling.UnknownCargoException;
+import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.*;
+
+import javax.jms.ObjectMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+public class HandlingEventRegistrationAttemptConsumerTest extends TestCase {
+
+  private HandlingEventRegistrationAttemptConsumer consumer;
+  private HandlingEventService handlingEventService;
+  private ObjectMessage message;
+
+  private final Date completionTime = new Date();
+
+  protected void setUp() throws Exception {
+    handlingEventService = createStrictMock(HandlingEventService.class);
+    message = createMock(ObjectMessage.class);
+    consumer = new HandlingEventRegistrationAttemptConsumer();
+    consumer.setHandlingEventService(handlingEventService);
+  }
+
+  protected void tearDown() throws Exception {
+    verify(handlingEventService, message);
+  }
+
+  public void testSingleAttempt() throws Exception {
+    expect(message.getObject()).andReturn(attempt("ABC"));
+    handlingEventService.registerHandlingEvent(completionTime, new TrackingId("ABC"), null, STOCKHOLM.unLocode(), HandlingEvent.Type.RECEIVE);
+
+    replay(handlingEventService, message);
+
+    consumer.onMessage(message);
+  }
+
+  public void testBatchIsRegisteredInOrderDespiteFailures() throws Exception {
+    expect(message.getObject()).andReturn(new ArrayList<HandlingEventRegistrationAttempt>(
+      Arrays.asList(attempt("ABC"), attempt("DEF"), attempt("GHI"))));
+    handlingEventService.registerHandlingEvent(completionTime, new TrackingId("ABC"), null, STOCKHOLM.unLocode(), HandlingEvent.Type.RECEIVE);
+    handlingEventService.registerHandlingEvent(completionTime, new TrackingId("DEF"), null, STOCKHOLM.unLocode(), HandlingEvent.Type.RECEIVE);
+    expectLastCall().andThrow(new UnknownCargoException(new TrackingId("DEF")));
+    handlingEventService.registerHandlingEvent(completionTime, new TrackingId("GHI"), null, STOCKHOLM.unLocode(), HandlingEvent.Type.RECEIVE);
+
+    replay(handlingEventService, message);
+
+    consumer.onMessage(message);
+  }
+
+  private HandlingEventRegistrationAttempt attempt(final String trackingId) {
+    return new HandlingEventRegistrationAttempt(new Date(), completionTime, new TrackingId(trackingId),
+      null, HandlingEvent.Type.RECEIVE, STOCKHOLM.unLocode());
+  }
+
+}
@@ -0,0 +1,82 @@
+package se.citerus.dddsample.infrastructure.messaging.jms;
+
+import junit.framework.TestCase;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.RedeliveryPolicy;
+import org.apache.activemq.command.ActiveMQQueue;
+import static org.easymock.EasyMock.*;
+import org.springframework.jms.core.JmsTemplate;
+import se.citerus.dddsample.application.BookingService;
+import se.citerus.dddsample.domain.model.cargo.TrackingId;
+
+import javax.jms.Connection;
+import java.util.Arrays;
+
+public class MisdirectedCargoConsumerTest extends TestCase {
+
+  private MisdirectedCargoConsumer consumer;
+  private BookingService bookingService;
+  private JmsTemplate jmsTemplate;
+  private ActiveMQQueue queue;
+  private Connection connection;
+
+  protected void setUp() throws Exception {
+    final ActiveMQConnectionFactory connectionFactory =
+      new ActiveMQConnectionFactory("vm://" + getName() + "?broker.persistent=false&broker.useJmx=false");
+    final RedeliveryPolicy redeliveryPolicy = new RedeliveryPolicy();
+    redeliveryPolicy.setInitialRedeliveryDelay(0);
+    connectionFactory.setRedeliveryPolicy(redeliveryPolicy);
+    // The embedded broker stops when its last connection is closed
+    connection = connectionFactory.createConnection();
+
+    jmsTemplate = new JmsTemplate(connectionFactory);
+    jmsTemplate.setSessionTransacted(true);
+    queue = new ActiveMQQueue("MisdirectedCargoQueue");
+
+    bookingService = createStrictMock(BookingService.class);
+    consumer = new MisdirectedCargoConsumer();
+    consumer.setBookingService(bookingService);
+    consumer.setJmsTemplate(jmsTemplate);
+    consumer.setMisdirectedCargoQueue(queue);
+    consumer.setBatchSize(2);
+  }
+
+  protected void tearDown() throws Exception {
+    connection.close();
+    verify(bookingService);
+  }
+
+  public void testBatches() throws Exception {
+    consumer.setBatchSize(3);
+    send("ABC", "DEF", "DEF", "GHI");
+    // Duplicates within a batch are re-routed once
+    expect(bookingService.rerouteMisdirectedCargos(Arrays.asList(new TrackingId("ABC"), new TrackingId("DEF")), true)).andReturn(2);
+    expect(bookingService.rerouteMisdirectedCargos(Arrays.asList(new TrackingId("GHI")), true)).andReturn(1);
+    replay(bookingService);
+
+    consumer.flush();
+    // Nothing left on the queue
+    consumer.flush();
+  }
+
+  public void testFailedBatchIsRedeliveredOneAtATime() throws Exception {
+    send("ABC", "DEF");
+    expect(bookingService.rerouteMisdirectedCargos(Arrays.asList(new TrackingId("ABC"), new TrackingId("DEF")), true)).
+      andThrow(new IllegalStateException("Database unavailable"));
+    expect(bookingService.rerouteMisdirectedCargos(Arrays.asList(new TrackingId("ABC")), true)).andReturn(1);
+    expect(bookingService.rerouteMisdirectedCargos(Arrays.asList(new TrackingId("DEF")), true)).andReturn(1);
+    replay(bookingService);
+
+    // The failure stops the flush, and the tracking ids stay on the queue for the next one
+    consumer.flush();
+    consumer.flush();
+    consumer.flush();
+  }
+
+  private void send(final String... trackingIds) {
+    for (String trackingId : trackingIds) {
+      jmsTemplate.convertAndSend(queue, trackingId);
+    }
+  }
+
+}
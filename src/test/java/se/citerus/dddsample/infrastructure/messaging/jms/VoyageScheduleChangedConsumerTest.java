@@ -0,0 +1,105 @@
+package se.citerus.dddsample.infrastructure.messaging.jms;
+
+import com.pathfinder.api.TimetableChangeListener;
+import com.pathfinder.api.TransitEdge;
+import com.pathfinder.api.TransitPath;
+import junit.framework.TestCase;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
+import static org.easymock.EasyMock.*;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import static se.citerus.dddsample.application.util.DateTestUtil.toDate;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.*;
+import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.infrastructure.routing.RouteCandidateCache;
+
+import javax.jms.Connection;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class VoyageScheduleChangedConsumerTest extends TestCase {
+
+  private JmsApplicationEventsImpl applicationEvents;
+  private VoyageScheduleChangedConsumer consumer;
+  private TimetableChangeListener timetableChangeListener;
+  private RouteCandidateCache routeCandidateCache;
+  private JmsTemplate jmsTemplate;
+  private ActiveMQQueue queue;
+  private Connection connection;
+
+  private final Voyage voyage = new Voyage.Builder(new VoyageNumber("V1"), HONGKONG).
+    addMovement(HAMBURG, toDate("2008-10-01"), toDate("2008-10-20")).
+    build();
+
+  protected void setUp() throws Exception {
+    final ActiveMQConnectionFactory connectionFactory =
+      new ActiveMQConnectionFactory("vm://" + getName() + "?broker.persistent=false&broker.useJmx=false");
+    // The embedded broker stops when its last connection is closed
+    connection = connectionFactory.createConnection();
+
+    jmsTemplate = new JmsTemplate(connectionFactory);
+    jmsTemplate.setReceiveTimeout(500);
+    queue = new ActiveMQQueue("VoyageScheduleChangedQueue");
+
+    applicationEvents = new JmsApplicationEventsImpl();
+    applicationEvents.setJmsOperations(jmsTemplate);
+    applicationEvents.setVoyageScheduleChangedQueue(queue);
+
+    timetableChangeListener = createMock(TimetableChangeListener.class);
+    routeCandidateCache = new RouteCandidateCache();
+    consumer = new VoyageScheduleChangedConsumer();
+    consumer.setTimetableChangeListener(timetableChangeListener);
+    consumer.setRouteCandidateCache(routeCandidateCache);
+  }
+
+  protected void tearDown() throws Exception {
+    connection.close();
+    verify(timetableChangeListener);
+  }
+
+  public void testScheduleChangeInvalidatesCachedRoutes() throws Exception {
+    cacheRouteOf("V1", HONGKONG.unLocode(), HAMBURG.unLocode());
+    cacheRouteOf("V2", HONGKONG.unLocode(), STOCKHOLM.unLocode());
+    timetableChangeListener.voyageChanged("V1");
+    replay(timetableChangeListener);
+
+    applicationEvents.voyageScheduleChanged(voyage);
+    consumer.onMessage(jmsTemplate.receive(queue));
+
+    assertEquals(1, routeCandidateCache.getInvalidationCount());
+    assertEquals(1, routeCandidateCache.getSize());
+  }
+
+  public void testEventIsSentAfterCommit() throws Exception {
+    replay(timetableChangeListener);
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      applicationEvents.voyageScheduleChanged(voyage);
+      assertNull("Sent before commit", jmsTemplate.receive(queue));
+
+      for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+        synchronization.afterCommit();
+      }
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertNotNull(jmsTemplate.receive(queue));
+  }
+
+  private void cacheRouteOf(final String voyageNumber, final UnLocode origin, final UnLocode destination) throws Exception {
+    routeCandidateCache.get(origin, destination, null, toDate("2008-12-01"), new RouteCandidateCache.Loader() {
+      public List<TransitPath> load(UnLocode origin, UnLocode destination, Date earliestDeparture, Date deadline) {
+        return Arrays.asList(new TransitPath(Arrays.asList(new TransitEdge(voyageNumber,
+          origin.idString(), destination.idString(), toDate("2008-10-01"), toDate("2008-10-20")))));
+      }
+    });
+  }
+
+}
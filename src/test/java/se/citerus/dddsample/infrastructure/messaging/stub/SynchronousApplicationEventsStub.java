@@ -1,19 +1,34 @@
 package se.citerus.dddsample.infrastructure.messaging.stub;
 
+import com.pathfinder.api.TimetableChangeListener;
 import se.citerus.dddsample.application.ApplicationEvents;
 import se.citerus.dddsample.application.CargoInspectionService;
 import se.citerus.dddsample.domain.model.cargo.Cargo;
 import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.infrastructure.routing.RouteCandidateCache;
 import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
 
+import java.util.List;
+
 public class SynchronousApplicationEventsStub implements ApplicationEvents {
 
   CargoInspectionService cargoInspectionService;
+  TimetableChangeListener timetableChangeListener;
+  RouteCandidateCache routeCandidateCache;
 
   public void setCargoInspectionService(CargoInspectionService cargoInspectionService) {
     this.cargoInspectionService = cargoInspectionService;
   }
 
+  public void setTimetableChangeListener(TimetableChangeListener timetableChangeListener) {
+    this.timetableChangeListener = timetableChangeListener;
+  }
+
+  public void setRouteCandidateCache(RouteCandidateCache routeCandidateCache) {
+    this.routeCandidateCache = routeCandidateCache;
+  }
+
   @Override
   public void cargoWasHandled(HandlingEvent event) {
     System.out.println("EVENT: cargo was handled: " + event);
@@ -34,4 +49,21 @@ public class SynchronousApplicationEventsStub implements ApplicationEvents {
   public void receivedHandlingEventRegistrationAttempt(HandlingEventRegistrationAttempt attempt) {
     System.out.println("EVENT: received handling event registration attempt");
   }
+
+  @Override
+  public void receivedHandlingEventRegistrationAttempts(List<HandlingEventRegistrationAttempt> attempts) {
+    System.out.println("EVENT: received " + attempts.size() + " handling event registration attempts");
+  }
+
+  @Override
+  public void voyageScheduleChanged(Voyage voyage) {
+    System.out.println("EVENT: voyage schedule changed: " + voyage.voyageNumber().idString());
+    // Same order as the JMS consumer, the graph goes first
+    if (timetableChangeListener != null) {
+      timetableChangeListener.voyageChanged(voyage.voyageNumber().idString());
+    }
+    if (routeCandidateCache != null) {
+      routeCandidateCache.invalidate(voyage.voyageNumber());
+    }
+  }
 }
@@ -13,11 +13,15 @@ import org.springframework.test.context.transaction.TransactionConfiguration;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 import se.citerus.dddsample.application.util.SampleDataGenerator;
+import se.citerus.dddsample.domain.model.voyage.CarrierMovement;
 import se.citerus.dddsample.domain.model.voyage.Voyage;
 import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
 import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -61,4 +65,30 @@ public class CarrierMovementRepositoryTest {
     */
     }
 
+    @Test
+    public void testFindByVoyageNumbers() throws Exception {
+        List<Voyage> voyages = voyageRepository.findByVoyageNumbers(Arrays.asList(
+            new VoyageNumber("0101"), new VoyageNumber("0202"), new VoyageNumber("XX000")));
+        assertEquals(2, voyages.size());
+    }
+
+    @Test
+    public void testDelay() throws Exception {
+        Voyage voyage = voyageRepository.find(new VoyageNumber("0101"));
+        List<CarrierMovement> before = new ArrayList<CarrierMovement>(voyage.schedule().carrierMovements());
+        // All movements of the sample voyage depart at the same time
+        voyage.delay(before.get(0).departureTime(), 60 * 60 * 1000L);
+
+        sessionFactory.getCurrentSession().flush();
+        sessionFactory.getCurrentSession().clear();
+
+        List<CarrierMovement> after = voyageRepository.find(new VoyageNumber("0101")).schedule().carrierMovements();
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).departureLocation(), after.get(i).departureLocation());
+            assertEquals(before.get(i).departureTime().getTime() + 60 * 60 * 1000L, after.get(i).departureTime().getTime());
+            assertEquals(before.get(i).arrivalTime().getTime() + 60 * 60 * 1000L, after.get(i).arrivalTime().getTime());
+        }
+    }
+
 }
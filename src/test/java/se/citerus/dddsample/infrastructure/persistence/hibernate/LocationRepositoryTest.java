@@ -17,6 +17,8 @@ import se.citerus.dddsample.domain.model.location.LocationRepository;
 import se.citerus.dddsample.domain.model.location.UnLocode;
 
 import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -47,10 +49,21 @@ public class LocationRepositoryTest {
         Location location = locationRepository.find(melbourne);
         assertNotNull(location);
         assertEquals(melbourne, location.unLocode());
+        assertEquals(-37.82, location.coordinates().latitude(), 0.001);
+        assertEquals(144.96, location.coordinates().longitude(), 0.001);
 
         assertNull(locationRepository.find(new UnLocode("NOLOC")));
     }
 
+    @Test
+    public void testFindByUnLocodes() throws Exception {
+        List<Location> locations = locationRepository.findByUnLocodes(Arrays.asList(
+            new UnLocode("AUMEL"), new UnLocode("SESTO"), new UnLocode("NOLOC")));
+
+        assertEquals(2, locations.size());
+        assertTrue(locationRepository.findByUnLocodes(Collections.<UnLocode>emptyList()).isEmpty());
+    }
+
     @Test
     public void testFindAll() throws Exception {
         List<Location> allLocations = locationRepository.findAll();
@@ -5,6 +5,8 @@ import se.citerus.dddsample.domain.model.location.LocationRepository;
 import se.citerus.dddsample.domain.model.location.SampleLocations;
 import se.citerus.dddsample.domain.model.location.UnLocode;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class LocationRepositoryInMem implements LocationRepository {
@@ -18,6 +20,16 @@ public class LocationRepositoryInMem implements LocationRepository {
     return null;
   }
 
+  public List<Location> findByUnLocodes(Collection<UnLocode> unLocodes) {
+    List<Location> locations = new ArrayList<Location>();
+    for (Location location : SampleLocations.getAll()) {
+      if (unLocodes.contains(location.unLocode())) {
+        locations.add(location);
+      }
+    }
+    return locations;
+  }
+
   public List<Location> findAll() {
     return SampleLocations.getAll();
   }
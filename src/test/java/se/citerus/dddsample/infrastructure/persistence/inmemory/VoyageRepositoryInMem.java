@@ -5,10 +5,29 @@ import se.citerus.dddsample.domain.model.voyage.Voyage;
 import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
 import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 public final class VoyageRepositoryInMem implements VoyageRepository {
 
   public Voyage find(VoyageNumber voyageNumber) {
     return SampleVoyages.lookup(voyageNumber);
   }
+
+  public List<Voyage> findByVoyageNumbers(Collection<VoyageNumber> voyageNumbers) {
+    List<Voyage> voyages = new ArrayList<Voyage>();
+    for (VoyageNumber voyageNumber : voyageNumbers) {
+      Voyage voyage = SampleVoyages.lookup(voyageNumber);
+      if (voyage != null) {
+        voyages.add(voyage);
+      }
+    }
+    return voyages;
+  }
+
+  public List<Voyage> findAll() {
+    return SampleVoyages.getAll();
+  }
   
 }
@@ -1,20 +1,24 @@
 package se.citerus.dddsample.infrastructure.routing;
 
-import com.pathfinder.api.GraphTraversalService;
 import com.pathfinder.internal.GraphDAO;
 import com.pathfinder.internal.GraphTraversalServiceImpl;
 import junit.framework.TestCase;
+import org.easymock.IAnswer;
 import static org.easymock.EasyMock.*;
+import static se.citerus.dddsample.application.util.DateTestUtil.toDate;
 import se.citerus.dddsample.domain.model.cargo.*;
 import se.citerus.dddsample.domain.model.location.Location;
 import se.citerus.dddsample.domain.model.location.LocationRepository;
 import static se.citerus.dddsample.domain.model.location.SampleLocations.*;
 import se.citerus.dddsample.domain.model.voyage.SampleVoyages;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
 import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
 import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
 import se.citerus.dddsample.infrastructure.persistence.inmemory.LocationRepositoryInMem;
+import se.citerus.dddsample.infrastructure.persistence.inmemory.VoyageRepositoryInMem;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -22,6 +26,7 @@ public class ExternalRoutingServiceTest extends TestCase {
 
   private ExternalRoutingService externalRoutingService;
   private VoyageRepository voyageRepository;
+  private GraphTraversalServiceImpl pathfinder;
 
   protected void setUp() throws Exception {
     externalRoutingService = new ExternalRoutingService();
@@ -31,30 +36,34 @@ public class ExternalRoutingServiceTest extends TestCase {
     voyageRepository = createMock(VoyageRepository.class);
     externalRoutingService.setVoyageRepository(voyageRepository);
 
-    GraphTraversalService graphTraversalService = new GraphTraversalServiceImpl(new GraphDAO() {
-      public List<String> listLocations() {
-        return Arrays.asList(TOKYO.unLocode().idString(), STOCKHOLM.unLocode().idString(), GOTHENBURG.unLocode().idString());
-      }
+    VoyageTimetableSource timetableSource = new VoyageTimetableSource();
+    timetableSource.setVoyageRepository(new VoyageRepositoryInMem());
+    GraphDAO graphDAO = new GraphDAO();
+    graphDAO.setTimetableSource(timetableSource);
 
-      public void storeCarrierMovementId(String cmId, String from, String to) {
-      }
-    });
-    externalRoutingService.setGraphTraversalService(graphTraversalService);
+    pathfinder = new GraphTraversalServiceImpl(graphDAO);
+    externalRoutingService.setGraphTraversalService(pathfinder);
   }
 
-  // TODO this test belongs in com.pathfinder
-
   public void testCalculatePossibleRoutes() {
     TrackingId trackingId = new TrackingId("ABC");
-    RouteSpecification routeSpecification = new RouteSpecification(HONGKONG, HELSINKI, new Date());
+    RouteSpecification routeSpecification = new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01"));
     Cargo cargo = new Cargo(trackingId, routeSpecification);
 
-    expect(voyageRepository.find(isA(VoyageNumber.class))).andStubReturn(SampleVoyages.CM002);
+    expectVoyageLookups();
     
     replay(voyageRepository);
 
     List<Itinerary> candidates = externalRoutingService.fetchRoutesForSpecification(routeSpecification);
     assertNotNull(candidates);
+    assertFalse(candidates.isEmpty());
+
+    // Hongkong - New York - Dallas - Helsinki is the earliest arrival in the sample schedules
+    List<Leg> earliest = candidates.get(0).legs();
+    assertEquals(3, earliest.size());
+    assertEquals(SampleVoyages.HONGKONG_TO_NEW_YORK, earliest.get(0).voyage());
+    assertEquals(SampleVoyages.NEW_YORK_TO_DALLAS, earliest.get(1).voyage());
+    assertEquals(SampleVoyages.DALLAS_TO_HELSINKI, earliest.get(2).voyage());
 
     for (Itinerary itinerary : candidates) {
       List<Leg> legs = itinerary.legs();
@@ -77,4 +86,105 @@ public class ExternalRoutingServiceTest extends TestCase {
     verify(voyageRepository);
   }
 
+  public void testNoVoyagesDepartingBeforeEarliestDeparture() {
+    RouteSpecification routeSpecification = new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01"));
+    expectVoyageLookups();
+    replay(voyageRepository);
+
+    // Hongkong - New York departs 2008-10-01
+    assertEquals(SampleVoyages.HONGKONG_TO_NEW_YORK,
+      externalRoutingService.fetchRoutesForSpecification(routeSpecification).get(0).legs().get(0).voyage());
+
+    Date earliestDeparture = toDate("2008-10-02");
+    List<Itinerary> candidates = externalRoutingService.fetchRoutesForSpecification(routeSpecification, earliestDeparture);
+    for (Itinerary itinerary : candidates) {
+      assertFalse(itinerary.legs().get(0).loadTime().before(earliestDeparture));
+    }
+    List<List<Itinerary>> batch = externalRoutingService.fetchRoutesForSpecifications(
+      Arrays.asList(routeSpecification), Arrays.asList(earliestDeparture));
+    assertEquals(candidates, batch.get(0));
+  }
+
+  public void testBatchOfSingleCandidates() {
+    RouteSpecification routeSpecification = new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01"));
+    expectVoyageLookups();
+    replay(voyageRepository);
+
+    List<Itinerary> candidates = externalRoutingService.fetchRoutesForSpecification(routeSpecification);
+    assertTrue(candidates.size() > 1);
+    List<List<Itinerary>> batch = externalRoutingService.fetchRoutesForSpecifications(
+      Arrays.asList(routeSpecification), Arrays.asList((Date) null), 1);
+    assertEquals(Arrays.asList(candidates.get(0)), batch.get(0));
+  }
+
+  public void testStatistics() {
+    RoutingStatistics statistics = new RoutingStatistics();
+    externalRoutingService.setStatistics(statistics);
+    externalRoutingService.setTrace(true);
+    expectVoyageLookups();
+    replay(voyageRepository);
+
+    List<Itinerary> candidates = externalRoutingService.fetchRoutesForSpecification(
+      new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01")));
+
+    assertEquals(1, statistics.getSpecificationCount());
+    assertEquals(candidates.size(), statistics.getCandidateCount() - statistics.getRejectedCandidateCount());
+    assertEquals(1, pathfinder.getStatistics().getTracedQueryCount());
+  }
+
+  public void testVoyagesAreResolvedInOneLookup() {
+    RouteSpecification routeSpecification = new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01"));
+
+    expect(voyageRepository.findByVoyageNumbers((Collection<VoyageNumber>) anyObject())).andAnswer(new IAnswer<List<Voyage>>() {
+      public List<Voyage> answer() throws Throwable {
+        return new VoyageRepositoryInMem().findByVoyageNumbers((Collection<VoyageNumber>) getCurrentArguments()[0]);
+      }
+    }).once();
+    replay(voyageRepository);
+
+    assertFalse(externalRoutingService.fetchRoutesForSpecification(routeSpecification).isEmpty());
+    verify(voyageRepository);
+  }
+
+  public void testCalculatePossibleRoutesInBatch() {
+    RouteSpecification toHelsinki = new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01"));
+    RouteSpecification toChicago = new RouteSpecification(HONGKONG, CHICAGO, toDate("2008-12-01"));
+    RouteSpecification unreachable = new RouteSpecification(HELSINKI, HONGKONG, toDate("2008-10-01"));
+
+    expectVoyageLookups();
+    replay(voyageRepository);
+
+    List<List<Itinerary>> candidates = externalRoutingService.fetchRoutesForSpecifications(
+      Arrays.asList(toHelsinki, toChicago, unreachable));
+    assertEquals(3, candidates.size());
+
+    // Same candidates, in the same order, as when fetched one at a time
+    assertEquals(externalRoutingService.fetchRoutesForSpecification(toHelsinki), candidates.get(0));
+    assertEquals(externalRoutingService.fetchRoutesForSpecification(toChicago), candidates.get(1));
+    assertTrue(candidates.get(2).isEmpty());
+  }
+
+  public void testCoLocatedBinding() throws Exception {
+    RouteSpecification routeSpecification = new RouteSpecification(HONGKONG, HELSINKI, toDate("2008-12-01"));
+
+    expectVoyageLookups();
+    replay(voyageRepository);
+
+    List<Itinerary> expected = externalRoutingService.fetchRoutesForSpecification(routeSpecification);
+    assertFalse(expected.isEmpty());
+
+    // Same candidates without the remote binding
+    externalRoutingService.setGraphTraversalService(null);
+    externalRoutingService.setLocalGraphTraversalService(pathfinder);
+    assertEquals(expected, externalRoutingService.fetchRoutesForSpecification(routeSpecification));
+  }
+
+  private void expectVoyageLookups() {
+    expect(voyageRepository.findByVoyageNumbers((Collection<VoyageNumber>) anyObject())).andStubAnswer(new IAnswer<List<Voyage>>() {
+      public List<Voyage> answer() throws Throwable {
+        return new VoyageRepositoryInMem().findByVoyageNumbers((Collection<VoyageNumber>) getCurrentArguments()[0]);
+      }
+    });
+  }
+
 }
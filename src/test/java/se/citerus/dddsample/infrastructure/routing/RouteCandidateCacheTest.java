@@ -0,0 +1,211 @@
+package se.citerus.dddsample.infrastructure.routing;
+
+import com.pathfinder.api.TransitEdge;
+import com.pathfinder.api.TransitPath;
+import junit.framework.TestCase;
+import static se.citerus.dddsample.application.util.DateTestUtil.toDate;
+import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RouteCandidateCacheTest extends TestCase {
+
+  private static final long ONE_HOUR = 1000L * 60 * 60;
+  private static final long ONE_DAY = 24 * ONE_HOUR;
+
+  private static final UnLocode HKG = new UnLocode("CNHKG");
+  private static final UnLocode HEL = new UnLocode("FIHEL");
+  private static final UnLocode STO = new UnLocode("SESTO");
+
+  private RouteCandidateCache cache;
+  private CountingLoader loader;
+
+  protected void setUp() throws Exception {
+    cache = new RouteCandidateCache();
+    loader = new CountingLoader("V100");
+  }
+
+  public void testSameDeadlineBucketIsCached() throws Exception {
+    // Deadline buckets are days since the epoch by default
+    final long day = toDate("2008-12-01").getTime() / ONE_DAY * ONE_DAY;
+    final List<TransitPath> first = cache.get(HKG, HEL, null, new Date(day + 2 * ONE_HOUR), loader);
+    final List<TransitPath> second = cache.get(HKG, HEL, null, new Date(day + 20 * ONE_HOUR), loader);
+
+    assertSame(first, second);
+    assertEquals(1, loader.loads.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0.5, cache.getHitRate());
+  }
+
+  public void testLoaderIsGivenEndOfDeadlineBucket() throws Exception {
+    cache.setDeadlineBucketMillis(ONE_HOUR);
+    cache.get(HKG, HEL, null, new Date(3 * ONE_HOUR + 1), loader);
+
+    assertEquals(new Date(4 * ONE_HOUR), loader.lastDeadline);
+  }
+
+  public void testDifferentLanesAndBucketsAreNotShared() throws Exception {
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    cache.get(HKG, STO, null, toDate("2008-12-01"), loader);
+    cache.get(HKG, HEL, null, toDate("2008-12-05"), loader);
+
+    assertEquals(3, loader.loads.get());
+    assertEquals(3, cache.getSize());
+  }
+
+  public void testInvalidateVoyage() throws Exception {
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    cache.get(HKG, STO, null, toDate("2008-12-01"), new CountingLoader("V200"));
+
+    cache.invalidate(new VoyageNumber("V100"));
+    assertEquals(1, cache.getSize());
+    assertEquals(1, cache.getInvalidationCount());
+
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    assertEquals(2, loader.loads.get());
+  }
+
+  public void testRemoveLane() throws Exception {
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    cache.remove(HKG, HEL, null, toDate("2008-12-01"));
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.indexSize());
+
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    assertEquals(2, loader.loads.get());
+  }
+
+  public void testEarliestDepartureIsPartOfTheKey() throws Exception {
+    final Date departure = toDate("2008-11-01");
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    cache.get(HKG, HEL, departure, toDate("2008-12-01"), loader);
+    cache.get(HKG, HEL, new Date(departure.getTime()), toDate("2008-12-01"), loader);
+
+    assertEquals(2, loader.loads.get());
+    assertEquals(departure, loader.lastEarliestDeparture);
+  }
+
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    cache.setMaxEntries(2);
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    cache.get(HKG, STO, null, toDate("2008-12-01"), loader);
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    cache.get(HEL, STO, null, toDate("2008-12-01"), loader);
+
+    assertEquals(2, cache.getSize());
+    assertEquals(1, cache.getEvictionCount());
+
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    assertEquals(3, loader.loads.get());
+  }
+
+  public void testEvictedKeysAreRemovedFromTheVoyageIndex() throws Exception {
+    cache.setMaxEntries(2);
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    cache.get(HKG, STO, null, toDate("2008-12-01"), new CountingLoader("V200"));
+    assertEquals(2, cache.indexSize());
+
+    cache.get(HEL, STO, null, toDate("2008-12-01"), loader);
+    cache.get(STO, HEL, null, toDate("2008-12-01"), loader);
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals(2, cache.indexSize());
+
+    // Invalidating the evicted V200 finds nothing to remove
+    cache.invalidate(new VoyageNumber("V200"));
+    assertEquals(2, cache.getSize());
+    cache.invalidate(new VoyageNumber("V100"));
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.indexSize());
+  }
+
+  public void testFailuresAreNotCached() throws Exception {
+    final RouteCandidateCache.Loader failing = new RouteCandidateCache.Loader() {
+      public List<TransitPath> load(UnLocode origin, UnLocode destination, Date earliestDeparture, Date deadline) throws Exception {
+        throw new IllegalStateException("Pathfinder unavailable");
+      }
+    };
+    try {
+      cache.get(HKG, HEL, null, toDate("2008-12-01"), failing);
+      fail("Expected the loader failure");
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(0, cache.getSize());
+    assertEquals(1, cache.getLoadFailureCount());
+
+    cache.get(HKG, HEL, null, toDate("2008-12-01"), loader);
+    assertEquals(1, loader.loads.get());
+  }
+
+  public void testConcurrentMissesAreCoalesced() throws Exception {
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountingLoader blocking = new CountingLoader("V100") {
+      public List<TransitPath> load(UnLocode origin, UnLocode destination, Date earliestDeparture, Date deadline) throws Exception {
+        loading.countDown();
+        release.await();
+        return super.load(origin, destination, earliestDeparture, deadline);
+      }
+    };
+
+    final List<List<TransitPath>> results = Collections.synchronizedList(new ArrayList<List<TransitPath>>());
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++) {
+      final Thread thread = new Thread() {
+        public void run() {
+          try {
+            results.add(cache.get(HKG, HEL, null, toDate("2008-12-01"), blocking));
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+      if (i == 0) {
+        loading.await();
+      }
+    }
+    // The other threads find the in-flight entry and wait for it
+    while (cache.getHitCount() < 3) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(1, blocking.loads.get());
+    assertEquals(4, results.size());
+    for (List<TransitPath> result : results) {
+      assertSame(results.get(0), result);
+    }
+  }
+
+  private static class CountingLoader implements RouteCandidateCache.Loader {
+    final AtomicInteger loads = new AtomicInteger();
+    final String voyageNumber;
+    volatile Date lastEarliestDeparture;
+    volatile Date lastDeadline;
+
+    CountingLoader(final String voyageNumber) {
+      this.voyageNumber = voyageNumber;
+    }
+
+    public List<TransitPath> load(UnLocode origin, UnLocode destination, Date earliestDeparture, Date deadline) throws Exception {
+      loads.incrementAndGet();
+      lastEarliestDeparture = earliestDeparture;
+      lastDeadline = deadline;
+      return Arrays.asList(new TransitPath(Arrays.asList(new TransitEdge(
+        voyageNumber, origin.idString(), destination.idString(), deadline, deadline))));
+    }
+  }
+
+}
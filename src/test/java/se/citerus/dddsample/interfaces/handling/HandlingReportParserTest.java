@@ -0,0 +1,91 @@
+package se.citerus.dddsample.interfaces.handling;
+
+import com.aggregator.HandlingReport;
+import junit.framework.TestCase;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+
+import javax.xml.datatype.DatatypeFactory;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static se.citerus.dddsample.interfaces.handling.HandlingReportParser.*;
+
+public class HandlingReportParserTest extends TestCase {
+
+  public void testCompletionTimeSameAsDateFormat() throws Exception {
+    final String[] completionTimes = {
+      "2009-03-01 12:00", "2009-03-01 12:59", "2009-12-31 23:59", "2008-02-29 00:00",
+      "2009-3-1 9:05", "2009-03-01 12:00:59", "2009-13-40 25:61", "2009-03-01 12:0x",
+      "2009-03-01T12:00", "yesterday", "", " 2009-03-01 12:00"
+    };
+    for (String completionTime : completionTimes) {
+      Date expected;
+      try {
+        expected = new SimpleDateFormat(ISO_8601_FORMAT).parse(completionTime);
+      } catch (ParseException e) {
+        expected = null;
+      }
+      final long actual = completionTime(completionTime);
+      if (expected == null) {
+        assertEquals(completionTime, INVALID_TIME, actual);
+      } else {
+        assertEquals(completionTime, expected.getTime(), actual);
+      }
+    }
+    assertEquals(INVALID_TIME, completionTime(null));
+  }
+
+  public void testCompletionTimesFromFields() throws Exception {
+    final CompletionTimes completionTimes = new CompletionTimes();
+    assertEquals(completionTime("2009-03-01 12:05"), completionTimes.completionTime(2009, 3, 1, 12, 5));
+    // Same hour, from the cache
+    assertEquals(completionTime("2009-03-01 12:59"), completionTimes.completionTime(2009, 3, 1, 12, 59));
+    assertEquals(completionTime("2009-03-02 00:00"), completionTimes.completionTime(2009, 3, 1, 24, 0));
+    // Fields that weren't digits
+    assertEquals(INVALID_TIME, completionTimes.completionTime(2009, -1, 1, 12, 0));
+  }
+
+  public void testEventType() throws Exception {
+    for (HandlingEvent.Type type : HandlingEvent.Type.values()) {
+      assertSame(type, eventType(type.name()));
+    }
+    assertNull(eventType("load"));
+    assertNull(eventType(""));
+    assertNull(eventType(null));
+  }
+
+  public void testValidate() throws Exception {
+    assertEquals(VALID, validate("2009-03-01 12:00", "ABC123", "CNHKG", "LOAD"));
+    assertEquals(INVALID_COMPLETION_TIME | INVALID_EVENT_TYPE, validate("yesterday", "ABC123", "CNHKG", "LOADED"));
+    assertEquals(INVALID_TRACKING_ID | INVALID_UNLOCODE, validate("2009-03-01 12:00", null, "CNHK1", "LOAD"));
+  }
+
+  public void testValidateHandlingReport() throws Exception {
+    final HandlingReport handlingReport = new HandlingReport();
+    assertEquals(INVALID_COMPLETION_TIME | INVALID_UNLOCODE | INVALID_EVENT_TYPE, validate(handlingReport));
+
+    handlingReport.setCompletionTime(DatatypeFactory.newInstance().newXMLGregorianCalendar("2009-03-01T12:00:00"));
+    handlingReport.setUnLocode("CNHKG");
+    handlingReport.setType("LOAD");
+    handlingReport.getTrackingIds().add("ABC123");
+    assertEquals(VALID, validate(handlingReport));
+
+    handlingReport.getTrackingIds().add(null);
+    handlingReport.setType("LOADED");
+    assertEquals(INVALID_TRACKING_ID | INVALID_EVENT_TYPE, validate(handlingReport));
+  }
+
+  public void testParseErrors() throws Exception {
+    final List<String> errors = new ArrayList<String>();
+    assertNull(parseDate("yesterday", errors));
+    assertNull(parseUnLocode("CNHK1", errors));
+    assertNull(parseUnLocode(null, errors));
+    assertNull(parseEventType("LOADED", errors));
+    assertEquals(4, errors.size());
+    assertEquals("CNHK1 is not a valid UN/LOCODE (does not match pattern)", errors.get(1));
+  }
+
+}
@@ -0,0 +1,187 @@
+package se.citerus.dddsample.interfaces.handling.file;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import se.citerus.dddsample.domain.model.cargo.TrackingId;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.location.UnLocode;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static se.citerus.dddsample.interfaces.handling.HandlingReportParser.*;
+
+public class MappedHandlingFileParserTest extends TestCase {
+
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+
+  private static final List<String> LINES = Arrays.asList(
+    "2009-03-01 12:00\tABC123\t0100S\tCNHKG\tLOAD",
+    "2009-03-01 12:00\tABC123\tcnhkg\tRECEIVE",
+    "2009-03-01 12:00\tABC123\t\tCNHKG\tRECEIVE",
+    "2009-03-01 12:00\tABC123\tCNHKG\tRECEIVE\t\t",
+    "2009-3-1 9:05\tABC123\t0100S\tCNHKG\tUNLOAD",
+    "2009-03-01 12:00:59\tABC123\tCNHKG\tCLAIM",
+    "2009-13-40 25:61\tABC123\tCNHKG\tCUSTOMS",
+    "2009-03-01 12:0x\tABC123\tCNHKG\tCUSTOMS",
+    "2009-03-01 12:00\tÅÄÖ\tCNHKG\tCUSTOMS",
+    "",
+    "\t\t\t",
+    "2009-03-01 12:00\tABC123\tCNHK1\tLOAD",
+    "2009-03-01 12:00\tABC123\t0100S\tCNHKG\tload",
+    "2009-03-01 12:00\tABC123\t0100S\tCNHKG\tLOAD\tEXTRA",
+    "yesterday\tABC123\tCNHKG\tCLAIM",
+    "2009-03-01 12:00\tABC123\tC1HKG\tCLAIM"
+  );
+
+  private File file;
+
+  protected void setUp() throws Exception {
+    file = File.createTempFile("handling", ".tsv");
+  }
+
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testSameAsSplitAndParse() throws Exception {
+    for (String lineSeparator : new String[]{"\n", "\r\n", "\r"}) {
+      final StringBuilder content = new StringBuilder();
+      for (String line : LINES) {
+        content.append(line).append(lineSeparator);
+      }
+      FileUtils.writeStringToFile(file, content.toString(), CHARSET.name());
+
+      // Windows smaller than the file, so that lines and line breaks are split between windows
+      for (int windowSize : new int[]{64, 65, 67, 1 << 20}) {
+        final List<String> accepted = new ArrayList<String>();
+        final List<String> rejected = new ArrayList<String>();
+        final long lines = new MappedHandlingFileParser(CHARSET, windowSize).parse(file, collector(accepted, rejected));
+
+        assertEquals(LINES.size(), lines);
+        final List<String> expectedAccepted = new ArrayList<String>();
+        final List<String> expectedRejected = new ArrayList<String>();
+        for (String line : LINES) {
+          final String attempt = splitAndParse(line);
+          if (attempt != null) {
+            expectedAccepted.add(attempt);
+          } else {
+            expectedRejected.add(line);
+          }
+        }
+        assertEquals(expectedAccepted, accepted);
+        assertEquals(expectedRejected, rejected);
+      }
+    }
+  }
+
+  public void testResumeAtLineOffset() throws Exception {
+    for (String lineSeparator : new String[]{"\n", "\r\n", "\r"}) {
+      final StringBuilder content = new StringBuilder();
+      for (String line : LINES) {
+        content.append(line).append(lineSeparator);
+      }
+      FileUtils.writeStringToFile(file, content.toString(), CHARSET.name());
+
+      for (int windowSize : new int[]{64, 65, 1 << 20}) {
+        final List<Long> offsets = new ArrayList<Long>();
+        final List<String> all = new ArrayList<String>();
+        final MappedHandlingFileParser parser = new MappedHandlingFileParser(CHARSET, windowSize);
+        parser.parse(file, new MappedHandlingFileParser.Handler() {
+          public void accepted(HandlingEventRegistrationAttempt attempt) {
+            offsets.add(parser.lineOffset());
+            all.add(parser.lineNumber() + " " + attempt.getTrackingId());
+          }
+
+          public void rejected(ByteBuffer line, long lineNumber, String reason) {
+            offsets.add(parser.lineOffset());
+            all.add(lineNumber + " rejected");
+          }
+        });
+
+        for (int resumeAt = 0; resumeAt < LINES.size(); resumeAt++) {
+          final List<String> resumed = new ArrayList<String>();
+          final MappedHandlingFileParser resuming = new MappedHandlingFileParser(CHARSET, windowSize);
+          final long lines = resuming.parse(file, offsets.get(resumeAt), resumeAt, new MappedHandlingFileParser.Handler() {
+            public void accepted(HandlingEventRegistrationAttempt attempt) {
+              resumed.add(resuming.lineNumber() + " " + attempt.getTrackingId());
+            }
+
+            public void rejected(ByteBuffer line, long lineNumber, String reason) {
+              resumed.add(lineNumber + " rejected");
+            }
+          });
+          assertEquals(LINES.size(), lines);
+          assertEquals(all.subList(resumeAt, all.size()), resumed);
+        }
+      }
+    }
+  }
+
+  public void testLastLineWithoutLineBreak() throws Exception {
+    FileUtils.writeStringToFile(file, LINES.get(0) + "\n" + LINES.get(1), CHARSET.name());
+    final List<String> accepted = new ArrayList<String>();
+    assertEquals(2, new MappedHandlingFileParser(CHARSET).parse(file, collector(accepted, new ArrayList<String>())));
+    assertEquals(2, accepted.size());
+  }
+
+  public void testLineLongerThanWindow() throws Exception {
+    FileUtils.writeStringToFile(file, LINES.get(0) + "\n" + LINES.get(0) + "\n", CHARSET.name());
+    try {
+      new MappedHandlingFileParser(CHARSET, 16).parse(file, collector(new ArrayList<String>(), new ArrayList<String>()));
+      fail("Line longer than the window");
+    } catch (IOException expected) {
+    }
+  }
+
+  public void testEmptyFile() throws Exception {
+    assertEquals(0, new MappedHandlingFileParser(CHARSET).parse(file, collector(new ArrayList<String>(), new ArrayList<String>())));
+  }
+
+  private static MappedHandlingFileParser.Handler collector(final List<String> accepted, final List<String> rejected) {
+    return new MappedHandlingFileParser.Handler() {
+      public void accepted(HandlingEventRegistrationAttempt attempt) {
+        accepted.add(describe(attempt.getCompletionTime(), attempt.getTrackingId(), attempt.getVoyageNumber(),
+          attempt.getType(), attempt.getUnLocode()));
+      }
+
+      public void rejected(ByteBuffer line, long lineNumber, String reason) {
+        final byte[] bytes = new byte[line.remaining()];
+        line.get(bytes);
+        rejected.add(new String(bytes, CHARSET));
+      }
+    };
+  }
+
+  /**
+   * The way the upload directory scanner parsed lines before.
+   */
+  private static String splitAndParse(final String line) {
+    final String[] columns = line.split("\t");
+    if (columns.length != 4 && columns.length != 5) {
+      return null;
+    }
+    final boolean withVoyage = columns.length == 5;
+    final List<String> errors = new ArrayList<String>();
+    final Date date = parseDate(columns[0], errors);
+    final TrackingId trackingId = parseTrackingId(columns[1], errors);
+    final VoyageNumber voyageNumber = parseVoyageNumber(withVoyage ? columns[2] : "", errors);
+    final HandlingEvent.Type eventType = parseEventType(columns[withVoyage ? 4 : 3], errors);
+    final UnLocode unLocode = parseUnLocode(columns[withVoyage ? 3 : 2], errors);
+    return errors.isEmpty() ? describe(date, trackingId, voyageNumber, eventType, unLocode) : null;
+  }
+
+  private static String describe(final Date date, final TrackingId trackingId, final VoyageNumber voyageNumber,
+                                 final HandlingEvent.Type eventType, final UnLocode unLocode) {
+    return date.getTime() + " " + trackingId + " " + voyageNumber + " " + eventType + " " + unLocode;
+  }
+
+}
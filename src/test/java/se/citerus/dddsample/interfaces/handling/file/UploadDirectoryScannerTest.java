@@ -0,0 +1,228 @@
+package se.citerus.dddsample.interfaces.handling.file;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import se.citerus.dddsample.application.ApplicationEvents;
+import se.citerus.dddsample.domain.model.cargo.Cargo;
+import se.citerus.dddsample.domain.model.handling.HandlingEvent;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.interfaces.handling.HandlingEventRegistrationAttempt;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class UploadDirectoryScannerTest extends TestCase {
+
+  private File directory;
+  private File uploadDirectory;
+  private File parseFailureDirectory;
+  private UploadDirectoryScanner scanner;
+  private ApplicationEvents applicationEvents;
+  private final List<HandlingEventRegistrationAttempt> attempts =
+    Collections.synchronizedList(new ArrayList<HandlingEventRegistrationAttempt>());
+  private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+  // Number of attempts after which the JVM "dies"
+  private volatile int crashAfter = -1;
+
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("upload", "");
+    directory.delete();
+    uploadDirectory = new File(directory, "upload");
+    parseFailureDirectory = new File(directory, "failed");
+
+    scanner = new UploadDirectoryScanner();
+    scanner.setUploadDirectory(uploadDirectory);
+    scanner.setParseFailureDirectory(parseFailureDirectory);
+    applicationEvents = new ApplicationEvents() {
+      public void cargoWasHandled(HandlingEvent event) {
+      }
+
+      public void cargoWasMisdirected(Cargo cargo) {
+      }
+
+      public void cargoHasArrived(Cargo cargo) {
+      }
+
+      public void receivedHandlingEventRegistrationAttempt(HandlingEventRegistrationAttempt attempt) {
+        if (attempts.size() == crashAfter) {
+          throw new Error("Crash");
+        }
+        attempts.add(attempt);
+      }
+
+      public void receivedHandlingEventRegistrationAttempts(List<HandlingEventRegistrationAttempt> batch) {
+        batchSizes.add(batch.size());
+        for (HandlingEventRegistrationAttempt attempt : batch) {
+          receivedHandlingEventRegistrationAttempt(attempt);
+        }
+      }
+
+      public void voyageScheduleChanged(Voyage voyage) {
+      }
+    };
+    scanner.setApplicationEvents(applicationEvents);
+    scanner.afterPropertiesSet();
+  }
+
+  protected void tearDown() throws Exception {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  public void testRejectedLinesAreWrittenToRejectFile() throws Exception {
+    final File file = new File(uploadDirectory, "report.tsv");
+    FileUtils.writeLines(file, Arrays.asList(
+      "2009-03-01 12:00\tABC123\t0100S\tCNHKG\tLOAD",
+      "2009-03-01 12:00\tABC123\tCNHKG",
+      "2009-03-05 12:00\tABC123\t0100S\tUSNYC\tUNLOAD",
+      "yesterday\tABC123\tSESTO\tCLAIM",
+      "2009-03-10 12:00\tABC123\tSESTO\tCLAIM"
+    ));
+
+    scanner.run();
+
+    assertEquals(3, attempts.size());
+    assertEquals(HandlingEvent.Type.CLAIM, attempts.get(2).getType());
+    assertFalse(file.exists());
+    assertEquals(Arrays.asList(
+      "2009-03-01 12:00\tABC123\tCNHKG",
+      "yesterday\tABC123\tSESTO\tCLAIM"
+    ), FileUtils.readLines(new File(parseFailureDirectory, "report.tsv.reject")));
+  }
+
+  public void testWatchImportsWithoutScan() throws Exception {
+    final UploadDirectoryScanner watching = new UploadDirectoryScanner();
+    watching.setUploadDirectory(uploadDirectory);
+    watching.setParseFailureDirectory(parseFailureDirectory);
+    watching.setApplicationEvents(applicationEvents);
+    watching.setWatch(true);
+    watching.setQuietPeriodMillis(50);
+    watching.afterPropertiesSet();
+    try {
+      // Written elsewhere and moved in, as uploaders should
+      final File written = new File(directory, "report.tsv");
+      FileUtils.writeLines(written, Arrays.asList("2009-03-01 12:00\tABC123\t0100S\tCNHKG\tLOAD"));
+      final File file = new File(uploadDirectory, "report.tsv");
+      assertTrue(written.renameTo(file));
+
+      for (int i = 0; i < 200 && file.exists(); i++) {
+        Thread.sleep(50);
+      }
+      assertFalse(file.exists());
+      assertEquals(1, attempts.size());
+    } finally {
+      watching.destroy();
+    }
+  }
+
+  public void testParallelWorkersKeepLineOrder() throws Exception {
+    final ExecutorService workers = Executors.newFixedThreadPool(4);
+    scanner.setWorkers(workers);
+    for (int i = 0; i < 10; i++) {
+      final List<String> lines = new ArrayList<String>();
+      for (int day = 1; day <= 28; day++) {
+        lines.add(String.format("2009-03-%02d 12:00\tT%d\tCNHKG\tRECEIVE", day, i));
+      }
+      FileUtils.writeLines(new File(uploadDirectory, "report" + i + ".tsv"), lines);
+    }
+
+    scanner.run();
+    workers.shutdown();
+    assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+
+    assertEquals(280, attempts.size());
+    assertEquals(0, uploadDirectory.listFiles().length);
+    assertEquals(0, new File(uploadDirectory.getPath() + ".processing").listFiles().length);
+    for (int i = 0; i < 10; i++) {
+      HandlingEventRegistrationAttempt previous = null;
+      for (HandlingEventRegistrationAttempt attempt : attempts) {
+        if (attempt.getTrackingId().idString().equals("T" + i)) {
+          if (previous != null) {
+            assertTrue(attempt.getCompletionTime().after(previous.getCompletionTime()));
+          }
+          previous = attempt;
+        }
+      }
+    }
+  }
+
+  public void testInterruptedImportsAreImportedAgain() throws Exception {
+    final File processingDirectory = new File(uploadDirectory.getPath() + ".processing");
+    FileUtils.writeLines(new File(processingDirectory, "report.tsv"),
+      Arrays.asList("2009-03-01 12:00\tABC123\t0100S\tCNHKG\tLOAD"));
+
+    scanner.afterPropertiesSet();
+    scanner.run();
+
+    assertEquals(1, attempts.size());
+    assertEquals(0, processingDirectory.listFiles().length);
+  }
+
+  public void testInterruptedImportResumesFromCheckpoint() throws Exception {
+    final List<String> lines = new ArrayList<String>();
+    for (int day = 1; day <= 10; day++) {
+      final String location = day == 2 || day == 8 ? "CNHK1" : "CNHKG";
+      lines.add(String.format("2009-03-%02d 12:00\tABC123\t%s\tRECEIVE", day, location));
+    }
+    final File file = new File(uploadDirectory, "report.tsv");
+    FileUtils.writeLines(file, lines);
+
+    // Checkpoints before lines 4 and 7, and the crash on line 9
+    scanner.setCheckpointLines(3);
+    crashAfter = 6;
+    try {
+      scanner.run();
+      fail("Crash");
+    } catch (Error expected) {
+    }
+    final File processingDirectory = new File(uploadDirectory.getPath() + ".processing");
+    assertTrue(new File(processingDirectory, "report.tsv.checkpoint").exists());
+
+    crashAfter = -1;
+    final UploadDirectoryScanner restarted = new UploadDirectoryScanner();
+    restarted.setUploadDirectory(uploadDirectory);
+    restarted.setParseFailureDirectory(parseFailureDirectory);
+    restarted.setApplicationEvents(applicationEvents);
+    restarted.setCheckpointLines(3);
+    restarted.afterPropertiesSet();
+    restarted.run();
+
+    // Line 7 is registered again, lines 1 to 6 are not
+    assertEquals(9, attempts.size());
+    assertEquals(attempts.get(5).getCompletionTime(), attempts.get(6).getCompletionTime());
+    assertEquals(Arrays.asList(lines.get(1), lines.get(7)),
+      FileUtils.readLines(new File(parseFailureDirectory, "report.tsv.reject")));
+    assertEquals(0, processingDirectory.listFiles().length);
+  }
+
+  public void testAttemptsAreHandedOverInBatches() throws Exception {
+    final List<String> lines = new ArrayList<String>();
+    for (int day = 1; day <= 7; day++) {
+      lines.add(String.format("2009-03-%02d 12:00\tABC123\tCNHKG\tRECEIVE", day));
+    }
+    FileUtils.writeLines(new File(uploadDirectory, "report.tsv"), lines);
+
+    scanner.setBatchSize(3);
+    scanner.run();
+
+    assertEquals(Arrays.asList(3, 3, 1), batchSizes);
+    assertEquals(7, attempts.size());
+  }
+
+  public void testNoRejectFileWithoutRejectedLines() throws Exception {
+    final File file = new File(uploadDirectory, "report.tsv");
+    FileUtils.writeLines(file, Arrays.asList("2009-03-01 12:00\tABC123\t0100S\tCNHKG\tLOAD"));
+
+    scanner.run();
+
+    assertEquals(1, attempts.size());
+    assertFalse(file.exists());
+    assertEquals(0, parseFailureDirectory.listFiles().length);
+  }
+
+}
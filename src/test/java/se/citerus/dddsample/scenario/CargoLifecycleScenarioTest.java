@@ -31,6 +31,7 @@ import se.citerus.dddsample.infrastructure.persistence.inmemory.HandlingEventRep
 import se.citerus.dddsample.infrastructure.persistence.inmemory.LocationRepositoryInMem;
 import se.citerus.dddsample.infrastructure.persistence.inmemory.VoyageRepositoryInMem;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -316,6 +317,28 @@ public class CargoLifecycleScenarioTest extends TestCase {
           );
         }
       }
+
+      public List<Itinerary> fetchRoutesForSpecification(RouteSpecification routeSpecification, Date earliestDeparture) {
+        return fetchRoutesForSpecification(routeSpecification);
+      }
+
+      public List<List<Itinerary>> fetchRoutesForSpecifications(List<RouteSpecification> routeSpecifications) {
+        final List<List<Itinerary>> itineraries = new ArrayList<List<Itinerary>>();
+        for (RouteSpecification routeSpecification : routeSpecifications) {
+          itineraries.add(fetchRoutesForSpecification(routeSpecification));
+        }
+        return itineraries;
+      }
+
+      public List<List<Itinerary>> fetchRoutesForSpecifications(List<RouteSpecification> routeSpecifications,
+                                                                List<Date> earliestDepartures) {
+        return fetchRoutesForSpecifications(routeSpecifications);
+      }
+
+      public List<List<Itinerary>> fetchRoutesForSpecifications(List<RouteSpecification> routeSpecifications,
+                                                                List<Date> earliestDepartures, int maxCandidates) {
+        return fetchRoutesForSpecifications(routeSpecifications);
+      }
     };
 
 
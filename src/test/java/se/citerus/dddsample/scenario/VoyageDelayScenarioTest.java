@@ -0,0 +1,121 @@
+package se.citerus.dddsample.scenario;
+
+import com.pathfinder.internal.GraphDAO;
+import com.pathfinder.internal.GraphTraversalServiceImpl;
+import junit.framework.TestCase;
+import se.citerus.dddsample.application.VoyageService;
+import se.citerus.dddsample.application.impl.VoyageServiceImpl;
+import static se.citerus.dddsample.application.util.DateTestUtil.toDate;
+import se.citerus.dddsample.domain.model.cargo.Itinerary;
+import se.citerus.dddsample.domain.model.cargo.RouteSpecification;
+import static se.citerus.dddsample.domain.model.location.SampleLocations.*;
+import se.citerus.dddsample.domain.model.voyage.Voyage;
+import se.citerus.dddsample.domain.model.voyage.VoyageNumber;
+import se.citerus.dddsample.domain.model.voyage.VoyageRepository;
+import se.citerus.dddsample.infrastructure.messaging.stub.SynchronousApplicationEventsStub;
+import se.citerus.dddsample.infrastructure.persistence.inmemory.LocationRepositoryInMem;
+import se.citerus.dddsample.infrastructure.routing.ExternalRoutingService;
+import se.citerus.dddsample.infrastructure.routing.RouteCandidateCache;
+import se.citerus.dddsample.infrastructure.routing.VoyageTimetableSource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A voyage is delayed after routes that use it have been looked up. The routing
+ * service, its cache and the pathfinder are the real ones, wired with in-memory
+ * repositories and synchronous application events.
+ */
+public class VoyageDelayScenarioTest extends TestCase {
+
+  private static final long TWO_DAYS = 2 * 24 * 60 * 60 * 1000L;
+
+  /**
+   * Not one of the sample voyages, since those are shared by other tests.
+   */
+  Voyage voyage;
+  VoyageRepository voyageRepository;
+  SynchronousApplicationEventsStub applicationEvents;
+  VoyageService voyageService;
+  RouteCandidateCache routeCandidateCache;
+  ExternalRoutingService routingService;
+
+  public void testDelayedVoyageIsRoutedAgain() throws Exception {
+    RouteSpecification routeSpecification = new RouteSpecification(HONGKONG, STOCKHOLM, toDate("2009-03-30"));
+
+    List<Itinerary> itineraries = routingService.fetchRoutesForSpecification(routeSpecification);
+    assertEquals(1, itineraries.size());
+    assertEquals(toDate("2009-03-14"), lastUnloadTime(itineraries.get(0)));
+    assertEquals(1, routeCandidateCache.getSize());
+
+    // The voyage leaves Hamburg two days late
+    voyageService.delayVoyage(voyage.voyageNumber(), toDate("2009-03-11"), TWO_DAYS);
+
+    // Routes that use the voyage are no longer cached
+    assertEquals(1, routeCandidateCache.getInvalidationCount());
+    assertEquals(0, routeCandidateCache.getSize());
+
+    // The pathfinder has updated its graph with the new schedule, which is what is cached now
+    itineraries = routingService.fetchRoutesForSpecification(routeSpecification);
+    assertEquals(1, itineraries.size());
+    assertEquals(toDate("2009-03-16"), lastUnloadTime(itineraries.get(0)));
+    assertEquals(toDate("2009-03-01"), itineraries.get(0).legs().get(0).loadTime());
+    assertEquals(1, routeCandidateCache.getSize());
+    assertEquals(toDate("2009-03-16"), lastUnloadTime(routingService.fetchRoutesForSpecification(routeSpecification).get(0)));
+  }
+
+  private static Date lastUnloadTime(Itinerary itinerary) {
+    return itinerary.legs().get(itinerary.legs().size() - 1).unloadTime();
+  }
+
+  protected void setUp() throws Exception {
+    voyage = new Voyage.Builder(new VoyageNumber("V900"), HONGKONG).
+      addMovement(HAMBURG, toDate("2009-03-01"), toDate("2009-03-10")).
+      addMovement(STOCKHOLM, toDate("2009-03-12"), toDate("2009-03-14")).
+      build();
+
+    voyageRepository = new VoyageRepository() {
+      public Voyage find(VoyageNumber voyageNumber) {
+        return voyage.voyageNumber().sameValueAs(voyageNumber) ? voyage : null;
+      }
+
+      public List<Voyage> findByVoyageNumbers(Collection<VoyageNumber> voyageNumbers) {
+        final List<Voyage> voyages = new ArrayList<Voyage>();
+        for (VoyageNumber voyageNumber : voyageNumbers) {
+          if (find(voyageNumber) != null) {
+            voyages.add(voyage);
+          }
+        }
+        return voyages;
+      }
+
+      public List<Voyage> findAll() {
+        return Collections.singletonList(voyage);
+      }
+    };
+
+    // The pathfinder reads the timetable from the same repository
+    VoyageTimetableSource timetableSource = new VoyageTimetableSource();
+    timetableSource.setVoyageRepository(voyageRepository);
+    GraphDAO graphDAO = new GraphDAO();
+    graphDAO.setTimetableSource(timetableSource);
+    GraphTraversalServiceImpl pathfinder = new GraphTraversalServiceImpl(graphDAO);
+
+    routeCandidateCache = new RouteCandidateCache();
+    routingService = new ExternalRoutingService();
+    routingService.setLocalGraphTraversalService(pathfinder);
+    routingService.setLocationRepository(new LocationRepositoryInMem());
+    routingService.setVoyageRepository(voyageRepository);
+    routingService.setRouteCandidateCache(routeCandidateCache);
+
+    applicationEvents = new SynchronousApplicationEventsStub();
+    applicationEvents.setTimetableChangeListener(pathfinder);
+    applicationEvents.setRouteCandidateCache(routeCandidateCache);
+
+    voyageService = new VoyageServiceImpl(voyageRepository, applicationEvents);
+  }
+
+}